@@ -8,48 +8,121 @@ contains a comlete copy of the input file along with two additional columns: a l
 code column.
 errorMsg.txt is created during pass one and finalAssembly.txt is created during pass two. If any errors are found in pass one,
 only errorMsg.txt is created and not finalAssembly.txt. If no errors are found in pass one, then errorMsg.txt and 
-finalAssembly.txt are created.
+finalAssembly.txt are created. Pass two also writes the object program (Header, Text, Modification and End records)
+to objectProgram.txt.
+Pass one also keeps a SourceLine record for every line it reads; pass two works from those records and never
+re-reads errorMsg.txt.
 Instructions on how to invoke the assembler are found in the README.md file
 */
 
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.BufferedReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 public class Assembler {
 	//public static void main(String[] args) {new Assembler("assemblyCode.txt", true);}								  
 	
+	public static final String VERSION = "1.6";	//part of every AssemblyCache key, bump it when any output changes
 	private final char COMMENT = '.';
-	private final int MAX_SYMBOL_LEN = 6;
+	static final int MAX_SYMBOL_LEN = 6;
 	private final byte FORMAT_SIC = 0, FORMAT1 = 1, FORMAT2 = 2; 
 	private final byte FORMAT3 = 3, FORMAT4 = 4;
 	private final byte FORMATBYTE = 5, FORMATWORD = 6;
+	static final String LISTING_HEADER = String.format("%-9s\t%-9s\t%-9s\t%-9s\t",
+			"loc", "label", "opcode", "operand");
 	private boolean isErrorFree;
+	private boolean isInputFailed;	//the last run stopped on an I/O error, so it is not cached
 	private boolean isSIC;
-	private int programLength, startingAddress;
+	private boolean isOnePass;
+	private final int IMAGE_BLOCK = 4096;
+	private int imageBase, imageLength;
+	private byte[] image;
+	private int programLength, startingAddress, lineCount;
 	private String LABEL, OPCODE, OPERAND;
+	private int opcodeId;		//OpcodeTable id of OPCODE, -1 if it is not valid in this mode
+	private boolean isExtended;	//OPCODE has the format 4 '+' prefix
 	private String fileName;
-	private Hashtable<String, Short> symbolTable;
-	private Hashtable<String, OpcodeObj> opcodeTable;
-	private Hashtable<String, Byte> registerTable;
+	private String errorFileName, listingFileName, objectProgramFileName;
+	private SymbolTable symbolTable;
+	private LiteralTable literals;
+	private ArrayList<ControlSection> sections;	//in source order, one if there is no CSECT
+	private ControlSection section;				//the one pass one is in
+	private ArrayList<SourceLine> equates;		//EQU lines of the section waiting on symbols defined after them
+	private BitSet pendingSymbols;				//their labels, by symbol id
+	private ArrayList<SourceLine> lines;
+	private Tokenizer tokenizer;
+	private MacroProcessor macros;
+	private ArrayList<ArrayList<Fixup>> fixupChains;//indexed by symbol id
 	private BufferedReader reader;
+	private MappedSource mappedSource;
+	private boolean isMemoryMapped;
 	private PrintWriter errorMsgWriter;
 	private PrintWriter objWriter;
+	private Reader sourceReader;		//set while assembling from a Reader instead of fileName
+	private LineCollector errorLines, listingLines, programLines;//the in memory outputs, null for files
+	private ArrayList<AssemblyResult.Diagnostic> diagnostics;
+	private AssemblyCache cache;
+	private StringBuilder[] captured;	//the text of each output while a cache miss is being assembled
+	private static final int ERROR_OUTPUT = 0, LISTING_OUTPUT = 1, PROGRAM_OUTPUT = 2;
+	private AssemblyMetrics metrics;
+	private long sourceBytes, objectBytes, opcodeLookups;
+	private ObjcodeGenerator encoder;	//the generator of the last pass two or one pass, for its counts
 	
 
  	public Assembler(String inputFile, boolean is_sic){
  		fileName = inputFile;
- 		symbolTable = new Hashtable<String, Short>();
-		opcodeTable = new Hashtable<String, OpcodeObj>();
-		registerTable = new Hashtable<String, Byte>();
+ 		errorFileName = "errorMsg.txt";
+ 		listingFileName = "finalAssembly.txt";
+ 		objectProgramFileName = "objectProgram.txt";
+ 		symbolTable = new SymbolTable();
+		literals = new LiteralTable();
+		sections = new ArrayList<ControlSection>();
+		section = null;
+		equates = new ArrayList<SourceLine>();
+		pendingSymbols = new BitSet();
+		lines = new ArrayList<SourceLine>();
+		tokenizer = new Tokenizer();
+		macros = new MacroProcessor(this::readLine);
+		fixupChains = new ArrayList<ArrayList<Fixup>>();
+		isOnePass = false;
+		isMemoryMapped = false;
+		mappedSource = null;
+		image = null;
+		imageBase = imageLength = 0;
 		LABEL = OPCODE = OPERAND = "";
-		programLength = startingAddress = 0;
+		opcodeId = -1;
+		isExtended = false;
+		programLength = startingAddress = lineCount = 0;
 		isSIC = is_sic;
-		setIsSIC(isSIC);
 		isErrorFree = true;
+		sourceReader = null;
+		errorLines = listingLines = programLines = null;
+		diagnostics = new ArrayList<AssemblyResult.Diagnostic>();
+		cache = null;
+		captured = null;
+		metrics = new AssemblyMetrics();
+		sourceBytes = objectBytes = opcodeLookups = 0;
+		encoder = null;
  		}
  	
  	
@@ -59,302 +132,1486 @@ public class Assembler {
 	
 	
 	public void assemble(){ 
-		pass1(); 
-		if(isErrorFree) pass2();
+		long start = System.nanoTime();
+		AssemblerEvents.Assembly event = new AssemblerEvents.Assembly();
+		event.begin();
+		if(cache != null)
+			assembleCached();
+		else
+			run();
+		metrics.totalNanos = System.nanoTime() - start;
+		if(event.shouldCommit()){
+			event.source = sourceName();
+			event.isSIC = isSIC;
+			event.isErrorFree = isErrorFree;
+			event.isCached = metrics.isCached;
+			event.lines = metrics.pass1Lines;
+			event.errors = metrics.errors;
+			event.symbolLookups = metrics.symbolLookups;
+			event.opcodeLookups = metrics.opcodeLookups;
+			event.pcRelative = metrics.pcRelative;
+			event.baseRelative = metrics.baseRelative;
+			event.extended = metrics.extended;
+			event.commit();
+			}
+		}//END OF: assemble
+	
+	
+	
+	private void run(){
+		/**run: the passes themselves, timed and counted into a new AssemblyMetrics**/
+		metrics = new AssemblyMetrics();
+		sourceBytes = objectBytes = opcodeLookups = 0;
+		encoder = null;
+		isInputFailed = false;
+		long start = System.nanoTime();
+		AssemblerEvents.Phase phase = new AssemblerEvents.Phase();
+		phase.begin();
+		if(isOnePass){
+			onePass();
+			metrics.onePassNanos = System.nanoTime() - start;
+			endPhase(phase, "one pass", lineCount, sourceBytes);
+			}
+		else{
+			pass1();
+			metrics.pass1Nanos = System.nanoTime() - start;
+			endPhase(phase, "pass one", lineCount, sourceBytes);
+			if(isErrorFree){
+				start = System.nanoTime();
+				phase = new AssemblerEvents.Phase();
+				phase.begin();
+				pass2();
+				metrics.pass2Nanos = System.nanoTime() - start;
+				metrics.pass2Lines = lines.size();
+				endPhase(phase, "pass two", lines.size(), objectBytes);
+				}
+			}
+		metrics.pass1Lines = lineCount;
+		metrics.sourceBytes = sourceBytes;
+		metrics.objectBytes = objectBytes;
+		for(ControlSection s : sections) metrics.symbolLookups += s.symbols.lookups();
+		metrics.opcodeLookups = opcodeLookups;
+		metrics.macroExpansions = macros.getExpansionCount();
+		metrics.expansionCacheHits = macros.getCacheHits();
+		if(encoder != null){
+			metrics.pcRelative = encoder.getPcRelativeCount();
+			metrics.baseRelative = encoder.getBaseRelativeCount();
+			metrics.extended = encoder.getExtendedCount();
+			}
+		metrics.errors = diagnostics.size();
+		}//END OF: run
+	
+	
+	
+	private void endPhase(AssemblerEvents.Phase phase, String name, int lineTotal, long bytes){
+		phase.end();
+		if(!phase.shouldCommit()) return;
+		phase.phase = name;
+		phase.source = sourceName();
+		phase.lines = lineTotal;
+		phase.bytes = bytes;
+		phase.commit();
+		}
+	
+	
+	
+	private String sourceName(){ return sourceReader != null ? "<memory>" : fileName; }
+	
+	
+	
+	public AssemblyResult assemble(CharSequence source){ return assemble(new StringReader(source.toString()), null, null); }
+	
+	
+	
+	public AssemblyResult assemble(Reader in){ return assemble(in, null, null); }
+	
+	
+	
+	public AssemblyResult assemble(Reader in, Writer errorOut, Writer listingOut){
+		/**assemble: assembles the source read from in without touching any file. What would go to errorMsg.txt
+		and finalAssembly.txt is streamed to errorOut and listingOut as it is produced, either may be null, and
+		is also kept in the result. The reader and the writers are left open**/
+		sourceReader = in;
+		errorLines = new LineCollector(errorOut);
+		listingLines = new LineCollector(listingOut);
+		programLines = new LineCollector(null);
+		try{
+			assemble();
+			return new AssemblyResult(isErrorFree, startingAddress, programLength, getObjectImage(),
+					errorLines.lines(), listingLines.lines(), programLines.lines(), definedSymbols(), diagnostics,
+					metrics);
+			}
+		finally{
+			sourceReader = null;
+			errorLines = listingLines = programLines = null;
+			}
+		}//END OF: assemble
+	
+	
+	
+	private void assembleCached(){
+		/**assembleCached: replays the cached outputs of an identical source, or assembles it and caches them**/
+		String key;
+		try{
+			if(sourceReader != null){
+				StringBuilder text = new StringBuilder(4096);
+				char[] buffer = new char[8192];
+				for(int n; (n = sourceReader.read(buffer)) > 0; ) text.append(buffer, 0, n);
+				sourceReader = new StringReader(text.toString());
+				key = cache.key(text.toString().getBytes(StandardCharsets.UTF_8), isSIC, isOnePass);
+				}
+			else
+				key = cache.key(Files.readAllBytes(Paths.get(fileName)), isSIC, isOnePass);
+			}
+		catch(IOException e){//let the assembler report it as it always has
+			run();
+			return;
+			}
+		
+		AssemblyCache.Entry entry = cache.get(key);
+		if(entry != null && replay(entry)) return;
+		
+		captured = new StringBuilder[3];
+		try{
+			run();
+			if(isInputFailed) return;
+			entry = new AssemblyCache.Entry();
+			entry.isErrorFree = isErrorFree;
+			entry.startingAddress = startingAddress;
+			entry.programLength = programLength;
+			entry.lineCount = lineCount;
+			entry.imageBase = imageBase;
+			entry.image = image == null ? null : getObjectImage();
+			entry.symbols = definedSymbols();
+			entry.diagnostics = new ArrayList<AssemblyResult.Diagnostic>(diagnostics);
+			entry.outputs = new String[captured.length];
+			for(int i = 0; i < captured.length; i++)
+				if(captured[i] != null) entry.outputs[i] = captured[i].toString();
+			cache.put(key, entry);
+			}
+		finally{
+			captured = null;
+			}
+		if(sourceReader == null && !isOnePass) image = null;//only made for the cache
+		}//END OF: assembleCached
+	
+	
+	
+	private boolean replay(AssemblyCache.Entry entry){
+		/**replay: restores the state and rewrites the outputs a cached assembly left, false if that fails**/
+		isErrorFree = entry.isErrorFree;
+		startingAddress = entry.startingAddress;
+		programLength = entry.programLength;
+		lineCount = entry.lineCount;
+		symbolTable.clear();
+		lines.clear();
+		for(Map.Entry<String, Integer> symbol : entry.symbols.entrySet())
+			symbolTable.define(symbolTable.intern(symbol.getKey()), symbol.getValue());
+		sections.clear();//one section over the restored symbols, which are already at their image addresses
+		section = new ControlSection("", symbolTable, startingAddress, 0);
+		sections.add(section);
+		diagnostics.clear();
+		diagnostics.addAll(entry.diagnostics);
+		metrics = new AssemblyMetrics();
+		metrics.isCached = true;
+		metrics.pass1Lines = lineCount;
+		metrics.errors = diagnostics.size();
+		image = null;
+		if(entry.image != null && (sourceReader != null || isOnePass)){
+			image = entry.image;
+			imageBase = entry.imageBase;
+			imageLength = entry.image.length;
+			}
+		
+		String[] names = {errorFileName, listingFileName, objectProgramFileName};
+		LineCollector[] collectors = {errorLines, listingLines, programLines};
+		try{
+			for(int i = 0; i < names.length; i++){
+				if(entry.outputs[i] == null) continue;
+				PrintWriter out = openOutput(names[i], collectors[i], i);
+				out.write(entry.outputs[i]);
+				out.close();
+				}
+			}
+		catch(IOException e){
+			e.printStackTrace();
+			return false;
+			}
+		return true;
+		}//END OF: replay
+	
+	
+	
+	private LinkedHashMap<String, Integer> definedSymbols(){
+		/**definedSymbols: every defined symbol and its address, in the order they were first seen. The symbols of
+		later control sections are at their address in the memory image, where the sections follow each other,
+		absolute EQU values stay as they are, and a name defined in more than one section keeps its first address**/
+		LinkedHashMap<String, Integer> symbols = new LinkedHashMap<String, Integer>();
+		for(ControlSection s : sections){
+			int relocation = s == sections.get(0) ? 0 : startingAddress + s.imageOffset;
+			for(int id = 0; id < s.symbols.size(); id++){
+				String name = s.symbols.name(id);
+				if(s.symbols.isDefined(id) && !s.symbols.isExternal(id) && !LiteralTable.isLiteral(name))
+					symbols.putIfAbsent(name, s.symbols.address(id) + (s.symbols.isAbsolute(id) ? 0 : relocation));
+				}
+			}
+		return symbols;
 		}
 	
 	
 	
-	private void pass1(){
+	void pass1(){
 		symbolTable.clear();
+		literals.clear();
+		macros.clear();
+		lines.clear();
+		diagnostics.clear();
+		lineCount = startingAddress = 0;
 		isErrorFree = true;
-		int locCounter = 0;
-		String line;
+		image = null;//only an in memory pass two or one pass fills the image
+		sections.clear();
+		section = new ControlSection("", symbolTable, 0, 0);
+		sections.add(section);
+		equates.clear();
+		pendingSymbols.clear();
+		int locCounter = 0, orgLocation = -1, locationLimit = 0;//locationLimit: the highest before an ORG
+		CharSequence line;
+		SourceLine record;
 		boolean isValidOpcode = true, isValidSymbol = true;
 		
 		try {
 			/**create reader and writer, write first lines**/
-			reader = new BufferedReader(new FileReader(fileName));
-			errorMsgWriter = new PrintWriter("errorMsg.txt", "UTF-8");
-			errorMsgWriter.write(String.format("%-9s\t%-9s\t%-9s\t%-9s\t",
-					"loc", "label", "opcode", "operand"));
+			errorMsgWriter = null;//not the last run's, if opening fails
+			openSource();
+			errorMsgWriter = openOutput(errorFileName, errorLines, ERROR_OUTPUT);
+			errorMsgWriter.write(LISTING_HEADER);
 			errorMsgWriter.println();  errorMsgWriter.println();
-			line = reader.readLine();  setTokens(line);
+			line = nextLine();  setTokens(line);
 			
 			
-			if(OPCODE.equals("START")){
-				startingAddress = Integer.parseInt(OPERAND);
-				locCounter = Integer.valueOf(
-						String.valueOf(startingAddress),16);
-				errorMsgWriter.write(String.format("%-9d\t%-9s\t%-9s\t%-9s\t",
-						startingAddress, LABEL, OPCODE, OPERAND));
-				errorMsgWriter.println();
-				line = reader.readLine();	setTokens(line);
+			if(opcodeId == OpcodeTable.START){
+				startingAddress = Integer.parseInt(OPERAND, 16);//the START operand is hexadecimal
+				locCounter = startingAddress;
+				section.name = LABEL;
+				section.start = startingAddress;
+				record = new SourceLine(sourceText(line), LABEL, OPCODE, OPERAND, locCounter);
+				record.opcodeId = opcodeId;
+				record.lineNumber = lineCount;
+				macroError(record);
+				record.listing = listing(startingAddress, LABEL, OPCODE, OPERAND);
+				writeRecord(record);
+				line = nextLine();	setTokens(line);
 				}
 			
 			
-			while(!OPCODE.equals("END") && line != null){
+			while(opcodeId != OpcodeTable.END && line != null){
+				
+				boolean isSectionDefined = true;
+				if(opcodeId == OpcodeTable.CSECT && !tokenizer.isComment(COMMENT)){
+					/**a new control section: the last one's literals go before it, it has its own symbols**/
+					locCounter = placeLiterals(locCounter, lineCount);
+					resolveExpressions(section.first);
+					isSectionDefined = section.end(Math.max(locCounter, locationLimit), lines.size());
+					section = new ControlSection(LABEL, new SymbolTable(), 0, lines.size());
+					sections.add(section);
+					symbolTable = section.symbols;
+					locCounter = locationLimit = 0;
+					orgLocation = -1;
+					}
+				
+				record = new SourceLine(sourceText(line), LABEL, OPCODE, OPERAND, locCounter);
+				record.lineNumber = lineCount;
+				record.isComment = tokenizer.isComment(COMMENT);
+				record.opcodeId = opcodeId;
+				record.isExtended = isExtended;
+				macroError(record);
+				sectionError(record, isSectionDefined);
+				if(!record.isComment){
+					record.operandId = internOperand();
+					compileExpression(record);
+					}
+				if((symbolTable.isExternal(record.operandId)
+						|| record.expression != null && record.expression.hasExternal(symbolTable))
+						&& OpcodeTable.isInstruction(opcodeId) && !isExtended){
+					/**error: the address of an external symbol is only known to the loader**/
+					record.addDiagnostic(
+					   ".!!!Error detected on next line. External reference needs format 4!!!");
+					isErrorFree = false;
+					}
 					
-				if(line.trim().charAt(0) != COMMENT && !OPCODE.equals("BASE")){
+				if(!record.isComment && opcodeId != OpcodeTable.BASE){
 						
 					if(!LABEL.equals("")){
 							
 						/**identify the symbol**/
-						if(symbolTable.containsKey(LABEL)){
+						record.labelId = symbolTable.intern(LABEL);
+						if(symbolTable.isDefined(record.labelId) || pendingSymbols.get(record.labelId)){
 							/**error: duplicate symbol**/
 							isValidSymbol = false;
 							isErrorFree = false;
 							}
+						else if(opcodeId == OpcodeTable.EQU)
+							equate(record);
 						else{
-							symbolTable.put(LABEL, (short)locCounter);
+							symbolTable.define(record.labelId, locCounter);
 							isValidSymbol = true;
 							}
 						
 						if(!isValidSymbol){
-							/**write error message**/
-							errorMsgWriter.write(
+							/**record error message**/
+							record.addDiagnostic(
 							   ".!!!Error detected on next line. Duplicate symbol!!!");
-							errorMsgWriter.println();
 							isValidSymbol = true;//reset
 							}
 					
 					}//END OF: LABEL != ""
 						
 						
-					isValidOpcode = true;
 					/**identify the opcode, increase location counter**/
-					if(opcodeTable.containsKey(OPCODE))
-						locCounter += opcodeTable.get(OPCODE).format;
-					else if(OPCODE.charAt(0) == '+' 
-							&& OPCODE.length() > 1 
-							&& opcodeTable.containsKey(OPCODE.substring(1)))
-								locCounter += FORMAT4;
-					else if(OPCODE.equals("WORD"))		
-						locCounter += 3;
-					else if(OPCODE.equals("BYTE")){
-						String constant = "";
-						if(OPERAND.length() >= 4 
-						 && OPERAND.substring(0, 2).equals("C'") 
-						 && OPERAND.substring(OPERAND.length()-1).equals("'")){
-							/**Byte is a constant**/
-							constant = OPERAND.substring(2, OPERAND.length()-1);
-							locCounter += constant.length();
-							}
-						else
-							locCounter += 1;
-						}
-					else if(OPCODE.equals("RESW"))
-						locCounter += 3 * Integer.parseInt(OPERAND);
-					else if(OPCODE.equals("RESB"))
-						locCounter += Integer.parseInt(OPERAND);
-					else{
-						isValidOpcode = false;
+					int length = lineLength();
+					isValidOpcode = length >= 0;
+					if(isValidOpcode)
+						locCounter += length;
+					else
 						isErrorFree = false;
-						}
 					
 					if(!isValidOpcode){
-						/**write error message to error message document**/
-						errorMsgWriter.write(
+						/**record error message**/
+						record.addDiagnostic(
 						   ".!!!Error detected on next line. Invalid opcode!!!");
-						errorMsgWriter.println();
 						isValidOpcode = true;//reset boolean for next iteration
 						}
 					
+					if(opcodeId == OpcodeTable.EXTDEF)
+						section.addDefinitions(OPERAND);
+					else if(opcodeId == OpcodeTable.EXTREF && !section.addReferences(OPERAND)){
+						/**error: an EXTREF symbol that is also a label of this section**/
+						record.addDiagnostic(
+						   ".!!!Error detected on next line. Duplicate symbol!!!");
+						isErrorFree = false;
+						}
+					else if(opcodeId == OpcodeTable.CSECT && LABEL.equals("")){
+						record.addDiagnostic(
+						   ".!!!Error detected on next line. Missing section name!!!");
+						isErrorFree = false;
+						}
+					else if(opcodeId == OpcodeTable.EQU && LABEL.equals("")){
+						record.addDiagnostic(
+						   ".!!!Error detected on next line. Missing symbol name!!!");
+						isErrorFree = false;
+						}
+					
+					if(opcodeId == OpcodeTable.ORG){
+						/**ORG moves the location counter, so its expression can only use symbols defined above it;
+						ORG without one goes back to where the last ORG moved it from**/
+						locationLimit = Math.max(locationLimit, locCounter);
+						Expression expression = record.expression;
+						if(expression != null){
+							String problem = !expression.evaluate(symbolTable) ? expression.error()
+									: expression.value() < section.start ? "location before the section" : null;
+							if(problem != null)
+								expressionError(record, "Invalid expression: " + problem);
+							else{
+								orgLocation = locCounter;
+								locCounter = expression.value();
+								}
+							}
+						else if(OPERAND.equals("") && orgLocation >= 0){
+							locCounter = orgLocation;
+							orgLocation = -1;
+							}
+						}
+					
+					if(record.operandId < 0 && LiteralTable.isLiteral(OPERAND)){
+						/**error: not =C'..', =X'..' or a number, or on an instruction that takes registers**/
+						record.addDiagnostic(
+						   ".!!!Error detected on next line. Invalid literal!!!");
+						isErrorFree = false;
+						}
+					
 					}//END OF: line != COMMENT
 
 					
-					/**write to file, read new line**/
-					errorMsgWriter.write(String.format("%-9X\t%-9s\t%-9s\t%-9s\t",
-							locCounter, LABEL, OPCODE, OPERAND));
-					errorMsgWriter.println();
-					line = reader.readLine();  setTokens(line);
+					/**keep the record, write it to file, read new line**/
+					record.nextLocation = locCounter;
+					record.listing = listing(locCounter, LABEL, OPCODE, OPERAND);
+					writeRecord(record);
+					if(record.opcodeId == OpcodeTable.LTORG && !record.isComment)
+						locCounter = placeLiterals(locCounter, lineCount);
+					line = nextLine();  setTokens(line);
 					
 					}//END OF: while opcode != END
 				
-				/**finish writing to file**/
-				errorMsgWriter.write(String.format("%-9X\t%-9s\t%-9s\t%-9s\t",
-						locCounter, LABEL, OPCODE, OPERAND));
-				errorMsgWriter.println();
-				programLength = locCounter - startingAddress;
+				/**the last literal pool goes before END, then finish writing to file**/
+				locCounter = placeLiterals(locCounter, lineCount);
+				resolveExpressions(section.first);
+				boolean isSectionDefined = section.end(Math.max(locCounter, locationLimit), lines.size());
+				record = new SourceLine(sourceText(line), LABEL, OPCODE, OPERAND, locCounter);
+				record.opcodeId = opcodeId;
+				macroError(record);
+				sectionError(record, isSectionDefined);
+				record.listing = listing(locCounter, LABEL, OPCODE, OPERAND);
+				writeRecord(record);
+				programLength = 0;
+				for(ControlSection s : sections){//the sections follow each other in the memory image
+					s.imageOffset = programLength;
+					programLength += s.length;
+					}
 
 				if(isErrorFree){
 					errorMsgWriter.write("...No errors detected...");
 					errorMsgWriter.println();
 					}
 				
-				reader.close();
+				closeSource();
 				errorMsgWriter.close();
 		
 		}//END OF: try
 		
-		catch (FileNotFoundException e1) { e1.printStackTrace();}	 
-		catch (IOException e) { e.printStackTrace(); }
+		catch (IOException e) { inputError(e); }
+		finally { symbolTable = sections.get(0).symbols; }//the first section's symbols are the program's
 		
 		}//END OF: pass1
 	
 	
 	
-	private void pass2(){
+	private void macroError(SourceLine record){
+		/**macroError: an error the macro processor found on the way to this line, such as a bad definition**/
+		if(!macros.hasError()) return;
+		if(record.lineNumber == 0) record.lineNumber = lineCount;
+		while(macros.hasError()) record.addDiagnostic(macros.takeError());
+		isErrorFree = false;
+		}//END OF: macroError
+	
+	
+	
+	private void sectionError(SourceLine record, boolean isSectionDefined){
+		/**sectionError: the section that ends before this line has an EXTDEF symbol it never defined**/
+		if(isSectionDefined) return;
+		if(record.lineNumber == 0) record.lineNumber = lineCount;
+		record.addDiagnostic(".!!!Error detected on next line. Undefined EXTDEF symbol!!!");
+		isErrorFree = false;
+		}
+	
+	
+	
+	private void expressionError(SourceLine record, String problem){
+		record.addDiagnostic(".!!!Error detected on next line. " + problem + "!!!");
+		isErrorFree = false;
+		}
+	
+	
+	
+	private void compileExpression(SourceLine record){
+		/**compileExpression: compiles the current line's operand if it is an expression, see expressionText**/
+		String text = expressionText();
+		if(text == null) return;
+		record.expression = Expression.compile(text, record.location, symbolTable);
+		if(record.expression == null)
+			expressionError(record, "Invalid expression");
+		else if((opcodeId == OpcodeTable.EQU || opcodeId == OpcodeTable.ORG) && record.expression.hasExternal(symbolTable)){
+			/**error: only the loader knows the address of an external symbol, too late for these**/
+			expressionError(record, "Invalid expression: external symbol");
+			record.expression = null;
+			}
+		}//END OF: compileExpression
+	
+	
+	
+	private String expressionText(){
+		/**expressionText: the expression the current line's operand holds, without its #, @ and ,X, null for none.
+		The operands of EQU and ORG, and of a WORD that is not a number or a character constant, are expressions
+		even when they are a single symbol; an instruction's only when it has an operator or is ***/
+		if(opcodeId == OpcodeTable.EQU) return OPERAND;
+		if(OPERAND.equals("")) return null;
+		if(opcodeId == OpcodeTable.ORG) return OPERAND;
+		if(opcodeId == OpcodeTable.WORD) return isWordExpression(OPERAND) ? OPERAND : null;
+		if(!OpcodeTable.isInstruction(opcodeId) || !isSIC && OpcodeTable.format(opcodeId) == FORMAT2) return null;
+		return Expression.isExpression(OPERAND) ? operandSymbol(OPERAND) : null;
+		}//END OF: expressionText
+	
+	
+	
+	static boolean isWordExpression(String operand){
+		/**isWordExpression: a WORD operand with symbols or *, not a number or an X'..' or C'..' constant**/
+		return !operand.isEmpty() && operand.indexOf('\'') < 0
+				&& (Character.isLetter(operand.charAt(0)) || Expression.isExpression(operand));
+		}
+	
+	
+	
+	private void equate(SourceLine record){
+		/**equate: defines the label of an EQU line, now if the symbols its expression uses are all defined, else
+		it waits for resolveEquates at the end of the section**/
+		Expression expression = record.expression;
+		if(expression == null) return;//already reported
+		if(expression.evaluate(symbolTable))
+			defineEquate(record.labelId, expression);
+		else if(expression.undefinedSymbol() >= 0){
+			equates.add(record);
+			pendingSymbols.set(record.labelId);
+			}
+		else
+			expressionError(record, "Invalid expression: " + expression.error());
+		}//END OF: equate
+	
+	
+	
+	private void defineEquate(int id, Expression expression){
+		if(expression.isRelative()) symbolTable.define(id, expression.value());
+		else symbolTable.defineAbsolute(id, expression.value());
+		}
+	
+	
+	
+	private void resolveExpressions(int first){
+		/**resolveExpressions: at the end of a section, when all of its symbols are known, defines the EQU symbols
+		that were waiting and checks the expression operands of the section's lines from first on. These errors
+		are written at the end of the section, with the line they belong to**/
+		resolveEquates();
+		for(int i = first; i < lines.size(); i++){
+			SourceLine record = lines.get(i);
+			if(record.expression == null || record.opcodeId == OpcodeTable.EQU || record.opcodeId == OpcodeTable.ORG)
+				continue;
+			if(!record.expression.evaluate(symbolTable)){
+				reportError(String.format(".!!!Error: %s in operand %s!!!", record.expression.error(),
+						record.operand), record.lineNumber);
+				isErrorFree = false;
+				}
+			}
+		}//END OF: resolveExpressions
+	
+	
+	
+	private void resolveEquates(){
+		/**resolveEquates: defines the EQU symbols whose expressions use symbols defined after them. Every waiting
+		EQU line is a node of a graph, with an edge to it from each waiting symbol its expression uses, and the
+		nodes are evaluated in topological order (Kahn's algorithm): each one once, after everything it depends on,
+		so the work is linear in the lines and references however the definitions chain. The nodes that are never
+		reached are on a cycle or depend on one**/
+		int count = equates.size();
+		if(count == 0) return;
+		int[] node = new int[symbolTable.size()];//node of a waiting symbol, by symbol id
+		int[] waiting = new int[count];			//edges into a node not yet taken away
+		int[] first = new int[count + 1];		//edges out of node u are edges[first[u], first[u + 1])
+		for(int v = 0; v < count; v++) node[equates.get(v).labelId] = v;
+		for(int v = 0; v < count; v++){
+			Expression expression = equates.get(v).expression;
+			for(int i = 0; i < expression.size(); i++){
+				int id = expression.symbol(i);
+				if(id >= 0 && pendingSymbols.get(id)){
+					first[node[id] + 1]++;
+					waiting[v]++;
+					}
+				}
+			}
+		for(int u = 0; u < count; u++) first[u + 1] += first[u];
+		int[] edges = new int[first[count]], next = Arrays.copyOf(first, count);
+		for(int v = 0; v < count; v++){
+			Expression expression = equates.get(v).expression;
+			for(int i = 0; i < expression.size(); i++){
+				int id = expression.symbol(i);
+				if(id >= 0 && pendingSymbols.get(id)) edges[next[node[id]]++] = v;
+				}
+			}
 		
-		int destAddress = 0, srcAddress = 0, base = 0;
-		boolean isOperandValid = true;
-		ObjcodeGenerator generator = new ObjcodeGenerator();
-		String line, strObjCodeInstruction = "";
+		/**take the nodes nothing waits on, each one frees the nodes that wait on it**/
+		int[] queue = new int[count];
+		int head = 0, tail = 0;
+		for(int v = 0; v < count; v++)
+			if(waiting[v] == 0) queue[tail++] = v;
+		while(head < tail){
+			int u = queue[head++];
+			SourceLine record = equates.get(u);
+			if(record.expression.evaluate(symbolTable))
+				defineEquate(record.labelId, record.expression);
+			else{
+				reportError(String.format(".!!!Error: %s in the definition of %s!!!", record.expression.error(),
+						record.label), record.lineNumber);
+				isErrorFree = false;
+				}
+			for(int e = first[u]; e < first[u + 1]; e++)
+				if(--waiting[edges[e]] == 0) queue[tail++] = edges[e];
+			}
+		for(int v = 0; v < count; v++){
+			if(waiting[v] == 0) continue;
+			SourceLine record = equates.get(v);
+			reportError(String.format(".!!!Error: symbol %s depends on a circular definition!!!", record.label),
+					record.lineNumber);
+			isErrorFree = false;
+			}
+		equates.clear();
+		pendingSymbols.clear();
+		}//END OF: resolveEquates
+	
+	
+	
+	private int placeLiterals(int locCounter, int lineNumber){
+		/**placeLiterals: puts the pending literal pool at locCounter (LTORG or END), one record per literal,
+		returns the location after the pool**/
+		for(int id = literals.poolStart(); id < literals.size(); id++){
+			String name = literals.name(id);
+			SourceLine record = new SourceLine("*\t" + name, "*", name, "", locCounter);
+			record.lineNumber = lineNumber;
+			record.literal = literals.value(id);
+			symbolTable.define(literals.symbolId(id), locCounter);
+			locCounter += record.literal.length;
+			record.nextLocation = locCounter;
+			record.listing = listing(locCounter, "*", name, "");
+			writeRecord(record);
+			}
+		literals.endPool();
+		return locCounter;
+		}//END OF: placeLiterals
+	
+	
+	
+	private void writeRecord(SourceLine record){
+		/**writeRecord: keeps the record for pass two and writes it to errorMsg.txt**/
+		lines.add(record);
+		if(record.diagnostics != null)
+			for(String msg : record.diagnostics)
+				reportError(msg, record.lineNumber);
+		errorMsgWriter.write(record.listing);
+		errorMsgWriter.println();
+		}//END OF: writeRecord
+	
+	
+	
+	void pass2(){
+		
+		PrintWriter programWriter = null;
 		
 		
 		try{
-			reader = new BufferedReader(new FileReader("errorMsg.txt"));
-			objWriter = new PrintWriter("finalAssembly.txt", "UTF-8");
-			line = reader.readLine();
-			objWriter.write(String.format("%-37s%-9s", line, "object code")); 
+			objWriter = openOutput(listingFileName, listingLines, LISTING_OUTPUT);
+			objWriter.write(String.format("%-37s%-9s", LISTING_HEADER, "object code")); 
+			objWriter.println();
 			objWriter.println();
-			line = reader.readLine();   objWriter.println();
-			line = reader.readLine();
-			objWriter.write(line);   objWriter.println();
-			setTokens(line.substring(9));
+			programWriter = openOutput(objectProgramFileName, programLines, PROGRAM_OUTPUT);
+			boolean isImageKept = sourceReader != null || captured != null;//in memory or for the cache
+			
+			if(sections.size() == 1){
+				ControlSection program = sections.get(0);
+				encodeSection(program, objWriter, programWriter, isImageKept);
+				objectBytes += program.objectBytes;
+				encoder = program.generator;
+				image = program.image;
+				}
+			else
+				encodeSections(programWriter, isImageKept);
+			imageBase = startingAddress;
+			imageLength = programLength;
+			
+			objWriter.write(lines.get(lines.size() - 1).listing);//END
+			objWriter.close();
+			programWriter.close();
+			}
+		
+			catch (IOException e) { e.printStackTrace(); }		
+		
+		}//END OF pass2
+	
+	
+	
+	private void encodeSections(PrintWriter programWriter, boolean isImageKept){
+		/**encodeSections: every control section is encoded into buffers of its own, the first one here and the
+		others on the common pool, then the buffers and images are put together in source order**/
+		int count = sections.size();
+		final StringWriter[] listings = new StringWriter[count], programs = new StringWriter[count];
+		ArrayList<Future<?>> runs = new ArrayList<Future<?>>(count);
+		for(int i = count - 1; i >= 0; i--){
+			final ControlSection s = sections.get(i);
+			final int n = i;
+			listings[i] = new StringWriter(80 * (s.end - s.first));
+			programs[i] = new StringWriter(80 * (s.end - s.first) / 8);
+			Runnable task = new Runnable(){
+				public void run(){
+					encodeSection(s, new PrintWriter(listings[n]), new PrintWriter(programs[n]), isImageKept);
+					}
+				};
+			if(i > 0) runs.add(ForkJoinPool.commonPool().submit(task));
+			else task.run();
+			}
+		for(Future<?> run : runs){
+			try{
+				run.get();
+				}
+			catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while encoding control sections", e);
+				}
+			catch(ExecutionException e){
+				if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+				throw new IllegalStateException(e.getCause());
+				}
+			}
+		
+		encoder = new ObjcodeGenerator();//for the counts of all of them
+		image = isImageKept ? new byte[Math.max(programLength, 0)] : null;
+		for(int i = 0; i < count; i++){
+			ControlSection s = sections.get(i);
+			objWriter.write(listings[i].toString());
+			programWriter.write(programs[i].toString());
+			objectBytes += s.objectBytes;
+			encoder.addCounts(s.generator);
+			if(image != null)
+				System.arraycopy(s.image, 0, image, s.imageOffset, Math.min(s.image.length, s.length));
+			s.image = null;
+			}
+		}//END OF: encodeSections
+	
+	
+	
+	private void encodeSection(ControlSection section, PrintWriter listing, PrintWriter program, boolean isImageKept){
+		/**encodeSection: pass two over one control section, its listing lines and object program go to the
+		writers and its object code to section.image. Only the section and its own symbol table are written to,
+		so sections can be encoded in parallel**/
+		int destAddress = 0, base = 0, index = section.first, objcodeLength;
+		SymbolTable symbols = section.symbols;
+		ObjcodeGenerator generator = new ObjcodeGenerator();
+		ObjectProgramWriter objectProgram = new ObjectProgramWriter(program);
+		String strObjCodeInstruction = "";
+		SourceLine record;
+		byte[] objcode = new byte[ObjcodeGenerator.MAX_OBJCODE_LEN];
+		byte[] sectionImage = isImageKept ? new byte[IMAGE_BLOCK] : null;
+		long sectionBytes = 0;
+		
+		
+		if(index == 0 && lines.get(0).opcodeId == OpcodeTable.START){
+			listing.write(lines.get(0).listing);   listing.println();
+			index++;
+			}
+		objectProgram.writeHeader(section.name, section.start, section.length);
+		if(!section.definitions.isEmpty()){
+			ArrayList<Integer> addresses = new ArrayList<Integer>(section.definitions.size());
+			for(String symbol : section.definitions) addresses.add(symbols.get(symbol));
+			objectProgram.writeDefinitions(section.definitions, addresses);
+			}
+		objectProgram.writeReferences(section.references);
+		
+		for(; index < section.end; index++){
+			
+			record = lines.get(index);
+			strObjCodeInstruction = "";
+			objcodeLength = 0;
+			int id = record.opcodeId;
 			
+			if(record.isComment) id = -1;
 			
-			if(OPCODE.equals("START")){
-				line = reader.readLine();
-				setTokens(line.substring(9));
+			/**evaluate opcode and operand**/
+			if(record.literal != null){
+				/**a literal pool entry, its value is its object code**/
+				objcodeLength = record.literal.length;
+				if(objcode.length < objcodeLength) objcode = new byte[objcodeLength];
+				System.arraycopy(record.literal, 0, objcode, 0, objcodeLength);
+				}
+			else if(OpcodeTable.isInstruction(id)){
+				
+				destAddress = resolveOperand(record, symbols);
+				if(destAddress != SymbolTable.UNDEFINED){
+					/**generate object code**/
+					objcodeLength = encodeLine(record, destAddress, isAbsolute(record, symbols), base, generator,
+							objcode, 0);
+					if(record.isExtended)//20 bit address field
+						addModifications(objectProgram, record, symbols, record.location + 1, 5);
+					}
+				
+				}//END OF: if opcode is an instruction
+			else switch(id){
+				case OpcodeTable.WORD:
+					if(record.expression != null){
+						/**a word holding the value of an expression, the loader fixes the addresses in it**/
+						int value = resolveOperand(record, symbols);
+						objcodeLength = 3;
+						objcode[0] = (byte)(value >> 16);
+						objcode[1] = (byte)(value >> 8);
+						objcode[2] = (byte)value;
+						if(!isSIC) addModifications(objectProgram, record, symbols, record.location, 6);
+						}
+					else//a constant, encoded like a BYTE
+						objcodeLength = encodeLine(record, 0, 0, generator, objcode, 0);
+					break;
+				case OpcodeTable.BYTE:
+					objcodeLength = encodeLine(record, 0, 0, generator, objcode, 0);
+					break;
+				case OpcodeTable.RESW:
+				case OpcodeTable.RESB:
+				case OpcodeTable.ORG://the next object code may be anywhere
+					objectProgram.gap();
+					break;
+				case OpcodeTable.BASE:
+					if(symbols.isDefined(record.operandId))
+						base = symbols.address(record.operandId);
+					break;
+				default://comments have no object code
+					break;
 				}
 			
-
-			while(!OPCODE.equals("END")){
+			if(objcodeLength > 0){
+				sectionBytes += objcodeLength;
+				strObjCodeInstruction = ObjcodeGenerator.toHex(objcode, 0, objcodeLength);
+				objectProgram.addText(record.location, objcode, 0, objcodeLength);
+				if(sectionImage != null){
+					int offset = record.location - section.start;
+					if(offset + objcodeLength > sectionImage.length)
+						sectionImage = Arrays.copyOf(sectionImage,
+								Math.max(2 * sectionImage.length, offset + objcodeLength));
+					System.arraycopy(objcode, 0, sectionImage, offset, objcodeLength);
+					}
+				}
+				
+			listing.write(objcodeColumn(record.listing, strObjCodeInstruction));
+			listing.println();
+			
+			}//END OF for records of the section
+		
+		
+		if(section == sections.get(0)){
+			/**the End record points at the END operand, or the start of the program**/
+			int firstInstruction = symbols.get(lines.get(lines.size() - 1).operand);
+			objectProgram.writeEnd(firstInstruction < 0 ? startingAddress : firstInstruction);
+			}
+		else
+			objectProgram.writeEnd();
+		listing.flush();
+		program.flush();
+		section.image = sectionImage;
+		section.objectBytes = sectionBytes;
+		section.generator = generator;
+		}//END OF: encodeSection
+	
+	
+	
+	private void onePass(){
+		/**onePass: load-and-go assembly, object code goes into the memory image as each line is read**/
+		symbolTable.clear();
+		literals.clear();
+		macros.clear();
+		fixupChains.clear();
+		lines.clear();
+		diagnostics.clear();
+		lineCount = startingAddress = 0;
+		isErrorFree = true;
+		image = new byte[IMAGE_BLOCK];
+		sections.clear();
+		section = new ControlSection("", symbolTable, 0, 0);
+		sections.add(section);
+		int locCounter = 0, address = 0, base = 0, baseId = -1, offset, labelId;
+		CharSequence line;
+		ObjcodeGenerator generator = new ObjcodeGenerator();
+		encoder = generator;
+		Fixup fixup;
+		
+		try {
+			errorMsgWriter = null;//not the last run's, if opening fails
+			openSource();
+			errorMsgWriter = openOutput(errorFileName, errorLines, ERROR_OUTPUT);
+			errorMsgWriter.write(LISTING_HEADER);
+			errorMsgWriter.println();  errorMsgWriter.println();
+			line = nextLine();  setTokens(line);
+			
+			
+			if(opcodeId == OpcodeTable.START){
+				startingAddress = Integer.parseInt(OPERAND, 16);//the START operand is hexadecimal
+				locCounter = startingAddress;
+				macroError();
+				errorMsgWriter.write(listing(startingAddress, LABEL, OPCODE, OPERAND));
+				errorMsgWriter.println();
+				line = nextLine();	setTokens(line);
+				}
+			imageBase = locCounter;
+			
+			
+			while(opcodeId != OpcodeTable.END && line != null){
 				
-				if(line.trim().charAt(0) != COMMENT){
+				macroError();
+				boolean isComment = tokenizer.isComment(COMMENT);
+				if(!isComment && opcodeId != OpcodeTable.BASE){
 					
-					strObjCodeInstruction = "";
-					/**evaluate opcode and operand**/
-					if(opcodeTable.containsKey(OPCODE) 
-						|| (OPCODE.charAt(0) == '+' 
-							&& opcodeTable.containsKey(OPCODE.substring(1)))){
-						
-						if(!OPERAND.equals("")){
-							if(symbolTable.containsKey(OPERAND))
-								destAddress = symbolTable.get(OPERAND);
-							else if((OPERAND.charAt(0) == '#' || OPERAND.charAt(0) == '@')
-									 && OPERAND.length() > 1){
-								if(symbolTable.containsKey(OPERAND.substring(1)))
-									destAddress = symbolTable.get(OPERAND.substring(1));
-								else if(isConstant(OPERAND.substring(1)))
-									destAddress = 0;
-								}
-							else if(registerTable.containsKey(OPERAND))
-								destAddress = registerTable.get(OPERAND);
-							else if(registerTable.containsKey(OPERAND.substring(0, 1))
-									&& registerTable.containsKey(OPERAND.substring(2)))
-								destAddress = 0;
-							else if(OPERAND.length() > 2 
-								  && OPERAND.substring(OPERAND.length() - 2).equals(",X"))
-								destAddress = symbolTable.get(OPERAND.substring(0, OPERAND.length() - 2));
-							else {//undefined operand symbol
-								destAddress = 0;
-								isOperandValid = false;
-								}
-							}
-						else{//operand field is empty
-							destAddress = 0;
+					if(!LABEL.equals("")){
+						labelId = symbolTable.intern(LABEL);
+						if(symbolTable.isDefined(labelId)){
+							/**error: duplicate symbol**/
+							reportError(".!!!Error detected on next line. Duplicate symbol!!!", lineCount);
+							isErrorFree = false;
 							}
-						
-
-						if(isOperandValid){
-							/**generate object code**/
-							byte opcodeByte;
-							byte format;
-							if(isSIC){ 
-								format = FORMAT_SIC;
-								opcodeByte = (byte)opcodeTable.get(OPCODE).hexRepresentation;
-								}
-							else if(OPCODE.charAt(0) == '+' 
-								  && opcodeTable.get(OPCODE.substring(1)).format == FORMAT3){ 
-								format = FORMAT4;
-								opcodeByte = (byte)opcodeTable
-										.get(OPCODE.substring(1)).hexRepresentation;
-								}
-							else{
-								format = opcodeTable.get(OPCODE).format;
-								opcodeByte = (byte)opcodeTable.get(OPCODE).hexRepresentation;
-								}
-							String str = line.substring(0, 7).trim();
-							srcAddress = Integer.valueOf(str, 16);
-							strObjCodeInstruction = generator.generateObjcode(OPCODE, opcodeByte, OPERAND,
-									srcAddress, destAddress, base, 0, format);
+						else{
+							/**define the symbol and patch everything waiting on it**/
+							symbolTable.define(labelId, locCounter);
+							resolveFixups(labelId, generator);
 							}
-						else
-							isOperandValid = true;//reset
+						}//END OF: LABEL != ""
+					
+					
+					address = locCounter;
+					int length = lineLength();
+					if(length >= 0) locCounter += length;
+					if(OpcodeTable.isInstruction(opcodeId)){
 						
-						}//END OF: if opcode is in table
-					else if(OPCODE.equals("BYTE")){
-						strObjCodeInstruction = 
-							generator.generateObjcode(OPCODE, (byte)-1, OPERAND,
-								0, 0, 0, 0, FORMATBYTE);
+						fixup = new Fixup(OPCODE, (byte)OpcodeTable.opcode(opcodeId), OPERAND, address,
+								encodingFormat(opcodeId, isExtended));
+						fixup.pc = locCounter;
+						fixup.line = lineCount;
+						fixup.base = base;
+						fixup.baseId = baseId;
+						fixup.destId = internOperand();
+						if(Expression.isExpression(OPERAND)){
+							reportError(".!!!Error detected on next line. Expression needs two passes!!!", lineCount);
+							isErrorFree = false;
 							}
-					else if(OPCODE.equals("WORD")){
-						strObjCodeInstruction = 
-							generator.generateObjcode(OPCODE, (byte)-1, OPERAND,
-								0, 0, 0, 0, FORMATWORD);
+						if(fixup.destId < 0 && LiteralTable.isLiteral(OPERAND)){
+							reportError(".!!!Error detected on next line. Invalid literal!!!", lineCount);
+							isErrorFree = false;
 							}
-					else if(OPCODE.equals("BASE")){
-						if(symbolTable.containsKey(OPERAND))
-							base = symbolTable.get(OPERAND);
+						
+						/**emit now, chain the line if it still depends on an undefined symbol**/
+						encodeFixup(fixup, generator);
+						if(fixup.destId >= 0 && !symbolTable.isDefined(fixup.destId))
+							addFixup(fixup.destId, fixup);
+						if(fixup.baseId >= 0 && fixup.format == FORMAT3
+							&& !symbolTable.isDefined(fixup.baseId))
+							addFixup(fixup.baseId, fixup);
 						}
-					else if(OPCODE.equals("RESW") || OPCODE.equals("RESB")){
-						strObjCodeInstruction = "";
+					else if(opcodeId == OpcodeTable.WORD){
+						offset = imageOffset(address);
+						generator.encodeObjcode(OPCODE, (byte)-1, OPERAND,
+								0, 0, 0, 0, FORMATWORD, image, offset);
+						}
+					else if(opcodeId == OpcodeTable.BYTE){
+						offset = imageOffset(address);
+						generator.encodeObjcode(OPCODE, (byte)-1, OPERAND,
+								0, 0, 0, 0, FORMATBYTE, image, offset);
+						}
+					else if(opcodeId == OpcodeTable.EQU || opcodeId == OpcodeTable.ORG){
+						reportError(".!!!Error detected on next line. " + OPCODE + " needs two passes!!!", lineCount);
+						isErrorFree = false;
+						}
+					else if(length < 0){
+						reportError(".!!!Error detected on next line. Invalid opcode!!!", lineCount);
+						isErrorFree = false;
 						}
 					
-					
-					objWriter.write(String.format("%-37s%-9s",
-							line, strObjCodeInstruction));
-					objWriter.println();
-					
-					}//END OF: this is not a comment line
-
-				line = reader.readLine();
-				setTokens(line.substring(9));
+					}//END OF: line != COMMENT
+				else if(!isComment){
+					/**base may be a forward reference, lines that need it wait on its chain**/
+					baseId = internOperand();
+					if(symbolTable.isDefined(baseId)){
+						base = symbolTable.address(baseId);
+						baseId = -1;
+						}
+					}
 				
-				}//END OF while != "END"
+				errorMsgWriter.write(listing(locCounter, LABEL, OPCODE, OPERAND));
+				errorMsgWriter.println();
+				if(opcodeId == OpcodeTable.LTORG && !isComment)
+					locCounter = loadLiterals(locCounter, generator);
+				line = nextLine();  setTokens(line);
+				
+				}//END OF: while opcode != END
 			
 			
-			objWriter.write(line);
+			locCounter = loadLiterals(locCounter, generator);
+			macroError();
+			errorMsgWriter.write(listing(locCounter, LABEL, OPCODE, OPERAND));
+			errorMsgWriter.println();
+			programLength = locCounter - startingAddress;
+			imageLength = locCounter - imageBase;
 			
-			objWriter.close();
-			reader.close();
-			}
+			/**whatever is still chained was never defined**/
+			for(int id = 0; id < fixupChains.size(); id++){
+				if(fixupChains.get(id) == null || symbolTable.isDefined(id)) continue;
+				for(Fixup f : fixupChains.get(id))
+					reportError(String.format(".!!!Error: undefined symbol %s referenced at %X!!!",
+							symbolTable.name(id), f.address), f.line);
+				isErrorFree = false;
+				}
+			fixupChains.clear();
+			
+			if(isErrorFree){
+				errorMsgWriter.write("...No errors detected...");
+				errorMsgWriter.println();
+				}
+			
+			closeSource();
+			errorMsgWriter.close();
+			}//END OF: try
 		
-			catch (IOException e) { e.printStackTrace(); }		
+		catch (IOException e) { inputError(e); }
 		
-		}//END OF pass2
+		}//END OF: onePass
+	
+	
+	
+	private void addFixup(int symbolId, Fixup fixup){
+		while(fixupChains.size() <= symbolId) fixupChains.add(null);
+		ArrayList<Fixup> chain = fixupChains.get(symbolId);
+		if(chain == null){
+			chain = new ArrayList<Fixup>();
+			fixupChains.set(symbolId, chain);
+			}
+		chain.add(fixup);
+		}//END OF: addFixup
+	
+	
+	
+	private void macroError(){
+		/**macroError: the one pass version, the error is written before the current line**/
+		if(!macros.hasError()) return;
+		while(macros.hasError()) reportError(macros.takeError(), lineCount);
+		isErrorFree = false;
+		}
+	
+	
+	
+	private int loadLiterals(int locCounter, ObjcodeGenerator generator){
+		/**loadLiterals: placeLiterals for one pass, the values go into the memory image and every line waiting
+		on a literal is patched**/
+		for(int id = literals.poolStart(); id < literals.size(); id++){
+			byte[] value = literals.value(id);
+			int offset = imageOffset(locCounter, value.length);//may grow the image, so take it before passing image
+			System.arraycopy(value, 0, image, offset, value.length);
+			symbolTable.define(literals.symbolId(id), locCounter);
+			resolveFixups(literals.symbolId(id), generator);
+			locCounter += value.length;
+			errorMsgWriter.write(listing(locCounter, "*", literals.name(id), ""));
+			errorMsgWriter.println();
+			}
+		literals.endPool();
+		return locCounter;
+		}//END OF: loadLiterals
+	
+	
+	
+	private void resolveFixups(int symbolId, ObjcodeGenerator generator){
+		/**resolveFixups: re-encodes every line chained on a symbol that has just been defined**/
+		if(symbolId >= fixupChains.size() || fixupChains.get(symbolId) == null) return;
+		ArrayList<Fixup> chain = fixupChains.set(symbolId, null);
+		for(Fixup f : chain)
+			encodeFixup(f, generator);
+		}//END OF: resolveFixups
+	
+	
+	
+	private void encodeFixup(Fixup f, ObjcodeGenerator generator){
+		int destAddress = 0, base = f.base;
+		if(symbolTable.isDefined(f.destId))
+			destAddress = symbolTable.address(f.destId);
+		if(symbolTable.isDefined(f.baseId))
+			base = symbolTable.address(f.baseId);
+		int offset = imageOffset(f.address);//may grow the image, so take it before passing image
+		/**only the encoding with every symbol defined is counted, once, as pass two would count it**/
+		boolean isFinal = (f.destId < 0 || symbolTable.isDefined(f.destId))
+				&& (f.baseId < 0 || f.format != FORMAT3 || symbolTable.isDefined(f.baseId));
+		generator.setCounting(isFinal && !f.isCounted);
+		generator.encodeObjcode(f.opcode, f.opcodeByte, f.operand,
+				f.pc, destAddress, base, 0, f.format, image, offset);
+		generator.setCounting(true);
+		f.isCounted |= isFinal;
+		}//END OF: encodeFixup
+	
+	
+	
+	private int imageOffset(int address){ return imageOffset(address, ObjcodeGenerator.MAX_OBJCODE_LEN); }
+	
+	
+	
+	private int imageOffset(int address, int length){
+		/**imageOffset: makes room for length bytes at address in the memory image, returns their offset**/
+		int offset = address - imageBase;
+		if(offset + length > image.length){
+			int size = image.length;
+			while(offset + length > size) size *= 2;
+			image = Arrays.copyOf(image, size);
+			}
+		return offset;
+		}//END OF: imageOffset
+	
+	
+	
+	private String sourceText(CharSequence line){
+		/**the source text kept on a record, not materialized for memory mapped input**/
+		return line instanceof String ? (String)line : null;
+		}
+	
+	
+	
+	private int internOperand(){
+		/**internOperand: the symbol id the current operand refers to, -1 for none**/
+		if(OPERAND.equals("")) return -1;
+		if(!OpcodeTable.isInstruction(opcodeId) && opcodeId != OpcodeTable.BASE)
+			return -1;//a directive whose operand is not a symbol
+		if(!isSIC && OpcodeTable.format(opcodeId) == FORMAT2)
+			return -1;//register operands
+		String symbol = operandSymbol(OPERAND);
+		if(LiteralTable.isLiteral(OPERAND)) return literals.intern(symbol, symbolTable);
+		if(isConstant(symbol) || Expression.isExpression(OPERAND)) return -1;//pass one compiles an expression
+		return symbolTable.intern(symbol);
+		}//END OF: internOperand
 	
 	
 	
-	private void setTokens(String line){
-		/**setTokens: sets label, opcode, operand**/
+	private String operandSymbol(String operand){
+		/**operandSymbol: strips the #, @ prefix and the ,X suffix off an operand**/
+		int start = 0, end = operand.length();
+		if(end > 1 && (operand.charAt(0) == '#' || operand.charAt(0) == '@')) start = 1;
+		if(end - start > 2 && operand.endsWith(",X")) end -= 2;
+		return operand.substring(start, end);
+		}//END OF: operandSymbol
+	
+	
+	
+	private CharSequence nextLine() throws IOException {
+		/**nextLine: the next line after macro processing, the tokenizer already holds its fields**/
+		return macros.nextLine(tokenizer);
+		}
+	
+	
+	
+	private CharSequence readLine() throws IOException {
+		/**readLine: the next source line, a view of the mapped file in memory mapped mode**/
+		CharSequence line = mappedSource != null ? mappedSource.nextLine() : reader.readLine();
+		if(line != null){
+			lineCount++;
+			sourceBytes += line.length() + 1;//counting the line end as one
+			}
+		return line;
+		}
+	
+	
+	
+	private void openSource() throws IOException {
+		if(sourceReader != null)
+			reader = sourceReader instanceof BufferedReader ? (BufferedReader)sourceReader
+					: new BufferedReader(sourceReader);
+		else if(isMemoryMapped) mappedSource = new MappedSource(fileName);
+		else reader = new BufferedReader(new FileReader(fileName));
+		}
+	
+	
+	
+	private void closeSource() throws IOException {
+		if(mappedSource != null) mappedSource.close();
+		else if(sourceReader == null) reader.close();//a caller's reader is left open
+		mappedSource = null;
+		reader = null;
+		}
+	
+	
+	
+	private PrintWriter openOutput(String outputFileName, LineCollector collector, int output) throws IOException {
+		/**openOutput: the named output file, or its in memory collector when assembling from a Reader. While a
+		cache miss is assembled the text is also kept in captured**/
+		if(captured == null){
+			if(collector != null) return new PrintWriter(collector);
+			return new PrintWriter(outputFileName, "UTF-8");
+			}
+		Writer out = collector != null ? collector : new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(outputFileName), StandardCharsets.UTF_8));
+		captured[output] = new StringBuilder(4096);
+		return new PrintWriter(new Capture(out, captured[output]));
+		}
+	
+	
+	
+	private void inputError(IOException e){
+		/**inputError: the source or an output file could not be opened, read or written. The assembly stops there
+		with an error, so pass two never runs on the lines read so far**/
+		isErrorFree = false;
+		isInputFailed = true;
+		String msg = ".!!!Error: " + (e instanceof FileNotFoundException ? "cannot open " : "I/O error, ")
+				+ e.getMessage() + "!!!";
+		diagnostics.add(new AssemblyResult.Diagnostic(lineCount, msg));
+		if(errorMsgWriter != null){
+			errorMsgWriter.write(msg);
+			errorMsgWriter.println();
+			errorMsgWriter.close();
+			}
+		try{ if(reader != null || mappedSource != null) closeSource(); }
+		catch(IOException ignored){ }
+		}//END OF: inputError
+	
+	
+	
+	private void reportError(String msg, int line){
+		/**reportError: writes an error message to errorMsg.txt and keeps it for the AssemblyResult**/
+		errorMsgWriter.write(msg);
+		errorMsgWriter.println();
+		diagnostics.add(new AssemblyResult.Diagnostic(line, msg));
+		}
+	
+	
+	
+	private void setTokens(CharSequence line){
+		/**setTokens: sets label, opcode, operand from the fields the tokenizer found in line**/
+		int count = tokenizer.count();
 		if(null == line){
 			LABEL = OPCODE = OPERAND = "";
+			opcodeId = -1;
 			return;
 			}
-		String[] sArray = line.trim().split("\\s+");
-		if(sArray.length == 1){		//0 label, 1 opcode, 0 operand
+		if(count <= 1){				//0 label, 1 opcode, 0 operand
 			LABEL = "";
-			OPCODE = sArray[0];
+			OPCODE = opcodeField(line, 0);
 			OPERAND = "";
 			}
-		else if(sArray.length == 2){//0 label, 1 opcode, 1 operand
+		else if(count == 2){		//0 label, 1 opcode, 1 operand
 			LABEL = "";
-			OPCODE = sArray[0];
-			OPERAND = sArray[1];
+			OPCODE = opcodeField(line, 0);
+			OPERAND = tokenizer.field(1);
+			if(opcodeId < 0 && OpcodeTable.lookup(line, tokenizer.start(1), tokenizer.end(1)) == OpcodeTable.CSECT){
+				LABEL = tokenizer.field(0);//NAME CSECT, a label and no operand
+				OPCODE = opcodeField(line, 1);
+				OPERAND = "";
+				}
 			}
-		else if(sArray.length == 3){//1 label, 1 opcode, 1 operand
-			LABEL = sArray[0];
-			OPCODE = sArray[1];
-			OPERAND = sArray[2];
+		else if(count == 3){		//1 label, 1 opcode, 1 operand
+			LABEL = tokenizer.field(0);
+			OPCODE = opcodeField(line, 1);
+			OPERAND = tokenizer.field(2);
 			}
 		//if label length exceeds 6 then truncate the label
 		if(LABEL.length() > MAX_SYMBOL_LEN)
 			LABEL = LABEL.substring(0, (MAX_SYMBOL_LEN - 1));		
 		
 		}//END OF: setTokens
+	
+	
+	
+	private String opcodeField(CharSequence line, int field){
+		/**opcodeField: identifies the opcode, known mnemonics come back as the table's shared string**/
+		if(field >= tokenizer.count()){
+			opcodeId = -1;
+			return "";
+			}
+		identifyOpcode(line, field);
+		if(opcodeId >= 0) return OpcodeTable.mnemonic(opcodeId, isExtended);
+		return tokenizer.field(field);
+		}//END OF: opcodeField
+	
+	
+	
+	private void identifyOpcode(CharSequence line, int field){
+		/**identifyOpcode: looks the opcode field up in place, '+' is skipped rather than cut off**/
+		int start = tokenizer.start(field), end = tokenizer.end(field);
+		isExtended = end - start > 1 && line.charAt(start) == '+';
+		opcodeId = OpcodeTable.lookup(line, isExtended ? start + 1 : start, end);
+		opcodeLookups++;
+		if(isSIC && !OpcodeTable.isSIC(opcodeId))
+			opcodeId = -1;
+		if(isExtended && (isSIC || !OpcodeTable.isInstruction(opcodeId)
+				|| OpcodeTable.format(opcodeId) != FORMAT3))
+			opcodeId = -1;//only SICXE format 3 instructions have a format 4 form
+		}//END OF: identifyOpcode
+	
+	
+	
+	private int lineLength(){
+		/**lineLength: how far the current line moves the location counter, -1 if its opcode is invalid**/
+		if(opcodeId < 0) return -1;
+		if(OpcodeTable.isInstruction(opcodeId))
+			return isExtended ? FORMAT4 : OpcodeTable.format(opcodeId);
+		switch(opcodeId){
+			case OpcodeTable.WORD:
+				return 3;
+			case OpcodeTable.BYTE:
+				if(OPERAND.length() >= 4 && OPERAND.startsWith("C'") && OPERAND.endsWith("'"))
+					return OPERAND.length() - 3;//Byte is a character constant
+				return 1;
+			case OpcodeTable.RESW:
+				return 3 * Integer.parseInt(OPERAND);
+			case OpcodeTable.RESB:
+				return Integer.parseInt(OPERAND);
+			case OpcodeTable.LTORG://the pool after it is placed separately
+				return 0;
+			case OpcodeTable.CSECT:
+			case OpcodeTable.EXTDEF:
+			case OpcodeTable.EXTREF:
+				return isOnePass ? -1 : 0;//sections are relocated and linked by a loader, not loaded and run
+			case OpcodeTable.EQU:
+			case OpcodeTable.ORG:
+				return isOnePass ? -1 : 0;//EQU may use symbols defined after it, only two passes can wait for them
+			default://START, END and BASE are not allowed here
+				return -1;
+			}
+		}//END OF: lineLength
+	
+	
+	
+	static String listing(int location, String label, String opcode, String operand){
+		/**listing: the loc/label/opcode/operand columns, as String.format("%-9X\t%-9s\t%-9s\t%-9s\t", ...)
+		gives them but without parsing the format string for every line**/
+		StringBuilder columns = new StringBuilder(40);
+		pad(columns, Integer.toHexString(location).toUpperCase(), 9).append('\t');
+		pad(columns, label, 9).append('\t');
+		pad(columns, opcode, 9).append('\t');
+		pad(columns, operand, 9).append('\t');
+		return columns.toString();
+		}//END OF: listing
+	
+	
+	
+	static String objcodeColumn(String listing, String objcode){
+		/**objcodeColumn: a listing line with the object code column, as String.format("%-37s%-9s", ...)**/
+		StringBuilder line = new StringBuilder(46);
+		pad(line, listing, 37);
+		return pad(line, objcode, 9).toString();
+		}
+	
+	
+	
+	private static StringBuilder pad(StringBuilder out, String field, int width){
+		out.append(field);
+		for(int i = field.length(); i < width; i++) out.append(' ');
+		return out;
+		}
+	
+	
+	
+	SourceLine scanLine(CharSequence line, SourceLine previous){
+		/**scanLine: tokenizes a single line into a record without placing it, for IncrementalAssembler. A line
+		of more than three fields keeps the tokens of the line before it, so those are restored from previous**/
+		if(previous == null){
+			LABEL = OPCODE = OPERAND = "";
+			opcodeId = -1;
+			isExtended = false;
+			}
+		else{
+			LABEL = previous.label;  OPCODE = previous.opcode;  OPERAND = previous.operand;
+			opcodeId = previous.opcodeId;
+			isExtended = previous.isExtended;
+			}
+		tokenizer.scan(line);
+		setTokens(line);
+		SourceLine record = new SourceLine(sourceText(line), LABEL, OPCODE, OPERAND, 0);
+		record.isComment = tokenizer.isComment(COMMENT);
+		record.fieldCount = tokenizer.count();
+		record.opcodeId = opcodeId;
+		record.isExtended = isExtended;
+		if(!record.isComment){
+			record.operandId = internOperand();
+			if(opcodeId != OpcodeTable.BASE && !LABEL.equals(""))
+				record.labelId = symbolTable.intern(LABEL);
+			try{
+				record.length = lineLength();
+				}
+			catch(NumberFormatException e){//a RESW/RESB count that is not a number (yet)
+				record.length = -1;
+				}
+			}
+		return record;
+		}//END OF: scanLine
+	
+	
+	
+	int resolveOperand(SourceLine record){ return resolveOperand(record, symbolTable); }
+	
+	
+	
+	private int resolveOperand(SourceLine record, SymbolTable symbols){
+		/**resolveOperand: the target address pass two encodes an instruction with, UNDEFINED if the operand is a
+		symbol that was never defined, 0 for an external one**/
+		if(record.expression != null)
+			return record.expression.evaluate(symbols) ? record.expression.value() & 0xFFFFFF : SymbolTable.UNDEFINED;
+		String operand = record.operand;
+		if(operand.equals("")) return 0;
+		if(symbols.isExternal(record.operandId)) return 0;
+		if(symbols.isDefined(record.operandId)) return symbols.address(record.operandId);
+		if(isConstant(operandSymbol(operand))) return 0;
+		if(!isSIC && RegisterTable.number(operand) >= 0) return RegisterTable.number(operand);
+		if(!isSIC && operand.length() > 2 && RegisterTable.number(operand.charAt(0)) >= 0
+				&& (RegisterTable.number(operand.substring(2)) >= 0 || isConstant(operand.substring(2))))
+			return 0;//two registers, or a register and the bit count of SHIFTL and SHIFTR
+		return SymbolTable.UNDEFINED;
+		}//END OF: resolveOperand
+	
+	
+	
+	int encodeLine(SourceLine record, int destAddress, int base, ObjcodeGenerator generator,
+			byte[] objcode, int offset){
+		return encodeLine(record, destAddress, false, base, generator, objcode, offset);
+		}
+	
+	
+	
+	private int encodeLine(SourceLine record, int destAddress, boolean isAbsolute, int base,
+			ObjcodeGenerator generator, byte[] objcode, int offset){
+		/**encodeLine: writes the object code of an instruction, BYTE or WORD record, returns its length. An
+		instruction whose operand is absolute is encoded with the value as its constant operand**/
+		int id = record.isComment ? -1 : record.opcodeId;
+		String operand = isAbsolute ? constantOperand(record.operand, destAddress) : record.operand;
+		if(OpcodeTable.isInstruction(id))
+			return generator.encodeObjcode(record.opcode, (byte)OpcodeTable.opcode(id), operand,
+					record.nextLocation, destAddress, base, 0, encodingFormat(id, record.isExtended), objcode, offset);
+		if(id == OpcodeTable.BYTE)
+			return generator.encodeObjcode(record.opcode, (byte)-1, record.operand, 0, 0, 0, 0,
+					FORMATBYTE, objcode, offset);
+		if(id == OpcodeTable.WORD)
+			return generator.encodeObjcode(record.opcode, (byte)-1, record.operand, 0, 0, 0, 0,
+					FORMATWORD, objcode, offset);
+		return 0;
+		}//END OF: encodeLine
+	
+	
+	
+	private boolean isAbsolute(SourceLine record, SymbolTable symbols){
+		/**isAbsolute: the operand is an absolute value rather than an address, a symbol EQU defined as one or an
+		absolute expression (the external symbols of one add their addresses in the loader)**/
+		if(record.expression != null) return !record.expression.isRelative();
+		return symbols.isAbsolute(record.operandId);
+		}
+	
+	
+	
+	private static String constantOperand(String operand, int value){
+		/**constantOperand: the operand with its symbol or expression replaced by its value, which the generator
+		encodes as a constant: #MAXLEN becomes #4096, TABLE-BASE,X becomes 20,X**/
+		int start = operand.charAt(0) == '#' || operand.charAt(0) == '@' ? 1 : 0;
+		boolean isIndexed = operand.length() - start > 2 && operand.endsWith(",X");
+		return operand.substring(0, start) + value + (isIndexed ? ",X" : "");
+		}
+	
+	
+	
+	private void addModifications(ObjectProgramWriter objectProgram, SourceLine record, SymbolTable symbols,
+			int address, int halfBytes){
+		/**addModifications: the modification records of an address field, one naming each external symbol the
+		operand uses and one relocating it if it is relative; after resolveOperand has evaluated the operand**/
+		Expression expression = record.expression;
+		if(expression == null){
+			if(symbols.isExternal(record.operandId))//the loader adds its address
+				objectProgram.addModification(address, halfBytes, "+" + symbols.name(record.operandId));
+			else if(symbols.isDefined(record.operandId) && !symbols.isAbsolute(record.operandId))
+				objectProgram.addModification(address, halfBytes);
+			return;
+			}
+		for(int i = 0; i < expression.size(); i++){
+			String symbol = expression.modification(i, symbols);
+			if(symbol != null) objectProgram.addModification(address, halfBytes, symbol);
+			}
+		if(expression.isRelative()) objectProgram.addModification(address, halfBytes);
+		}//END OF: addModifications
+	
+	
+	
+	boolean isRelative(SourceLine record){
+		/**isRelative: the object code depends on PC and the base register, a SICXE format 3 instruction**/
+		return !isSIC && !record.isExtended && OpcodeTable.isInstruction(record.opcodeId)
+				&& OpcodeTable.format(record.opcodeId) == FORMAT3;
+		}
+	
+	
+	
+	SymbolTable symbols(){ return symbolTable; }
+	
+	
+	
+	private byte encodingFormat(int id, boolean extended){
+		/**encodingFormat: the format the object code generator should use for an instruction**/
+		if(isSIC) return FORMAT_SIC;
+		if(extended) return FORMAT4;
+		return OpcodeTable.format(id);
+		}//END OF: encodingFormat
 
 	
 	/**Helper methods**/
@@ -362,19 +1619,68 @@ public class Assembler {
 	public void setInputFile(String inputFile){ fileName = inputFile; }
 	
 	
-	public void setIsSIC(boolean is_sic){
-		isSIC = is_sic;
-		if(isSIC) buildSICOpcodeTable();
-		else buildSICXEOpcodeTable();
+	public void setOutputFiles(String errorFile, String listingFile){
+		/**where pass one and pass two write, errorMsg.txt and finalAssembly.txt by default**/
+		errorFileName = errorFile;
+		listingFileName = listingFile;
 		}
 	
 	
+	public String getErrorFile(){ return errorFileName; }
+	
+	
+	public String getListingFile(){ return listingFileName; }
+	
+	
+	public void setObjectProgramFile(String objectFile){ objectProgramFileName = objectFile; }
+	
+	
+	public String getObjectProgramFile(){ return objectProgramFileName; }
+	
+	
+	public int getLineCount(){ return lineCount; }
+	
+	
+	public void setIsSIC(boolean is_sic){ isSIC = is_sic; }
+	
+	
 	public boolean isSIC(){ return isSIC; }
 	
 	
 	public boolean isErrorFree(){ return isErrorFree; }
 	
 	
+	public void setOnePass(boolean is_one_pass){ isOnePass = is_one_pass; }
+	
+	
+	public boolean isOnePass(){ return isOnePass; }
+	
+	
+	public void setMemoryMapped(boolean is_mapped){ isMemoryMapped = is_mapped; }
+	
+	
+	public boolean isMemoryMapped(){ return isMemoryMapped; }
+	
+	
+	
+	public void setCache(AssemblyCache outputCache){ cache = outputCache; }//null turns caching off
+	
+	
+	
+	public AssemblyCache getCache(){ return cache; }
+	
+	
+	
+	public AssemblyMetrics getMetrics(){ return metrics; }//of the last assemble()
+	
+	
+	public byte[] getObjectImage(){
+		/**the memory image of the last one pass or in memory assembly, starting at the program's first address**/
+		if(image == null) return new byte[0];
+		return Arrays.copyOf(image, Math.max(imageLength, 0));
+		}
+	
+	
 	private boolean isConstant(String str){  
 		try  {  Integer.parseInt(str);  }  
 	  	catch(NumberFormatException e)  {  return false;  }  
@@ -382,137 +1688,74 @@ public class Assembler {
 		}//END OF isDigit
 	
 	
-	public class OpcodeObj{
-		int hexRepresentation;
-		byte format;
-		OpcodeObj(int hr, byte frmt){
-			hexRepresentation = hr;
-			format = frmt;
+	
+	private static class LineCollector extends Writer{
+		/**keeps what an output file would have received as lines, and passes it on to an optional sink**/
+		private final Writer sink;
+		private final ArrayList<String> lines;
+		private final StringBuilder current;
+		LineCollector(Writer out){
+			sink = out;
+			lines = new ArrayList<String>();
+			current = new StringBuilder(80);
 			}
- 		}//END OF: class OpcodeObj
-	
-	
-	private void buildSICXEOpcodeTable(){
-		opcodeTable.clear();
-		opcodeTable.put("ADD",new OpcodeObj(0x18, FORMAT3));
-		opcodeTable.put("ADDF",new OpcodeObj(0x58, FORMAT3));
-		opcodeTable.put("ADDR",new OpcodeObj(0x90, FORMAT2));
-		opcodeTable.put("AND",new OpcodeObj(0x40, FORMAT3));
-		opcodeTable.put("CLEAR",new OpcodeObj(0xB4, FORMAT2));
-		opcodeTable.put("COMP",new OpcodeObj(0x28, FORMAT3));
-		opcodeTable.put("COMPF",new OpcodeObj(0x88, FORMAT3));
-		opcodeTable.put("COMPR",new OpcodeObj(0xA0, FORMAT2));
-		opcodeTable.put("DIV",new OpcodeObj(0x24, FORMAT3));
-		opcodeTable.put("DIVF",new OpcodeObj(0x64, FORMAT3));
-		opcodeTable.put("DIVR",new OpcodeObj(0x9C, FORMAT2));
-		opcodeTable.put("FIX",new OpcodeObj(0xC4, FORMAT1));
-		opcodeTable.put("FLOAT",new OpcodeObj(0xC0, FORMAT1));
-		opcodeTable.put("HIO",new OpcodeObj(0xF4, FORMAT1));
-		
-		opcodeTable.put("J",new OpcodeObj(0x3C, FORMAT3));
-		opcodeTable.put("JEQ",new OpcodeObj(0x30, FORMAT3));
-		opcodeTable.put("JGT",new OpcodeObj(0x34, FORMAT3));
-		opcodeTable.put("JLT",new OpcodeObj(0x38, FORMAT3));
-		opcodeTable.put("JSUB",new OpcodeObj(0x48, FORMAT3));
-		
-		opcodeTable.put("LDA",new OpcodeObj(0x00, FORMAT3));
-		opcodeTable.put("LDB",new OpcodeObj(0x68, FORMAT3));
-		opcodeTable.put("LDCH",new OpcodeObj(0x50, FORMAT3));
-		opcodeTable.put("LDF",new OpcodeObj(0x70, FORMAT3));
-		opcodeTable.put("LDL",new OpcodeObj(0x08, FORMAT3));
-		opcodeTable.put("LDS",new OpcodeObj(0x6C, FORMAT3));
-		opcodeTable.put("LDT",new OpcodeObj(0x74, FORMAT3));
-		opcodeTable.put("LDX",new OpcodeObj(0x04, FORMAT3));
-		opcodeTable.put("LPS",new OpcodeObj(0xD0, FORMAT3));
-		
-		opcodeTable.put("MUL",new OpcodeObj(0x20, FORMAT3));
-		opcodeTable.put("MULF",new OpcodeObj(0x60, FORMAT3));
-		opcodeTable.put("MULR",new OpcodeObj(0x98, FORMAT2));
-		opcodeTable.put("NORM",new OpcodeObj(0xC8, FORMAT1));
-		opcodeTable.put("OR",new OpcodeObj(0x44, FORMAT3));
-		opcodeTable.put("RD",new OpcodeObj(0xD8, FORMAT3));
-		opcodeTable.put("RMO",new OpcodeObj(0xAC, FORMAT2));
-		opcodeTable.put("RSUB",new OpcodeObj(0x4C, FORMAT3));
-		opcodeTable.put("SHIFTL",new OpcodeObj(0xA4, FORMAT2));
-		opcodeTable.put("SHIFTR",new OpcodeObj(0xA8, FORMAT2));
-		opcodeTable.put("SIO",new OpcodeObj(0xF0, FORMAT1));
-		opcodeTable.put("SSK",new OpcodeObj(0xEC, FORMAT3));
-		
-		opcodeTable.put("STA",new OpcodeObj(0x0C, FORMAT3));
-		opcodeTable.put("STB",new OpcodeObj(0x78, FORMAT3));
-		opcodeTable.put("STCH",new OpcodeObj(0x54, FORMAT3));
-		opcodeTable.put("STF",new OpcodeObj(0x80, FORMAT3));
-		opcodeTable.put("STI",new OpcodeObj(0xD4, FORMAT3));
-		opcodeTable.put("STL",new OpcodeObj(0x14, FORMAT3));
-		opcodeTable.put("STS",new OpcodeObj(0x7C, FORMAT3));
-		opcodeTable.put("STSW",new OpcodeObj(0xE8, FORMAT3));
-		opcodeTable.put("STT",new OpcodeObj(0x84, FORMAT3));
-		opcodeTable.put("STX",new OpcodeObj(0x10, FORMAT3));
-		
-		opcodeTable.put("SUB",new OpcodeObj(0x1C, FORMAT3));
-		opcodeTable.put("SUBF",new OpcodeObj(0x5C, FORMAT3));
-		opcodeTable.put("SUBR",new OpcodeObj(0x94, FORMAT2));
-		opcodeTable.put("SVC",new OpcodeObj(0xB0, FORMAT2));
-		opcodeTable.put("TD",new OpcodeObj(0xE0, FORMAT3));
-		opcodeTable.put("TIO",new OpcodeObj(0xF8, FORMAT1));
-		opcodeTable.put("TIX",new OpcodeObj(0x2C, FORMAT3));
-		opcodeTable.put("TIXR",new OpcodeObj(0xB8, FORMAT2));
-		opcodeTable.put("WD",new OpcodeObj(0xDC, FORMAT3));
-		
-		/**insert register table values**/
-		registerTable.put("A", (byte)0);
-		registerTable.put("X", (byte)1);
-		registerTable.put("L", (byte)2);
-		registerTable.put("B", (byte)3);
-		registerTable.put("S", (byte)4);
-		registerTable.put("T", (byte)5);
-		registerTable.put("F", (byte)6);
-		registerTable.put("PC", (byte)8);
-		registerTable.put("SW", (byte)9);
-		}
+		public void write(char[] buf, int off, int len) throws IOException {
+			for(int i = off; i < off + len; i++){
+				if(buf[i] == '\n'){
+					int end = current.length();
+					if(end > 0 && current.charAt(end - 1) == '\r') end--;
+					lines.add(current.substring(0, end));
+					current.setLength(0);
+					}
+				else current.append(buf[i]);
+				}
+			if(sink != null) sink.write(buf, off, len);
+			}
+		public void flush() throws IOException { if(sink != null) sink.flush(); }
+		public void close() throws IOException {
+			if(current.length() > 0) lines.add(current.toString());//the last line has no line separator
+			current.setLength(0);
+			flush();
+			}
+		ArrayList<String> lines(){ return lines; }
+		}//END OF: class LineCollector
 	
 	
-	private void buildSICOpcodeTable(){
-		opcodeTable.clear();
-		opcodeTable.put("ADD",new OpcodeObj(0x18, FORMAT3));
-		opcodeTable.put("AND",new OpcodeObj(0x40, FORMAT3));
-		opcodeTable.put("CLEAR",new OpcodeObj(0xB4, FORMAT2));
-		opcodeTable.put("COMP",new OpcodeObj(0x28, FORMAT3));
-		opcodeTable.put("DIV",new OpcodeObj(0x24, FORMAT3));
-		
-		opcodeTable.put("J",new OpcodeObj(0x3C, FORMAT3));
-		opcodeTable.put("JEQ",new OpcodeObj(0x30, FORMAT3));
-		opcodeTable.put("JGT",new OpcodeObj(0x34, FORMAT3));
-		opcodeTable.put("JLT",new OpcodeObj(0x38, FORMAT3));
-		opcodeTable.put("JSUB",new OpcodeObj(0x48, FORMAT3));
-		
-		opcodeTable.put("LDA",new OpcodeObj(0x00, FORMAT3));
-		opcodeTable.put("LDCH",new OpcodeObj(0x50, FORMAT3));
-		opcodeTable.put("LDL",new OpcodeObj(0x08, FORMAT3));
-		opcodeTable.put("LDX",new OpcodeObj(0x04, FORMAT3));
-		opcodeTable.put("LPS",new OpcodeObj(0xD0, FORMAT3));
-		
-		opcodeTable.put("MUL",new OpcodeObj(0x20, FORMAT3));
-		opcodeTable.put("OR",new OpcodeObj(0x44, FORMAT3));
-		opcodeTable.put("RD",new OpcodeObj(0xD8, FORMAT3));
-		opcodeTable.put("RSUB",new OpcodeObj(0x4C, FORMAT3));
-		opcodeTable.put("SHIFTL",new OpcodeObj(0xA4, FORMAT2));
-		opcodeTable.put("SHIFTR",new OpcodeObj(0xA8, FORMAT2));
-		opcodeTable.put("SSK",new OpcodeObj(0xEC, FORMAT3));
-		
-		opcodeTable.put("STA",new OpcodeObj(0x0C, FORMAT3));
-		opcodeTable.put("STCH",new OpcodeObj(0x54, FORMAT3));
-		opcodeTable.put("STI",new OpcodeObj(0xD4, FORMAT3));
-		opcodeTable.put("STL",new OpcodeObj(0x14, FORMAT3));
-		opcodeTable.put("STSW",new OpcodeObj(0xE8, FORMAT3));
-		opcodeTable.put("STX",new OpcodeObj(0x10, FORMAT3));
-		
-		opcodeTable.put("SUB",new OpcodeObj(0x1C, FORMAT3));
-		opcodeTable.put("SVC",new OpcodeObj(0xB0, FORMAT2));
-		opcodeTable.put("TD",new OpcodeObj(0xE0, FORMAT3));
-		opcodeTable.put("TIO",new OpcodeObj(0xF8, FORMAT1));
-		opcodeTable.put("TIX",new OpcodeObj(0x2C, FORMAT3));
-		opcodeTable.put("WD",new OpcodeObj(0xDC, FORMAT3));
-		}
+	
+	private static class Capture extends Writer{
+		/**passes everything on to an output and keeps a copy of the text**/
+		private final Writer sink;
+		private final StringBuilder text;
+		Capture(Writer out, StringBuilder copy){
+			sink = out;
+			text = copy;
+			}
+		public void write(char[] buf, int off, int len) throws IOException {
+			text.append(buf, off, len);
+			sink.write(buf, off, len);
+			}
+		public void flush() throws IOException { sink.flush(); }
+		public void close() throws IOException { sink.close(); }
+		}//END OF: class Capture
+	
+	
+	
+	private class Fixup{
+		/**a line emitted before the symbols it depends on were defined**/
+		String opcode, operand;
+		byte opcodeByte, format;
+		int address, pc, base;
+		int line;				//source line number, for the undefined symbol message
+		int destId, baseId;		//symbol ids the encoding depends on, -1 for none
+		boolean isCounted;		//its final encoding is in the generator's counts
+		Fixup(String op, byte opByte, String oprnd, int addr, byte frmt){
+			opcode = op;
+			opcodeByte = opByte;
+			operand = oprnd;
+			address = addr;
+			format = frmt;
+			destId = baseId = -1;
+			}
+		}//END OF: class Fixup
 	
 	}//END OF: class Assembler
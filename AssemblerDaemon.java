@@ -0,0 +1,395 @@
+package UIAssembler;
+
+/*
+A long running assembler server, so that a build does not pay for JVM start up and JIT warm up on every file. The
+daemon warms its engines up once when it starts (by assembling generated programs), then answers assemble requests
+over stdin/stdout or over a Unix domain socket. Requests are assembled concurrently on a pool of worker threads,
+each with its own resident Assembler, and every answer reports how long the request took.
+The protocol is line based. A request is one of:
+ASSEMBLE <id> <SIC|SICXE> [ONEPASS] <line count>		followed by exactly that many source lines
+FILE <id> <SIC|SICXE> [ONEPASS] <path>					assembles a file the daemon can read, the path is the rest of
+														the line and may hold spaces
+STATS													latency statistics of the requests so far, the percentiles
+														over the last LATENCY_WINDOW of them
+SHUTDOWN												stops the daemon once the pending requests are answered
+Every answer to ASSEMBLE/FILE is a block that is never interleaved with another one:
+RESULT <id> <OK|ERRORS> latency=<microseconds> assemble=<microseconds> lines=<source lines>
+LISTING <n>				followed by n lines, finalAssembly.txt (or errorMsg.txt when there are errors)
+OBJECT <n>				followed by n lines, the H/T/M/E records (none when there are errors); a one pass
+						assembly has no object program, so its memory image is sent as H/T/E records
+DIAGNOSTICS <n>			followed by n lines, <source line><TAB><message>
+END <id>
+latency is measured from the moment the request has been read to the moment its answer is written, so it includes
+any time spent waiting for a worker; assemble is the assembly alone. Malformed requests are answered with
+ERROR <message>, and a request read just as another connection shuts the daemon down with ERROR <id> daemon is
+shutting down, after which its connection is closed.
+It is invoked as so:
+java UIAssembler.AssemblerDaemon [-threads n] [-warmup rounds] [-socket /tmp/assembler.sock] [-cache directory]
+without -socket it serves stdin/stdout, with it every connection to the socket is served like stdin/stdout, e.g.
+printf 'FILE 1 SICXE prog.txt\n' | nc -U /tmp/assembler.sock
+*/
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+public class AssemblerDaemon {
+
+	private final ExecutorService workers;
+	private final ThreadLocal<Assembler> engines;
+	private final int threads;
+	private static final int LATENCY_WINDOW = 1 << 16;
+	private final long[] latencies;	//microseconds, the last LATENCY_WINDOW answered requests, a ring
+	private long latencyCount, latencySum, latencyMax;
+	private volatile boolean isShutdown;
+	private ServerSocketChannel server;
+	private AssemblyCache cache;		//shared by every worker, null for none
+
+
+	public AssemblerDaemon(int threadCount){
+		threads = Math.max(1, threadCount);
+		workers = Executors.newFixedThreadPool(threads);
+		engines = new ThreadLocal<Assembler>(){
+			protected Assembler initialValue(){ return new Assembler(); }
+			};
+		latencies = new long[LATENCY_WINDOW];
+		latencyCount = latencySum = latencyMax = 0;
+		isShutdown = false;
+		server = null;
+		cache = null;
+		}
+
+
+	public AssemblerDaemon(){ this(Runtime.getRuntime().availableProcessors()); }
+
+
+	public void setCache(AssemblyCache outputCache){ cache = outputCache; }//set it after warmUp
+
+
+	public void warmUp(int rounds) throws IOException {
+		/**warmUp: assembles generated programs on every worker until the JIT has compiled the hot paths**/
+		StringWriter sic = new StringWriter(), sicxe = new StringWriter();
+		new ProgramGenerator(true, 1).write(sic, 2000);
+		new ProgramGenerator(false, 2).write(sicxe, 2000);
+		final String[] sources = {sic.toString(), sicxe.toString()};
+		List<Future<?>> runs = new ArrayList<Future<?>>();
+		for(int i = 0; i < rounds * threads; i++){
+			final boolean is_sic = i % 2 == 0;
+			runs.add(workers.submit(new Runnable(){
+				public void run(){
+					Assembler engine = engines.get();
+					engine.setIsSIC(is_sic);
+					engine.setOnePass(false);
+					engine.assemble(sources[is_sic ? 0 : 1]);
+					}
+				}));
+			}
+		await(runs);
+		}//END OF: warmUp
+
+
+	public void serve(Reader in, final Writer out) throws IOException {
+		/**serve: answers the requests read from in until it ends or SHUTDOWN, answers may come out of order**/
+		BufferedReader requests = in instanceof BufferedReader ? (BufferedReader)in : new BufferedReader(in);
+		List<Future<?>> pending = new ArrayList<Future<?>>();
+		String header;
+		while(!isShutdown && (header = requests.readLine()) != null){
+			String[] f = header.trim().split("\\s+");
+			if(f[0].isEmpty()) continue;
+			if(f[0].equals("SHUTDOWN")){
+				shutdown();
+				break;
+				}
+			if(f[0].equals("STATS")){
+				answer(out, stats() + "\n");
+				continue;
+				}
+			final boolean isFile = f[0].equals("FILE");
+			if(!isFile && !f[0].equals("ASSEMBLE") || f.length < 4 || !(f[2].equals("SIC") || f[2].equals("SICXE"))){
+				answer(out, "ERROR bad request: " + header + "\n");
+				continue;
+				}
+			final String id = f[1];
+			final boolean is_sic = f[2].equals("SIC"), is_one_pass = f[3].equals("ONEPASS");
+			String last = f[f.length - 1];
+			final String source;
+			if(isFile)
+				source = rest(header, is_one_pass ? 4 : 3);
+			else{
+				int count;
+				try{
+					count = Integer.parseInt(last);
+					}
+				catch(NumberFormatException e){
+					answer(out, "ERROR bad line count: " + header + "\n");
+					continue;
+					}
+				StringBuilder text = new StringBuilder(32 * count);
+				for(int i = 0; i < count; i++){
+					String line = requests.readLine();
+					if(line == null) break;
+					text.append(line).append('\n');
+					}
+				source = text.toString();
+				}
+			final long received = System.nanoTime();
+			try{
+				pending.add(workers.submit(new Runnable(){
+					public void run(){
+						answer(out, assemble(id, is_sic, is_one_pass, isFile, source, received));
+						}
+					}));
+				}
+			catch(RejectedExecutionException e){
+				/**another connection asked for SHUTDOWN after this request was read**/
+				answer(out, "ERROR " + id + " daemon is shutting down\n");
+				break;
+				}
+			}
+		await(pending);
+		}//END OF: serve
+
+
+	private String assemble(String id, boolean is_sic, boolean is_one_pass, boolean isFile, String source,
+			long received){
+		/**assemble: runs one request on this worker's engine and formats its answer**/
+		Assembler engine = engines.get();
+		engine.setIsSIC(is_sic);
+		engine.setOnePass(is_one_pass);
+		engine.setCache(cache);
+		AssemblyResult result;
+		long start = System.nanoTime();
+		try{
+			if(isFile){
+				BufferedReader file = new BufferedReader(new FileReader(source));
+				try{
+					result = engine.assemble(file);
+					}
+				finally{
+					file.close();
+					}
+				}
+			else
+				result = engine.assemble(source);
+			}
+		catch(IOException | RuntimeException e){
+			return "ERROR " + id + " " + e + "\n";
+			}
+		long done = System.nanoTime();
+		List<String> listing = result.getListing().isEmpty() ? result.getErrorListing() : result.getListing();
+		StringBuilder answer = new StringBuilder(64 * (listing.size() + result.getObjectProgram().size() + 8));
+		answer.append("RESULT ").append(id).append(result.isErrorFree() ? " OK" : " ERRORS");
+		answer.append(" latency=").append((done - received) / 1000);
+		answer.append(" assemble=").append((done - start) / 1000);
+		answer.append(" lines=").append(engine.getLineCount()).append('\n');
+		section(answer, "LISTING", listing);
+		List<String> program = new ArrayList<String>();
+		if(result.isErrorFree()) program = is_one_pass ? onePassProgram(result) : result.getObjectProgram();
+		section(answer, "OBJECT", program);
+		answer.append("DIAGNOSTICS ").append(result.getDiagnostics().size()).append('\n');
+		for(AssemblyResult.Diagnostic d : result.getDiagnostics())
+			answer.append(d.getLine()).append('\t').append(d.getMessage()).append('\n');
+		answer.append("END ").append(id).append('\n');
+		recordLatency((System.nanoTime() - received) / 1000);
+		return answer.toString();
+		}//END OF: assemble
+
+
+	private static String rest(String header, int fields){
+		/**rest: header after its first fields and the blanks that follow them, a path may hold spaces**/
+		String line = header.trim();
+		int i = 0;
+		for(int field = 0; field < fields; field++){
+			while(i < line.length() && !Character.isWhitespace(line.charAt(i))) i++;
+			while(i < line.length() && Character.isWhitespace(line.charAt(i))) i++;
+			}
+		return line.substring(i);
+		}//END OF: rest
+
+
+	private static List<String> onePassProgram(AssemblyResult result){
+		/**onePassProgram: H, T and E records of a one pass result's memory image. The program name, the END
+		operand and where each line's object code ends are taken from its listing, where the loc column is the
+		location after the line, so every line goes whole into a Text record and RESW/RESB areas get none**/
+		int start = result.getStartingAddress(), next = start;
+		byte[] image = result.getObjectCode();
+		String name = "", first = "";
+		StringWriter text = new StringWriter();
+		PrintWriter out = new PrintWriter(text);
+		ObjectProgramWriter writer = new ObjectProgramWriter(out);
+		List<String> listing = result.getErrorListing();
+		for(String line : listing){
+			String[] columns = line.split("\t");
+			if(columns.length >= 4 && columns[2].trim().equals("START")) name = columns[1].trim();
+			}
+		writer.writeHeader(name, start, result.getProgramLength());
+		for(String line : listing){
+			String[] columns = line.split("\t");
+			if(columns.length < 4) continue;
+			String opcode = columns[2].trim();
+			if(opcode.equals("END")) first = columns[3].trim();
+			int end;
+			try{ end = Math.min(Integer.parseInt(columns[0].trim(), 16), start + image.length); }
+			catch(NumberFormatException e){ continue; }//the header line
+			if(end <= next) continue;
+			if(opcode.equals("RESW") || opcode.equals("RESB")) writer.gap();
+			else writer.addText(next, image, next - start, end - next);
+			next = end;
+			}
+		if(next < start + image.length) writer.addText(next, image, next - start, start + image.length - next);
+		Integer firstAddress = result.getAddress(first);
+		writer.writeEnd(firstAddress != null ? firstAddress : start);
+		out.flush();
+		return Arrays.asList(text.toString().split("\\R"));
+		}//END OF: onePassProgram
+
+
+	private static void section(StringBuilder answer, String name, List<String> lines){
+		answer.append(name).append(' ').append(lines.size()).append('\n');
+		for(String line : lines) answer.append(line).append('\n');
+		}
+
+
+	private static void answer(Writer out, String text){
+		/**answer: writes one whole answer, so answers of concurrent requests never interleave**/
+		synchronized(out){
+			try{
+				out.write(text);
+				out.flush();
+				}
+			catch(IOException e){ e.printStackTrace(); }//the client went away
+			}
+		}
+
+
+	private synchronized void recordLatency(long micros){
+		latencies[(int)(latencyCount++ % LATENCY_WINDOW)] = micros;
+		latencySum += micros;
+		latencyMax = Math.max(latencyMax, micros);
+		}
+
+
+	public synchronized String stats(){
+		/**stats: count, mean, median, 99th percentile and worst request latency in microseconds. The median and
+		the percentile are of the last LATENCY_WINDOW requests, the rest of all of them**/
+		if(latencyCount == 0) return "STATS requests=0";
+		int n = (int)Math.min(latencyCount, LATENCY_WINDOW);
+		long[] sorted = Arrays.copyOf(latencies, n);
+		Arrays.sort(sorted);
+		return "STATS requests=" + latencyCount + " mean=" + latencySum / latencyCount + "us p50=" + sorted[n / 2]
+				+ "us p99=" + sorted[Math.min(n - 1, n * 99 / 100)] + "us max=" + latencyMax + "us";
+		}//END OF: stats
+
+
+	public void serveSocket(Path socketPath) throws IOException {
+		/**serveSocket: serves every connection to a Unix domain socket on its own thread until SHUTDOWN**/
+		Files.deleteIfExists(socketPath);
+		server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		server.bind(UnixDomainSocketAddress.of(socketPath));
+		try{
+			while(!isShutdown){
+				final SocketChannel client;
+				try{
+					client = server.accept();
+					}
+				catch(IOException e){
+					if(isShutdown) break;//closed by SHUTDOWN
+					throw e;
+					}
+				Thread connection = new Thread(new Runnable(){
+					public void run(){
+						try{
+							serve(Channels.newReader(client, StandardCharsets.UTF_8),
+									Channels.newWriter(client, StandardCharsets.UTF_8));
+							client.close();
+							}
+						catch(IOException e){ e.printStackTrace(); }
+						}
+					}, "assembler-connection");
+				connection.setDaemon(true);
+				connection.start();
+				}
+			}
+		finally{
+			server.close();
+			Files.deleteIfExists(socketPath);
+			}
+		}//END OF: serveSocket
+
+
+	public void shutdown(){
+		isShutdown = true;
+		workers.shutdown();
+		if(server != null){
+			try{ server.close(); }
+			catch(IOException e){ e.printStackTrace(); }
+			}
+		}//END OF: shutdown
+
+
+	private static void await(List<Future<?>> runs){
+		for(Future<?> run : runs){
+			try{
+				run.get();
+				}
+			catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				return;
+				}
+			catch(ExecutionException e){ e.getCause().printStackTrace(); }
+			}
+		}//END OF: await
+
+
+	public static void main(String[] args) throws IOException {
+		int threadCount = Runtime.getRuntime().availableProcessors(), rounds = 20;
+		String socket = null, cacheDir = null;
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-threads") && i + 1 < args.length) threadCount = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-warmup") && i + 1 < args.length) rounds = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-socket") && i + 1 < args.length) socket = args[++i];
+			else if(args[i].equals("-cache") && i + 1 < args.length) cacheDir = args[++i];
+			else{
+				System.err.println("usage: AssemblerDaemon [-threads n] [-warmup rounds] [-socket path] [-cache directory]");
+				System.exit(2);
+				}
+			}
+		AssemblerDaemon daemon = new AssemblerDaemon(threadCount);
+		long start = System.nanoTime();
+		daemon.warmUp(rounds);
+		System.err.printf("assembler daemon warmed up in %d ms on %d threads%n",
+				(System.nanoTime() - start) / 1000000, threadCount);
+		if(cacheDir != null) daemon.setCache(new AssemblyCache(cacheDir, 256L << 20));
+		if(socket != null)
+			daemon.serveSocket(Paths.get(socket));
+		else{
+			daemon.serve(new InputStreamReader(System.in, StandardCharsets.UTF_8),
+					new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+			daemon.shutdown();
+			}
+		}//END OF: main
+
+	}//END OF: class AssemblerDaemon
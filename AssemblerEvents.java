@@ -0,0 +1,84 @@
+package UIAssembler;
+
+/*
+Java Flight Recorder events for the assembler, so its phases can be lined up with GC, allocation and thread events
+in a recording. Phase is committed for every pass one, pass two and one pass run, Assembly once per assemble() with
+the numbers of its AssemblyMetrics. Both are cheap when no recording is running: the assembler only fills them in
+when shouldCommit() says they will be kept.
+They are recorded with the other events, e.g.
+java -XX:StartFlightRecording=filename=asm.jfr,settings=profile -cp <classes> UIAssembler.BatchAssembler files...
+jfr print --events UIAssembler.Phase,UIAssembler.Assembly asm.jfr
+*/
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+final class AssemblerEvents {
+
+	private AssemblerEvents(){}
+
+
+	@Name("UIAssembler.Phase")
+	@Label("Assembler Phase")
+	@Category("Assembler")
+	@Description("One pass of the SIC/SICXE assembler")
+	static final class Phase extends Event{
+		@Label("Phase")
+		String phase;			//pass one, pass two or one pass
+
+		@Label("Source")
+		String source;			//the input file, or <memory>
+
+		@Label("Lines")
+		int lines;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;				//source bytes for pass one and one pass, object code bytes for pass two
+		}//END OF: class Phase
+
+
+	@Name("UIAssembler.Assembly")
+	@Label("Assembly")
+	@Category("Assembler")
+	@Description("One Assembler.assemble() call")
+	static final class Assembly extends Event{
+		@Label("Source")
+		String source;
+
+		@Label("SIC")
+		boolean isSIC;
+
+		@Label("Error Free")
+		boolean isErrorFree;
+
+		@Label("Cached")
+		boolean isCached;
+
+		@Label("Lines")
+		int lines;
+
+		@Label("Errors")
+		int errors;
+
+		@Label("Symbol Lookups")
+		long symbolLookups;
+
+		@Label("Opcode Lookups")
+		long opcodeLookups;
+
+		@Label("PC Relative")
+		int pcRelative;
+
+		@Label("Base Relative")
+		int baseRelative;
+
+		@Label("Format 4")
+		int extended;
+		}//END OF: class Assembly
+
+	}//END OF: class AssemblerEvents
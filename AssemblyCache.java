@@ -0,0 +1,278 @@
+package UIAssembler;
+
+/*
+An on-disk cache of assembler outputs, so a source that has not changed since it was last assembled is not
+assembled again. An entry is keyed by the SHA-256 of the assembler version, the mode (SIC or SICXE, two pass or one
+pass) and the source bytes, and holds everything an assembly produces: the text of errorMsg.txt, finalAssembly.txt
+and objectProgram.txt, the diagnostics, the symbols and the memory image. Every entry is one file named by its key
+in the cache directory, written to a .tmp file first and renamed into place, so several assemblers and processes can
+share a directory: a key this process has not seen is looked for on disk before it counts as a miss.
+The directory is kept under a size bound by evicting the least recently used entries; use is tracked by the file's
+modification time, so the order survives restarts and is shared between processes. When this process's view of the
+directory goes past the bound the directory is scanned again before evicting, so the entries other processes added
+count too. Hits, misses and evictions are counted.
+It is invoked as so:
+AssemblyCache cache = new AssemblyCache("asm-cache", 64L << 20);
+assembler.setCache(cache);
+assembler.assemble();	//a hit writes the cached outputs without running pass one or pass two
+System.out.println(cache);
+*/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AssemblyCache {
+
+	private static final int MAGIC = 0x53494341;	//"SICA"
+	private static final String SUFFIX = ".asm";
+
+	private final Path directory;
+	private final long maxBytes;
+	private final LinkedHashMap<String, Long> entries;	//key to entry size, least recently used first
+	private long totalBytes;
+	private long hits, misses, evictions;
+
+
+	static final class Entry{
+		/**what one assembly produced, enough to replay it**/
+		boolean isErrorFree;
+		int startingAddress, programLength, lineCount, imageBase;
+		byte[] image;							//null if the assembly made none
+		LinkedHashMap<String, Integer> symbols;
+		List<AssemblyResult.Diagnostic> diagnostics;
+		String[] outputs;						//error, listing and object program text, null if not written
+		}//END OF: class Entry
+
+
+	public AssemblyCache(String directoryName, long max_bytes) throws IOException {
+		directory = Paths.get(directoryName);
+		maxBytes = Math.max(0, max_bytes);
+		entries = new LinkedHashMap<String, Long>(64, 0.75f, true);
+		hits = misses = evictions = 0;
+		Files.createDirectories(directory);
+		scan();
+		evict();
+		}
+
+
+	private void scan(){
+		/**scan: loads the entries in the directory, oldest first, in place of what was known of it**/
+		entries.clear();
+		totalBytes = 0;
+		File[] files = directory.toFile().listFiles();
+		if(files == null) files = new File[0];
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for(File f : files){
+			String name = f.getName();
+			if(!name.endsWith(SUFFIX)) continue;
+			entries.put(name.substring(0, name.length() - SUFFIX.length()), f.length());
+			totalBytes += f.length();
+			}
+		}//END OF: scan
+
+
+	public String key(byte[] source, boolean is_sic, boolean is_one_pass){
+		/**key: hex SHA-256 of the assembler version, the mode and the source**/
+		MessageDigest digest;
+		try{
+			digest = MessageDigest.getInstance("SHA-256");
+			}
+		catch(NoSuchAlgorithmException e){ throw new IllegalStateException(e); }//every JVM has SHA-256
+		digest.update((Assembler.VERSION + (is_sic ? " SIC" : " SICXE") + (is_one_pass ? " 1" : " 2") + "\n")
+				.getBytes(StandardCharsets.UTF_8));
+		byte[] hash = digest.digest(source);
+		StringBuilder hex = new StringBuilder(2 * hash.length);
+		for(byte b : hash) hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return hex.toString();
+		}//END OF: key
+
+
+	synchronized Entry get(String key){
+		/**get: the entry for key, null on a miss. An entry that cannot be read is dropped and counts as a miss**/
+		File file = file(key);
+		if(entries.get(key) == null){
+			if(!file.isFile()){
+				misses++;
+				return null;
+				}
+			/**another process stored it since the directory was scanned**/
+			entries.put(key, file.length());
+			totalBytes += file.length();
+			}
+		try{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try{
+				Entry entry = read(in);
+				hits++;
+				file.setLastModified(System.currentTimeMillis());
+				return entry;
+				}
+			finally{
+				in.close();
+				}
+			}
+		catch(IOException | RuntimeException e){
+			remove(key);
+			misses++;
+			return null;
+			}
+		}//END OF: get
+
+
+	synchronized void put(String key, Entry entry){
+		/**put: stores entry under key, then evicts down to the size bound. A failed write only loses the entry**/
+		File file = file(key), temp = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+		try{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try{
+				write(out, entry);
+				}
+			finally{
+				out.close();
+				}
+			try{
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+				}
+			catch(AtomicMoveNotSupportedException e){
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+		catch(IOException e){
+			temp.delete();
+			return;
+			}
+		Long old = entries.put(key, file.length());
+		totalBytes += file.length() - (old == null ? 0 : old);
+		if(totalBytes > maxBytes) scan();//other processes may have added or evicted entries
+		evict();
+		}//END OF: put
+
+
+	private void evict(){
+		/**evict: removes least recently used entries until the directory is within maxBytes**/
+		Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+		while(totalBytes > maxBytes && eldest.hasNext()){
+			Map.Entry<String, Long> e = eldest.next();
+			file(e.getKey()).delete();
+			totalBytes -= e.getValue();
+			eldest.remove();
+			evictions++;
+			}
+		}//END OF: evict
+
+
+	private void remove(String key){
+		Long size = entries.remove(key);
+		if(size != null) totalBytes -= size;
+		file(key).delete();
+		}
+
+
+	private File file(String key){ return directory.resolve(key + SUFFIX).toFile(); }
+
+
+	private static void write(DataOutputStream out, Entry e) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeBoolean(e.isErrorFree);
+		out.writeInt(e.startingAddress);
+		out.writeInt(e.programLength);
+		out.writeInt(e.lineCount);
+		out.writeInt(e.imageBase);
+		out.writeInt(e.image == null ? -1 : e.image.length);
+		if(e.image != null) out.write(e.image);
+		out.writeInt(e.symbols.size());
+		for(Map.Entry<String, Integer> s : e.symbols.entrySet()){
+			out.writeUTF(s.getKey());
+			out.writeInt(s.getValue());
+			}
+		out.writeInt(e.diagnostics.size());
+		for(AssemblyResult.Diagnostic d : e.diagnostics){
+			out.writeInt(d.getLine());
+			out.writeUTF(d.getMessage());
+			}
+		for(String text : e.outputs){
+			out.writeBoolean(text != null);
+			if(text == null) continue;
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);//listings can be past writeUTF's 64K
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			}
+		}//END OF: write
+
+
+	private static Entry read(DataInputStream in) throws IOException {
+		if(in.readInt() != MAGIC) throw new IOException("not a cache entry");
+		Entry e = new Entry();
+		e.isErrorFree = in.readBoolean();
+		e.startingAddress = in.readInt();
+		e.programLength = in.readInt();
+		e.lineCount = in.readInt();
+		e.imageBase = in.readInt();
+		int imageLength = in.readInt();
+		if(imageLength >= 0){
+			e.image = new byte[imageLength];
+			in.readFully(e.image);
+			}
+		int count = in.readInt();
+		e.symbols = new LinkedHashMap<String, Integer>();
+		for(int i = 0; i < count; i++) e.symbols.put(in.readUTF(), in.readInt());
+		count = in.readInt();
+		e.diagnostics = new ArrayList<AssemblyResult.Diagnostic>(count);
+		for(int i = 0; i < count; i++){
+			int line = in.readInt();
+			e.diagnostics.add(new AssemblyResult.Diagnostic(line, in.readUTF()));
+			}
+		e.outputs = new String[3];
+		for(int i = 0; i < e.outputs.length; i++){
+			if(!in.readBoolean()) continue;
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			e.outputs[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+		return e;
+		}//END OF: read
+
+
+	public synchronized long getHits(){ return hits; }
+
+
+	public synchronized long getMisses(){ return misses; }
+
+
+	public synchronized long getEvictions(){ return evictions; }
+
+
+	public synchronized int size(){ return entries.size(); }
+
+
+	public synchronized long getBytes(){ return totalBytes; }
+
+
+	public synchronized String toString(){
+		return String.format("cache %s: %d hits, %d misses, %d evictions, %d entries in %d bytes (bound %d)",
+				directory, hits, misses, evictions, entries.size(), totalBytes, maxBytes);
+		}
+
+	}//END OF: class AssemblyCache
@@ -0,0 +1,109 @@
+package UIAssembler;
+
+/*
+Where the time and the work of one assembly went: the wall time of each phase, how many lines and bytes each phase
+handled, how often the symbol and opcode tables were searched, how instructions were encoded (PC relative, base
+relative or format 4), how many macro invocations were expanded and how many errors were reported. A new AssemblyMetrics is made by every Assembler.assemble(),
+Assembler.getMetrics() returns the last one and AssemblyResult.getMetrics() the one of that result. A result replayed
+from an AssemblyCache has isCached() set and no phase times.
+The same numbers go to Java Flight Recorder as AssemblerEvents when a recording is running, see AssemblerEvents.
+It is invoked as so:
+AssemblyMetrics metrics = new Assembler().assemble(sourceText).getMetrics();
+System.out.println(metrics);
+*/
+
+public final class AssemblyMetrics {
+
+	long pass1Nanos, pass2Nanos, onePassNanos, totalNanos;
+	int pass1Lines, pass2Lines;		//lines read by pass one (or one pass), records pass two went through
+	long sourceBytes, objectBytes;	//characters read including line ends, object code bytes pass two made
+	long symbolLookups, opcodeLookups;
+	int pcRelative, baseRelative, extended;
+	int macroExpansions, expansionCacheHits;
+	int errors;
+	boolean isCached;
+
+
+	AssemblyMetrics(){}
+
+
+	public long getPass1Nanos(){ return pass1Nanos; }
+
+
+	public long getPass2Nanos(){ return pass2Nanos; }
+
+
+	public long getOnePassNanos(){ return onePassNanos; }
+
+
+	public long getTotalNanos(){ return totalNanos; }//the whole assemble(), including a cache lookup
+
+
+	public int getPass1Lines(){ return pass1Lines; }
+
+
+	public int getPass2Lines(){ return pass2Lines; }
+
+
+	public long getSourceBytes(){ return sourceBytes; }
+
+
+	public long getObjectBytes(){ return objectBytes; }
+
+
+	public long getSymbolLookups(){ return symbolLookups; }//names hashed into the symbol table
+
+
+	public long getOpcodeLookups(){ return opcodeLookups; }
+
+
+	public int getPcRelativeCount(){ return pcRelative; }
+
+
+	public int getBaseRelativeCount(){ return baseRelative; }
+
+
+	public int getExtendedCount(){ return extended; }//format 4 encodings
+
+
+	public int getMacroExpansions(){ return macroExpansions; }
+
+
+	public int getExpansionCacheHits(){ return expansionCacheHits; }//expansions reused, not substituted again
+
+
+	public int getErrorCount(){ return errors; }
+
+
+	public boolean isCached(){ return isCached; }
+
+
+	public String toString(){
+		StringBuilder out = new StringBuilder(256);
+		if(isCached)
+			out.append(String.format("cached: %d lines, %d errors in %.3f ms%n", pass1Lines, errors, totalNanos / 1e6));
+		else if(onePassNanos > 0)
+			out.append(String.format("one pass: %.3f ms, %d lines, %d bytes%n", onePassNanos / 1e6, pass1Lines,
+					sourceBytes));
+		else{
+			out.append(String.format("pass one: %.3f ms, %d lines, %d bytes%n", pass1Nanos / 1e6, pass1Lines,
+					sourceBytes));
+			if(pass2Nanos == 0)
+				out.append(String.format("pass two: not run%n"));
+			else
+				out.append(String.format("pass two: %.3f ms, %d lines, %d object code bytes%n", pass2Nanos / 1e6,
+						pass2Lines, objectBytes));
+			}
+		if(!isCached){
+			out.append(String.format("lookups: %d symbol, %d opcode%n", symbolLookups, opcodeLookups));
+			out.append(String.format("encodings: %d PC relative, %d base relative, %d format 4%n", pcRelative,
+					baseRelative, extended));
+			if(macroExpansions > 0)
+				out.append(String.format("macros: %d expansions, %d from the cache%n", macroExpansions,
+						expansionCacheHits));
+			out.append(String.format("errors: %d, total %.3f ms%n", errors, totalNanos / 1e6));
+			}
+		return out.toString();
+		}//END OF: toString
+
+	}//END OF: class AssemblyMetrics
@@ -0,0 +1,95 @@
+package UIAssembler;
+
+/*
+The outcome of assembling a source in memory with Assembler.assemble(Reader) or assemble(CharSequence). It holds
+everything the file based assembler spreads over errorMsg.txt, finalAssembly.txt and objectProgram.txt, and more:
+the object code as one memory image starting at the program's first address (RESW/RESB areas are zero), the lines
+of each listing, the defined symbols with their addresses in the order they first appear, and the error messages
+with the source line they belong to. A result never changes once it is made; getters return copies or read-only
+views.
+It is invoked as so:
+AssemblyResult result = new Assembler().assemble(sourceText);
+if(result.isErrorFree()) loader.load(result.getStartingAddress(), result.getObjectCode());
+else for(AssemblyResult.Diagnostic d : result.getDiagnostics()) System.err.println(d);
+*/
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class AssemblyResult {
+
+	private final boolean isErrorFree;
+	private final int startingAddress, programLength;
+	private final byte[] objectCode;
+	private final List<String> errorListing, listing, objectProgram;
+	private final Map<String, Integer> symbols;
+	private final List<Diagnostic> diagnostics;
+	private final AssemblyMetrics metrics;
+
+
+	public static final class Diagnostic{
+		/**an error message and the source line (from 1) it was reported for**/
+		private final int line;
+		private final String message;
+		Diagnostic(int sourceLine, String msg){
+			line = sourceLine;
+			message = msg;
+			}
+		public int getLine(){ return line; }
+		public String getMessage(){ return message; }
+		public String toString(){ return "line " + line + ": " + message; }
+		}//END OF: class Diagnostic
+
+
+	AssemblyResult(boolean is_error_free, int start, int length, byte[] image, List<String> errorLines,
+			List<String> listingLines, List<String> programLines, Map<String, Integer> symbolAddresses,
+			List<Diagnostic> errors, AssemblyMetrics measured){
+		isErrorFree = is_error_free;
+		startingAddress = start;
+		programLength = length;
+		objectCode = image;
+		errorListing = Collections.unmodifiableList(new ArrayList<String>(errorLines));
+		listing = Collections.unmodifiableList(new ArrayList<String>(listingLines));
+		objectProgram = Collections.unmodifiableList(new ArrayList<String>(programLines));
+		symbols = Collections.unmodifiableMap(new LinkedHashMap<String, Integer>(symbolAddresses));
+		diagnostics = Collections.unmodifiableList(new ArrayList<Diagnostic>(errors));
+		metrics = measured;
+		}
+
+
+	public boolean isErrorFree(){ return isErrorFree; }
+
+
+	public int getStartingAddress(){ return startingAddress; }
+
+
+	public int getProgramLength(){ return programLength; }
+
+
+	public byte[] getObjectCode(){ return objectCode.clone(); }//empty if pass one found errors
+
+
+	public List<String> getErrorListing(){ return errorListing; }//the errorMsg.txt lines
+
+
+	public List<String> getListing(){ return listing; }//the finalAssembly.txt lines, empty when there are errors
+
+
+	public List<String> getObjectProgram(){ return objectProgram; }//the H/T/M/E records
+
+
+	public Map<String, Integer> getSymbols(){ return symbols; }
+
+
+	public Integer getAddress(String symbol){ return symbols.get(symbol); }//null if it is not defined
+
+
+	public List<Diagnostic> getDiagnostics(){ return diagnostics; }
+
+
+	public AssemblyMetrics getMetrics(){ return metrics; }//phase times and counts, see AssemblyMetrics
+
+	}//END OF: class AssemblyResult
@@ -0,0 +1,188 @@
+package UIAssembler;
+
+/*
+Assembles many source files at once on a fixed pool of worker threads. Every file gets its own Assembler, so no
+state is shared between jobs other than the read-only opcode and register tables, and every file writes its own
+error, listing and object program files: for input prog.txt these are prog.errorMsg.txt, prog.finalAssembly.txt and
+prog.obj.txt, placed next to the input or in the output directory if one is given. A file whose outputs would have
+the same names as an earlier one's (a/prog.txt and b/prog.txt with -out) is not assembled but reported as failed,
+so one never overwrites the other. When all files are done the aggregate throughput is reported. With -cache a file
+whose source, mode and assembler version match an earlier run gets that run's outputs from the AssemblyCache
+directory instead of being assembled again.
+It is invoked as so:
+java UIAssembler.BatchAssembler [-sicxe] [-onepass] [-threads n] [-out directory] [-cache directory [-cachesize MB]]
+	file1.txt file2.txt ...
+or from code:
+BatchAssembler batch = new BatchAssembler(8, false);
+List<BatchAssembler.Outcome> outcomes = batch.assembleAll(fileNames, "out");
+*/
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class BatchAssembler {
+
+	private final int threads;
+	private final boolean isSIC;
+	private boolean isOnePass;
+	private long lastWallTime;
+	private AssemblyCache cache;
+
+
+	public BatchAssembler(int threadCount, boolean is_sic){
+		threads = Math.max(1, threadCount);
+		isSIC = is_sic;
+		isOnePass = false;
+		lastWallTime = 0;
+		cache = null;
+		}
+
+
+	public BatchAssembler(){ this(Runtime.getRuntime().availableProcessors(), true); }
+
+
+	public void setOnePass(boolean is_one_pass){ isOnePass = is_one_pass; }
+
+
+	public long getLastWallTime(){ return lastWallTime; }//nanoseconds
+
+
+	public void setCache(AssemblyCache outputCache){ cache = outputCache; }
+
+
+	public static class Outcome{
+		/**the result of assembling one input file**/
+		public final String inputFile, errorFile, listingFile;
+		public final boolean isErrorFree;
+		public final int lineCount;
+		public final long nanos;
+		public final Throwable failure;//set if the job threw instead of finishing, or was not run
+		Outcome(String in, String err, String lst, boolean ok, int count, long time, Throwable e){
+			inputFile = in;
+			errorFile = err;
+			listingFile = lst;
+			isErrorFree = ok;
+			lineCount = count;
+			nanos = time;
+			failure = e;
+			}
+		}//END OF: class Outcome
+
+
+	public List<Outcome> assembleAll(List<String> inputFiles, String outputDir) throws InterruptedException {
+		/**assembleAll: assembles every file concurrently, outcomes come back in input order**/
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Outcome>> futures = new ArrayList<Future<Outcome>>();
+		List<Outcome> outcomes = new ArrayList<Outcome>();
+		HashMap<String, String> owners = new HashMap<String, String>();//error file to the input that writes it
+		long start = System.nanoTime();
+		try{
+			for(String input : inputFiles){
+				final String in = input;
+				final String out = outputDir;
+				String owner = owners.putIfAbsent(
+						new File(outputFile(input, outputDir, ".errorMsg.txt")).getAbsolutePath(), input);
+				if(owner != null){
+					/**its outputs are another input's, assembling both at once would mix them up**/
+					futures.add(CompletableFuture.completedFuture(new Outcome(in, null, null, false, 0, 0,
+							new IllegalArgumentException("same output files as " + owner))));
+					continue;
+					}
+				futures.add(pool.submit(new Callable<Outcome>(){
+					public Outcome call(){ return assembleOne(in, out); }
+					}));
+				}
+			for(int i = 0; i < futures.size(); i++){
+				try{ outcomes.add(futures.get(i).get()); }
+				catch(ExecutionException e){
+					outcomes.add(new Outcome(inputFiles.get(i), null, null, false, 0, 0, e.getCause()));
+					}
+				}
+			}
+		finally{ pool.shutdownNow(); }
+		lastWallTime = System.nanoTime() - start;
+		return outcomes;
+		}//END OF: assembleAll
+
+
+	private Outcome assembleOne(String input, String outputDir){
+		long start = System.nanoTime();
+		String errorFile = outputFile(input, outputDir, ".errorMsg.txt");
+		String listingFile = outputFile(input, outputDir, ".finalAssembly.txt");
+
+		Assembler assembler = new Assembler(input, isSIC);
+		assembler.setOnePass(isOnePass);
+		assembler.setCache(cache);
+		assembler.setOutputFiles(errorFile, listingFile);
+		assembler.setObjectProgramFile(outputFile(input, outputDir, ".obj.txt"));
+		assembler.assemble();
+		return new Outcome(input, errorFile, listingFile, assembler.isErrorFree(),
+				assembler.getLineCount(), System.nanoTime() - start, null);
+		}//END OF: assembleOne
+
+
+	static String outputFile(String input, String outputDir, String suffix){
+		/**outputFile: prog.txt gives prog<suffix>, next to the input or in outputDir if it is not null**/
+		File in = new File(input);
+		String base = in.getName();
+		if(base.endsWith(".txt")) base = base.substring(0, base.length() - 4);
+		File dir = outputDir != null ? new File(outputDir) : in.getAbsoluteFile().getParentFile();
+		return new File(dir, base + suffix).getPath();
+		}//END OF: outputFile
+
+
+	public static void main(String[] args) throws InterruptedException, IOException {
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		boolean is_sic = true, is_one_pass = false;
+		String outputDir = null, cacheDir = null;
+		long cacheMB = 256;
+		List<String> inputs = new ArrayList<String>();
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-sicxe")) is_sic = false;
+			else if(args[i].equals("-onepass")) is_one_pass = true;
+			else if(args[i].equals("-threads") && i + 1 < args.length) threadCount = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-out") && i + 1 < args.length) outputDir = args[++i];
+			else if(args[i].equals("-cache") && i + 1 < args.length) cacheDir = args[++i];
+			else if(args[i].equals("-cachesize") && i + 1 < args.length) cacheMB = Long.parseLong(args[++i]);
+			else inputs.add(args[i]);
+			}
+		if(inputs.isEmpty()){
+			System.err.println("usage: BatchAssembler [-sicxe] [-onepass] [-threads n] [-out directory] "
+					+ "[-cache directory [-cachesize MB]] files...");
+			System.exit(2);
+			}
+		if(outputDir != null) new File(outputDir).mkdirs();
+
+		BatchAssembler batch = new BatchAssembler(threadCount, is_sic);
+		batch.setOnePass(is_one_pass);
+		if(cacheDir != null) batch.setCache(new AssemblyCache(cacheDir, cacheMB << 20));
+		List<Outcome> outcomes = batch.assembleAll(inputs, outputDir);
+
+		long lineTotal = 0;
+		int failed = 0;
+		for(Outcome o : outcomes){
+			lineTotal += o.lineCount;
+			if(o.failure != null)
+				System.out.printf("FAILED  %s: %s%n", o.inputFile, o.failure);
+			else if(!o.isErrorFree)
+				System.out.printf("ERRORS  %s -> %s%n", o.inputFile, o.errorFile);
+			if(o.failure != null || !o.isErrorFree) failed++;
+			}
+		double seconds = batch.getLastWallTime() / 1e9;
+		System.out.printf("%d files (%d with errors), %d lines in %.3f s on %d threads: %.1f files/s, %.0f lines/s%n",
+				outcomes.size(), failed, lineTotal, seconds, threadCount,
+				outcomes.size() / seconds, lineTotal / seconds);
+		if(batch.cache != null) System.out.println(batch.cache);
+		if(failed > 0) System.exit(1);
+		}//END OF: main
+
+	}//END OF: class BatchAssembler
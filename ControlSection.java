@@ -0,0 +1,90 @@
+package UIAssembler;
+
+/*
+A control section of a SICXE program: the part from START (or the beginning of the source) to the first CSECT, or
+from one CSECT to the next or to END. Every section has its own symbol table and its own location counter starting
+at 0 (the first one at the START address), and names the symbols other sections may use with EXTDEF and the ones it
+uses from them with EXTREF. Pass one cuts the records into sections; pass two encodes each section on its own, the
+sections of a large program in parallel, and writes their listings and object programs out in source order.
+A source without CSECT is one section, the program as a whole.
+It is invoked as so, by the Assembler:
+ControlSection section = new ControlSection("RDREC", new SymbolTable(), 0, lines.size());
+section.addDefinitions("BUFFER,LENGTH");
+section.end(locCounter, lines.size());
+*/
+
+import java.util.ArrayList;
+
+public class ControlSection {
+
+	String name;
+	final SymbolTable symbols;
+	int start;				//address of the section, the START operand for the first one and 0 for the others
+	int length;
+	int first, end;			//its records are lines[first, end) of the Assembler
+	int imageOffset;		//where the section is placed in the memory image, the sections follow each other
+	final ArrayList<String> definitions, references;//EXTDEF and EXTREF names, in source order
+	/**filled by pass two**/
+	byte[] image;			//the section's object code, from its start address
+	long objectBytes;
+	ObjcodeGenerator generator;
+
+
+	ControlSection(String sectionName, SymbolTable symbolTable, int startAddress, int firstRecord){
+		name = sectionName;
+		symbols = symbolTable;
+		start = startAddress;
+		length = 0;
+		first = end = firstRecord;
+		imageOffset = 0;
+		definitions = new ArrayList<String>();
+		references = new ArrayList<String>();
+		image = null;
+		objectBytes = 0;
+		generator = null;
+		}
+
+
+	void addDefinitions(String operand){
+		for(String symbol : operand.split(","))
+			if(!symbol.isEmpty()) definitions.add(symbol);
+		}
+
+
+	boolean addReferences(String operand){
+		/**addReferences: declares the EXTREF symbols, false if one of them is defined in this section already**/
+		boolean isValid = true;
+		for(String symbol : operand.split(",")){
+			if(symbol.isEmpty()) continue;
+			int id = symbols.intern(symbol);
+			if(symbols.isDefined(id)) isValid = false;
+			else{
+				symbols.define(id, SymbolTable.EXTERNAL);
+				references.add(symbol);
+				}
+			}
+		return isValid;
+		}//END OF: addReferences
+
+
+	boolean end(int locCounter, int endRecord){
+		/**end: closes the section, false if an EXTDEF symbol was never defined in it**/
+		length = locCounter - start;
+		end = endRecord;
+		for(String symbol : definitions){
+			int id = symbols.find(symbol);
+			if(!symbols.isDefined(id) || symbols.isExternal(id)) return false;
+			}
+		return true;
+		}//END OF: end
+
+
+	public String getName(){ return name; }
+
+
+	public int getLength(){ return length; }
+
+
+	public SymbolTable getSymbolTable(){ return symbols; }
+
+	}//END OF: class ControlSection
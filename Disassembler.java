@@ -0,0 +1,232 @@
+package UIAssembler;
+
+/*
+Turns object code back into instructions. Two 256 entry tables, one for SIC and one for SICXE, built from the
+OpcodeTable when the class loads, map the first object code byte straight to the instruction id and the format to
+decode, so decoding an instruction is one table read and the field extraction of its format:
+format 1	|opcode(8)|
+format 2	|opcode(8)|r1(4)|r2(4)|
+format 3	|opcode(6)|n|i|x|b|p|e|displacement(12)|
+format 4	|opcode(6)|n|i|x|b|p|e|address(20)|
+SIC			|opcode(8)|x|address(15)|			(n = i = 0, also accepted in SICXE programs)
+After decode() the fields of the instruction can be read: the mnemonic, the nixbpe flags, the registers of format 2,
+and the target address, which is worked out from the PC for PC relative and from the base register for base
+relative displacements (setBase() tells the disassembler what B holds; -1 if it is not known). For an immediate
+operand the target address is the value itself. operand() writes it the way the source would: #, @ and ,X as in the
+source, addresses in hex and immediate constants in decimal.
+It is invoked as so:
+java UIAssembler.Disassembler [-sic] [-address hex] copy.obj.txt ...
+or from code:
+Disassembler disassembler = new Disassembler(false);
+int length = disassembler.decode(image, offset, address);	//0 if the bytes are not an instruction
+System.out.println(disassembler.mnemonic() + "\t" + disassembler.operand());
+*/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Disassembler {
+
+	public static final int FORMAT_SIC = 0;
+	public static final int N = 0x20, I = 0x10, X = 0x08, B = 0x04, P = 0x02, E = 0x01;//nixbpe flags
+	private static final short[] SIC_TABLE = new short[256], SICXE_TABLE = new short[256];//id << 3 | format, -1 for none
+	private static final int CLEAR = OpcodeTable.lookup("CLEAR"), TIXR = OpcodeTable.lookup("TIXR");
+	private static final int SHIFTL = OpcodeTable.lookup("SHIFTL"), SHIFTR = OpcodeTable.lookup("SHIFTR");
+	private static final int SVC = OpcodeTable.lookup("SVC"), RSUB = OpcodeTable.lookup("RSUB");
+	static{
+		for(int b = 0; b < 256; b++){
+			int id = OpcodeTable.instruction(b), format = id < 0 ? 0 : OpcodeTable.format(id);
+			SIC_TABLE[b] = SICXE_TABLE[b] = -1;
+			if(id < 0) continue;
+			if(format == OpcodeTable.FORMAT3){
+				/**the n and i bits are in the first byte, both 0 is the SIC format**/
+				SICXE_TABLE[b] = (short)(id << 3 | ((b & 3) == 0 ? FORMAT_SIC : OpcodeTable.FORMAT3));
+				if((b & 3) == 0 && OpcodeTable.isSIC(id)) SIC_TABLE[b] = (short)(id << 3 | FORMAT_SIC);
+				}
+			else if((b & 3) == 0)//format 1 and 2 opcodes are the whole byte
+				SICXE_TABLE[b] = (short)(id << 3 | format);
+			}
+		}
+	private final short[] table;
+	private int base;
+	/**the last decoded instruction**/
+	private int id, format, length, nixbpe, register1, register2, displacement, targetAddress;
+
+
+	public Disassembler(boolean is_sic){
+		table = is_sic ? SIC_TABLE : SICXE_TABLE;
+		base = -1;
+		id = -1;
+		}
+
+
+	public void setBase(int baseRegister){ base = baseRegister; }//-1 if B is not known
+
+
+	public int decode(byte[] code, int offset, int address){
+		/**decode: the instruction whose object code starts at code[offset] and which is loaded at address,
+		returns its length, 0 if the bytes are not an instruction (or are cut short)**/
+		if(offset < 0 || offset >= code.length) return length = 0;
+		int b0 = code[offset] & 0xFF, entry = table[b0];
+		if(entry < 0) return length = 0;
+		id = entry >> 3;
+		format = entry & 7;
+		nixbpe = register1 = register2 = displacement = 0;
+		length = format == FORMAT_SIC ? 3 : format;
+		if(format == OpcodeTable.FORMAT3 && offset + 1 < code.length && (code[offset + 1] & 0x10) != 0)
+			length = format = OpcodeTable.FORMAT4;
+		if(offset + length > code.length) return length = 0;
+		int b1 = length > 1 ? code[offset + 1] & 0xFF : 0, b2 = length > 2 ? code[offset + 2] & 0xFF : 0;
+		targetAddress = 0;
+
+		switch(format){
+			case OpcodeTable.FORMAT1:
+				break;
+			case OpcodeTable.FORMAT2:
+				register1 = b1 >> 4;
+				register2 = b1 & 0x0F;
+				break;
+			case FORMAT_SIC:
+				if((b1 & 0x80) != 0) nixbpe = X;
+				targetAddress = displacement = (b1 & 0x7F) << 8 | b2;
+				break;
+			case OpcodeTable.FORMAT3:
+				nixbpe = (b0 & 3) << 4 | b1 >> 4;
+				displacement = (b1 & 0x0F) << 8 | b2;
+				if((nixbpe & P) != 0) targetAddress = (address + 3 + (displacement << 20 >> 20)) & 0xFFFFF;
+				else if((nixbpe & B) != 0) targetAddress = base < 0 ? -1 : (base + displacement) & 0xFFFFF;
+				else targetAddress = displacement;
+				break;
+			default://format 4
+				nixbpe = (b0 & 3) << 4 | b1 >> 4;
+				targetAddress = displacement = (b1 & 0x0F) << 16 | b2 << 8 | (code[offset + 3] & 0xFF);
+				break;
+			}
+		return length;
+		}//END OF: decode
+
+
+	public int id(){ return id; }
+
+
+	public int format(){ return format; }//1 to 4, or FORMAT_SIC
+
+
+	public int length(){ return length; }
+
+
+	public int nixbpe(){ return nixbpe; }
+
+
+	public int register1(){ return register1; }
+
+
+	public int register2(){ return register2; }
+
+
+	public int displacement(){ return displacement; }
+
+
+	public int targetAddress(){ return targetAddress; }//-1 if it is base relative and B is not known
+
+
+	public boolean isImmediate(){ return format >= OpcodeTable.FORMAT3 && (nixbpe & (N | I)) == I; }
+
+
+	public boolean isIndirect(){ return format >= OpcodeTable.FORMAT3 && (nixbpe & (N | I)) == N; }
+
+
+	public boolean isIndexed(){ return (nixbpe & X) != 0; }
+
+
+	public String mnemonic(){ return OpcodeTable.mnemonic(id, format == OpcodeTable.FORMAT4); }
+
+
+	public String operand(){
+		/**operand: the operand as it would be written in the source**/
+		switch(format){
+			case OpcodeTable.FORMAT1:
+				return "";
+			case OpcodeTable.FORMAT2:
+				if(id == SVC) return Integer.toString(register1);
+				if(id == CLEAR || id == TIXR) return registerName(register1);
+				if(id == SHIFTL || id == SHIFTR) return registerName(register1) + "," + (register2 + 1);
+				return registerName(register1) + "," + registerName(register2);
+			default:
+				if(id == RSUB && (nixbpe & (X | B | P | E)) == 0 && displacement == 0) return "";
+				StringBuilder operand = new StringBuilder(12);
+				if(isImmediate()) operand.append('#');
+				else if(isIndirect()) operand.append('@');
+				if(isImmediate() && (nixbpe & (B | P)) == 0)
+					operand.append(targetAddress);//a constant
+				else if(targetAddress < 0)
+					operand.append("B+").append(Integer.toHexString(displacement).toUpperCase());
+				else
+					operand.append(String.format("%04X", targetAddress));
+				if(isIndexed()) operand.append(",X");
+				return operand.toString();
+			}
+		}//END OF: operand
+
+
+	private static String registerName(int number){
+		String name = RegisterTable.name(number);
+		return name == null ? Integer.toString(number) : name;
+		}
+
+
+	public String toString(){ return length == 0 ? "" : mnemonic() + "\t" + operand(); }
+
+
+	public List<String> disassemble(byte[] code, int offset, int address, int count){
+		/**disassemble: a listing of count bytes, one line per instruction, bytes that are not one are listed as
+		BYTE; a LDB immediate sets the base register for the lines after it**/
+		List<String> lines = new ArrayList<String>();
+		int end = Math.min(code.length, offset + count);
+		while(offset < end){
+			int len = decode(code, offset, address);
+			if(len == 0 || offset + len > end){
+				lines.add(String.format("%05X\t%s\tBYTE\tX'%s'", address, ObjcodeGenerator.toHex(code, offset, 1),
+						ObjcodeGenerator.toHex(code, offset, 1)));
+				offset++;
+				address++;
+				continue;
+				}
+			lines.add(String.format("%05X\t%s\t%s\t%s", address, ObjcodeGenerator.toHex(code, offset, len), mnemonic(),
+					operand()));
+			if(OpcodeTable.mnemonic(id).equals("LDB") && isImmediate()) base = targetAddress;
+			offset += len;
+			address += len;
+			}
+		return lines;
+		}//END OF: disassemble
+
+
+	public static void main(String[] args) throws IOException {
+		boolean is_sic = false;
+		int progAddr = 0;
+		List<String> inputs = new ArrayList<String>();
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-sic")) is_sic = true;
+			else if(args[i].equals("-address") && i + 1 < args.length) progAddr = Integer.parseInt(args[++i], 16);
+			else inputs.add(args[i]);
+			}
+		if(inputs.isEmpty()){
+			System.err.println("usage: Disassembler [-sic] [-address hex] files...");
+			System.exit(2);
+			}
+
+		LinkingLoader loader = new LinkingLoader(progAddr);
+		for(String input : inputs) loader.addFile(input);
+		if(!loader.load()){
+			for(String error : loader.getErrors()) System.out.println(error);
+			System.exit(1);
+			}
+		Disassembler disassembler = new Disassembler(is_sic);
+		for(String line : disassembler.disassemble(loader.getMemory(), progAddr, progAddr,
+				loader.getEndAddress() - progAddr))
+			System.out.println(line);
+		}//END OF: main
+
+	}//END OF: class Disassembler
@@ -0,0 +1,219 @@
+package UIAssembler;
+
+/*
+An expression operand, such as BUFEND-BUFFER, LENGTH*3+1 or * (the location counter), of EQU, ORG, WORD or an
+instruction. An expression is a sum of terms and a term is a product or quotient of factors: constants, symbols and
+*. * and / bind tighter than + and -, there are no parentheses and a leading + or - signs the first term. Pass one
+compiles the text once into parallel arrays of the operator before each factor and the factor itself, with the
+symbols interned, so evaluating it again in pass two is array reads and arithmetic only.
+Every value is absolute or relative, as in Beck's assembler. A constant, and a symbol EQU defined with an absolute
+value, are absolute; an address symbol and * are relative. In the result the relative terms have to cancel out in
+pairs (BUFEND-BUFFER is absolute) or leave one added (BUFFER+3 is relative), and they cannot be multiplied or
+divided. A relative value is an address the loader relocates, so it gets a modification record. A symbol named by
+EXTREF counts 0 here and gets a modification record with its own name and sign instead, so it has to be a whole
+term. Absolute values are kept in the symbol table as 24 bit words and are sign extended again here.
+The result of evaluate() stays on the expression until the next call; an expression belongs to one record of one
+control section, so only the thread encoding that section evaluates it.
+It is invoked as so:
+Expression expression = Expression.compile("BUFEND-BUFFER", locCounter, symbols);	//null if it is not well formed
+if(expression.evaluate(symbols)) value = expression.value();
+else System.out.println(expression.error());	//"undefined symbol BUFEND"
+*/
+
+public class Expression {
+
+	private static final byte CONSTANT = 0, SYMBOL = 1, LOCATION = 2;
+	private static final String OPERATORS = "+-*/";
+	private final char[] operators;	//the operator before each factor, '+' or '-' for the first one
+	private final int[] factors;	//the constant, the symbol id or the location counter
+	private final byte[] kinds;
+	private final int count;
+	/**the result of the last evaluate()**/
+	private int value, relative, undefinedSymbol;
+	private String error;
+
+
+	private Expression(char[] operators, int[] factors, byte[] kinds, int count){
+		this.operators = operators;
+		this.factors = factors;
+		this.kinds = kinds;
+		this.count = count;
+		undefinedSymbol = -1;
+		error = null;
+		}
+
+
+	public static boolean isExpression(String operand){
+		/**isExpression: an instruction operand that is an expression rather than a symbol or a number, it has an
+		operator or is *. The #, @ prefix and the ,X suffix are not part of it and a literal never is one**/
+		int start = 0, end = operand.length();
+		if(end > 1 && (operand.charAt(0) == '#' || operand.charAt(0) == '@')) start = 1;
+		if(end - start > 2 && operand.endsWith(",X")) end -= 2;
+		if(start == end || operand.charAt(0) == '=') return false;
+		boolean hasOperator = false;
+		for(int i = start; i < end && !hasOperator; i++)
+			hasOperator = OPERATORS.indexOf(operand.charAt(i)) >= 0;
+		char first = operand.charAt(start);
+		return hasOperator && !isNumber(operand, first == '-' || first == '+' ? start + 1 : start, end);
+		}//END OF: isExpression
+
+
+	public static Expression compile(String text, int location, SymbolTable symbols){
+		/**compile: the expression in text, * being location; null if it is not well formed. Symbols are interned
+		into symbols**/
+		int n = text.length(), count = 0, i = 0;
+		char[] operators = new char[n + 1];
+		int[] factors = new int[n + 1];
+		byte[] kinds = new byte[n + 1];
+		char operator = '+';
+		if(n > 1 && (text.charAt(0) == '+' || text.charAt(0) == '-')) operator = text.charAt(i++);
+		while(true){
+			if(i == n) return null;//no factor after the operator
+			int start = i;
+			if(text.charAt(i) == '*'){
+				kinds[count] = LOCATION;
+				factors[count] = location;
+				i++;
+				}
+			else{
+				while(i < n && OPERATORS.indexOf(text.charAt(i)) < 0) i++;
+				if(i == start) return null;
+				if(isNumber(text, start, i)){
+					try{ factors[count] = Integer.parseInt(text.substring(start, i)); }
+					catch(NumberFormatException e){ return null; }//too large
+					kinds[count] = CONSTANT;
+					}
+				else if(isSymbol(text, start, i)){
+					factors[count] = symbols.intern(text.substring(start, i));
+					kinds[count] = SYMBOL;
+					}
+				else
+					return null;
+				}
+			operators[count++] = operator;
+			if(i == n) break;
+			operator = text.charAt(i++);
+			if(OPERATORS.indexOf(operator) < 0) return null;//* followed by something that is not an operator
+			}
+		return new Expression(operators, factors, kinds, count);
+		}//END OF: compile
+
+
+	private static boolean isNumber(String text, int start, int end){
+		for(int i = start; i < end; i++)
+			if(!Character.isDigit(text.charAt(i))) return false;
+		return end > start;
+		}
+
+
+	private static boolean isSymbol(String text, int start, int end){
+		if(!Character.isLetter(text.charAt(start))) return false;
+		for(int i = start + 1; i < end; i++)
+			if(!Character.isLetterOrDigit(text.charAt(i))) return false;
+		return true;
+		}
+
+
+	public boolean evaluate(SymbolTable symbols){
+		/**evaluate: works out the value and whether it is relative, false with error() set if a symbol is not
+		defined or the terms do not make an absolute or relative value**/
+		int total = 0, term = 0, termRelative = 0, sign = 1;
+		boolean isExternalTerm = false;
+		value = relative = 0;
+		undefinedSymbol = -1;
+		error = null;
+		for(int i = 0; i < count; i++){
+			int factor = factors[i], factorRelative = 0;
+			boolean isExternal = false;
+			if(kinds[i] == LOCATION)
+				factorRelative = 1;
+			else if(kinds[i] == SYMBOL){
+				if(!symbols.isDefined(factor)){
+					error = "undefined symbol " + symbols.name(factor);
+					undefinedSymbol = factor;
+					return false;
+					}
+				isExternal = symbols.isExternal(factor);
+				if(isExternal)
+					factor = 0;
+				else if(symbols.isAbsolute(factor))
+					factor = symbols.address(factor) << 8 >> 8;
+				else{
+					factorRelative = 1;
+					factor = symbols.address(factor);
+					}
+				}
+			char operator = operators[i];
+			if(operator == '+' || operator == '-'){
+				/**a new term**/
+				total += sign * term;
+				relative += sign * termRelative;
+				term = factor;
+				termRelative = factorRelative;
+				isExternalTerm = isExternal;
+				sign = operator == '-' ? -1 : 1;
+				continue;
+				}
+			if(termRelative != 0 || factorRelative != 0){
+				error = "relative term in a product";
+				return false;
+				}
+			if(isExternalTerm || isExternal){
+				error = "external symbol in a product";
+				return false;
+				}
+			if(operator == '*')
+				term *= factor;
+			else if(factor == 0){
+				error = "division by zero";
+				return false;
+				}
+			else
+				term /= factor;
+			}
+		total += sign * term;
+		relative += sign * termRelative;
+		value = total;
+		if(relative != 0 && relative != 1){
+			error = "relative terms that do not pair";
+			return false;
+			}
+		return true;
+		}//END OF: evaluate
+
+
+	public int value(){ return value; }
+
+
+	public boolean isRelative(){ return relative == 1; }
+
+
+	public String error(){ return error; }
+
+
+	public int undefinedSymbol(){ return undefinedSymbol; }//the id of the symbol that made evaluate() fail, or -1
+
+
+	public boolean hasExternal(SymbolTable symbols){
+		/**hasExternal: a symbol of the expression is named by EXTREF, known as soon as it is compiled**/
+		for(int i = 0; i < count; i++)
+			if(kinds[i] == SYMBOL && symbols.isExternal(factors[i])) return true;
+		return false;
+		}
+
+
+	public int size(){ return count; }
+
+
+	public int symbol(int i){ return kinds[i] == SYMBOL ? factors[i] : -1; }//the id of factor i, -1 if it is not one
+
+
+	public String modification(int i, SymbolTable symbols){
+		/**modification: "+NAME" or "-NAME" for the modification record of factor i if it is an external symbol,
+		null otherwise. evaluate() makes sure such a factor is a term by itself, so its sign is the operator
+		before it**/
+		if(kinds[i] != SYMBOL || !symbols.isExternal(factors[i])) return null;
+		return (operators[i] == '-' ? "-" : "+") + symbols.name(factors[i]);
+		}
+
+	}//END OF: class Expression
@@ -0,0 +1,369 @@
+package UIAssembler;
+
+/*
+Incremental assembly for the editor. Instead of writing the text area to a file and assembling it from scratch
+after every edit, an IncrementalAssembler keeps the pass one record of every line, the symbol table and the object
+code of every line from the previous run, and after an edit:
+1) tokenizes only the lines that changed, plus any following lines of more than three fields, which take their
+   tokens from the line before them,
+2) recomputes the location counters, symbol definitions and duplicate/invalid opcode errors from the first changed
+   line on, which is plain integer work on the kept records,
+3) re-encodes only the instructions whose target address or PC/base relative displacement actually changed, and
+   new lines.
+The output is the same text the Assembler writes to finalAssembly.txt when there are no errors, and to errorMsg.txt
+when there are. The tokenizing and encoding rules are the Assembler's own (scanLine, resolveOperand, encodeLine),
+so both always agree.
+It is invoked as so, from a document listener or on every key stroke:
+IncrementalAssembler incremental = new IncrementalAssembler(false);
+incremental.setText(textInput.getText());	//diffs against the previous text and re-assembles the changed lines
+textOutput.setText(incremental.getOutput());
+or, when the changed line range is known:
+incremental.replaceLines(firstLine, removedLineCount, newLines);
+A source with literals, LTORG, macro definitions, control sections, EQU, ORG or expression operands is assembled in
+full after every edit instead: a literal pool moves with every literal added or removed before it, an edited
+definition changes every line it expands to, every section has its own symbol table and records, and an EQU or an
+ORG changes what every line after it means, so there is little for the kept records to save.
+*/
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class IncrementalAssembler {
+
+	private static final String NO_ERRORS = "...No errors detected...";
+	private final Assembler scanner;
+	private final ObjcodeGenerator generator;
+	private final byte[] objcode;
+	private final ArrayList<SourceLine> records;	//one per source line, including any after END
+	private SymbolTable symbolTable;
+	private int endIndex;		//index of the END record, records.size() if there is none
+	private int startingAddress, programLength, errorCount;
+	private int rescanCount, encodeCount;	//lines tokenized and encoded by the last edit
+	private Assembler fullAssembler;		//for sources with literal pools, made on first use
+	private AssemblyResult fullResult;		//the full assembly of a source with literal pools, null otherwise
+
+
+	public IncrementalAssembler(boolean is_sic){
+		scanner = new Assembler("", is_sic);
+		symbolTable = scanner.symbols();
+		generator = new ObjcodeGenerator();
+		objcode = new byte[ObjcodeGenerator.MAX_OBJCODE_LEN];
+		records = new ArrayList<SourceLine>();
+		endIndex = startingAddress = programLength = errorCount = 0;
+		rescanCount = encodeCount = 0;
+		}
+
+
+	public IncrementalAssembler(){ this(true); }
+
+
+	public void setIsSIC(boolean is_sic){
+		/**setIsSIC: a different instruction set changes every line, so everything is assembled again**/
+		if(is_sic == scanner.isSIC()) return;
+		scanner.setIsSIC(is_sic);
+		List<String> text = getSourceLines();
+		records.clear();
+		symbolTable.clear();
+		endIndex = 0;
+		replaceLines(0, 0, text);
+		}
+
+
+	public boolean isSIC(){ return scanner.isSIC(); }
+
+
+	public void setText(String text){
+		/**setText: the whole source after an edit, only the lines between the common prefix and suffix are new**/
+		List<String> lines = splitLines(text);
+		int prefix = 0, oldSize = records.size(), newSize = lines.size();
+		while(prefix < oldSize && prefix < newSize && lines.get(prefix).equals(records.get(prefix).text))
+			prefix++;
+		int suffix = 0;
+		while(suffix < oldSize - prefix && suffix < newSize - prefix
+				&& lines.get(newSize - 1 - suffix).equals(records.get(oldSize - 1 - suffix).text))
+			suffix++;
+		if(prefix == oldSize && prefix == newSize && oldSize > 0){//nothing changed
+			rescanCount = encodeCount = 0;
+			return;
+			}
+		replaceLines(prefix, oldSize - prefix - suffix, lines.subList(prefix, newSize - suffix));
+		}//END OF: setText
+
+
+	public void replaceLines(int from, int removed, List<String> added){
+		/**replaceLines: replaces source lines [from, from + removed) with added and re-assembles**/
+		if(from < 0 || removed < 0 || from + removed > records.size())
+			throw new IndexOutOfBoundsException("lines " + from + " to " + (from + removed) + " of " + records.size());
+		rescanCount = encodeCount = 0;
+		if(from <= endIndex)
+			undefineFrom(from);
+
+		/**tokenize the new lines, and the lines after them that take their tokens from the line before**/
+		records.subList(from, from + removed).clear();
+		SourceLine previous = from > 0 ? records.get(from - 1) : null;
+		ArrayList<SourceLine> scanned = new ArrayList<SourceLine>(added.size());
+		for(String line : added){
+			previous = scanner.scanLine(line, previous);
+			scanned.add(previous);
+			}
+		records.addAll(from, scanned);
+		rescanCount = scanned.size();
+		for(int i = from + scanned.size(); i < records.size() && records.get(i).fieldCount > 3; i++){
+			records.set(i, scanner.scanLine(records.get(i).text, i > 0 ? records.get(i - 1) : null));
+			rescanCount++;
+			}
+
+		if(from <= endIndex){//lines after END are never assembled
+			locate(from);
+			encode();
+			}
+		fullResult = needsFullAssembly() ? assembleFull() : null;
+		}//END OF: replaceLines
+
+
+	private boolean needsFullAssembly(){
+		/**needsFullAssembly: the source has literal pools, macros, control sections, EQU, ORG or expressions, see the
+		top of the file**/
+		for(SourceLine record : records){
+			if(record.isComment) continue;
+			if(record.opcodeId == OpcodeTable.LTORG || LiteralTable.isLiteral(record.operand)) return true;
+			if(record.opcode.equals("MACRO") || record.operand.equals("MACRO")) return true;
+			if(record.opcodeId >= OpcodeTable.CSECT) return true;
+			if(Expression.isExpression(record.operand)
+					|| record.opcodeId == OpcodeTable.WORD && Assembler.isWordExpression(record.operand)) return true;
+			}
+		return false;
+		}
+
+
+	private AssemblyResult assembleFull(){
+		/**assembleFull: the Assembler's own result for the whole text, its listings are this class' output**/
+		if(fullAssembler == null) fullAssembler = new Assembler("", scanner.isSIC());
+		fullAssembler.setIsSIC(scanner.isSIC());
+		rescanCount = encodeCount = records.size();
+		return fullAssembler.assemble(String.join("\n", getSourceLines()));
+		}
+
+
+	private void undefineFrom(int from){
+		/**undefineFrom: takes back the symbols the lines from 'from' to END defined, locate() defines them again**/
+		for(int i = from; i < records.size() && i <= endIndex; i++){
+			SourceLine record = records.get(i);
+			if(record.isDefiner) symbolTable.define(record.labelId, SymbolTable.UNDEFINED);
+			record.isDefiner = false;
+			}
+		}
+
+
+	private void locate(int from){
+		/**locate: pass one from line 'from' on, the lines before it keep their locations and symbols**/
+		int locCounter = from > 0 ? records.get(from - 1).nextLocation : 0;
+		if(from == 0) startingAddress = 0;
+		endIndex = records.size();
+		for(int i = from; i < records.size(); i++){
+			SourceLine record = records.get(i);
+			record.diagnostics = null;
+			if(i == 0 && record.opcodeId == OpcodeTable.START){
+				try{
+					startingAddress = Integer.parseInt(record.operand, 16);
+					}
+				catch(NumberFormatException e){//an address still being typed
+					startingAddress = 0;
+					}
+				locCounter = startingAddress;
+				place(record, locCounter, locCounter);
+				continue;
+				}
+			if(record.opcodeId == OpcodeTable.END){
+				place(record, locCounter, locCounter);
+				endIndex = i;
+				break;
+				}
+			int location = locCounter;
+			if(!record.isComment && record.opcodeId != OpcodeTable.BASE){
+				if(record.labelId >= 0){
+					if(symbolTable.isDefined(record.labelId))
+						record.addDiagnostic(".!!!Error detected on next line. Duplicate symbol!!!");
+					else{
+						symbolTable.define(record.labelId, locCounter);
+						record.isDefiner = true;
+						}
+					}
+				if(record.length >= 0)
+					locCounter += record.length;
+				else
+					record.addDiagnostic(".!!!Error detected on next line. Invalid opcode!!!");
+				}
+			place(record, location, locCounter);
+			}
+		programLength = locCounter - startingAddress;
+		errorCount = 0;
+		for(int i = 0; i < endIndex; i++)
+			if(records.get(i).hasDiagnostics()) errorCount++;
+		}//END OF: locate
+
+
+	private void place(SourceLine record, int location, int nextLocation){
+		/**place: sets a record's locations, the listing columns are only formatted again if they moved**/
+		record.location = location;
+		if(record.listing.isEmpty() || record.nextLocation != nextLocation){
+			record.nextLocation = nextLocation;
+			record.listing = Assembler.listing(nextLocation, record.label, record.opcode, record.operand);
+			}
+		}
+
+
+	private void encode(){
+		/**encode: pass two over the kept object code, only what an edit could have changed is encoded again**/
+		if(errorCount > 0) return;//like the Assembler, no pass two while there are errors
+		int base = 0;
+		int first = endIndex > 0 && records.get(0).opcodeId == OpcodeTable.START ? 1 : 0;
+		for(int i = first; i < endIndex; i++){
+			SourceLine record = records.get(i);
+			int id = record.isComment ? -1 : record.opcodeId;
+			if(id == OpcodeTable.BASE){
+				if(symbolTable.isDefined(record.operandId)) base = symbolTable.address(record.operandId);
+				record.objcode = "";
+				}
+			else if(OpcodeTable.isInstruction(id)){
+				if(record.objcode != null && record.operandId < 0 && !scanner.isRelative(record))
+					continue;//neither the target nor PC nor base can have changed
+				int destAddress = scanner.resolveOperand(record);
+				if(record.objcode != null && isUnchanged(record, destAddress, base))
+					continue;
+				record.encodedDest = destAddress;
+				record.encodedPc = record.nextLocation;
+				record.encodedBase = base;
+				record.objcode = destAddress == SymbolTable.UNDEFINED ? "" : encode(record, destAddress, base);
+				}
+			else if(record.objcode == null)
+				record.objcode = id == OpcodeTable.BYTE || id == OpcodeTable.WORD ? encode(record, 0, 0) : "";
+			}
+		}//END OF: encode
+
+
+	private boolean isUnchanged(SourceLine record, int destAddress, int base){
+		/**isUnchanged: the instruction would encode to the object code it already has. A format 3 instruction
+		only depends on its displacement, so lines that moved together with their target are not encoded again**/
+		if((destAddress == SymbolTable.UNDEFINED) != (record.encodedDest == SymbolTable.UNDEFINED)) return false;
+		if(!scanner.isRelative(record)) return destAddress == record.encodedDest;
+		int disp = destAddress - record.nextLocation;
+		if(disp != record.encodedDest - record.encodedPc) return false;
+		return disp >= ObjcodeGenerator.PC_MIN_DISP && disp <= ObjcodeGenerator.PC_MAX_DISP//else base relative
+				|| destAddress - base == record.encodedDest - record.encodedBase;
+		}//END OF: isUnchanged
+
+
+	private String encode(SourceLine record, int destAddress, int base){
+		encodeCount++;
+		try{
+			int length = scanner.encodeLine(record, destAddress, base, generator, objcode, 0);
+			return ObjcodeGenerator.toHex(objcode, 0, length);
+			}
+		catch(RuntimeException e){//an operand still being typed, such as BYTE X or a format 2 line with no registers
+			return "";
+			}
+		}//END OF: encode
+
+
+	public String getOutput(){
+		/**getOutput: the final listing when there are no errors, the error listing when there are**/
+		return isErrorFree() ? getListing() : getErrorListing();
+		}
+
+
+	public String getErrorListing(){
+		/**getErrorListing: what the Assembler writes to errorMsg.txt**/
+		if(fullResult != null) return String.join("\n", fullResult.getErrorListing()) + "\n";
+		StringBuilder out = new StringBuilder(64 * (endIndex + 4));
+		out.append(Assembler.LISTING_HEADER).append("\n\n");
+		for(int i = 0; i < endIndex; i++){
+			SourceLine record = records.get(i);
+			if(record.diagnostics != null)
+				for(String msg : record.diagnostics) out.append(msg).append('\n');
+			out.append(record.listing).append('\n');
+			}
+		out.append(lastListing()).append('\n');
+		if(isErrorFree()) out.append(NO_ERRORS).append('\n');
+		return out.toString();
+		}//END OF: getErrorListing
+
+
+	public String getListing(){
+		/**getListing: what the Assembler writes to finalAssembly.txt, empty while there are errors**/
+		if(!isErrorFree()) return "";
+		if(fullResult != null) return String.join("\n", fullResult.getListing());
+		StringBuilder out = new StringBuilder(80 * (endIndex + 4));
+		out.append(String.format("%-37s%-9s", Assembler.LISTING_HEADER, "object code")).append("\n\n");
+		int i = 0;
+		if(endIndex > 0 && records.get(0).opcodeId == OpcodeTable.START){
+			out.append(records.get(0).listing).append('\n');
+			i++;
+			}
+		for(; i < endIndex; i++){
+			SourceLine record = records.get(i);
+			out.append(Assembler.objcodeColumn(record.listing, record.getObjcode())).append('\n');
+			}
+		out.append(lastListing());
+		return out.toString();
+		}//END OF: getListing
+
+
+	private String lastListing(){
+		/**the END line, or the empty record pass one adds when the source has no END**/
+		if(endIndex < records.size()) return records.get(endIndex).listing;
+		return Assembler.listing(startingAddress + programLength, "", "", "");
+		}
+
+
+	private static List<String> splitLines(String text){
+		/**splitLines: lines the way BufferedReader.readLine() sees them, ended by \n, \r or \r\n**/
+		ArrayList<String> lines = new ArrayList<String>();
+		int start = 0, length = text.length();
+		for(int i = 0; i < length; i++){
+			char c = text.charAt(i);
+			if(c == '\n' || c == '\r'){
+				lines.add(text.substring(start, i));
+				if(c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') i++;
+				start = i + 1;
+				}
+			}
+		if(start < length) lines.add(text.substring(start));
+		return lines;
+		}//END OF: splitLines
+
+
+	/**Helper methods**/
+
+	public boolean isErrorFree(){ return fullResult != null ? fullResult.isErrorFree() : errorCount == 0; }
+
+
+	public int getErrorCount(){ return fullResult != null ? fullResult.getDiagnostics().size() : errorCount; }
+
+
+	public List<SourceLine> getLines(){ return Collections.unmodifiableList(records); }
+
+
+	public List<String> getSourceLines(){
+		ArrayList<String> text = new ArrayList<String>(records.size());
+		for(SourceLine record : records) text.add(record.text);
+		return text;
+		}
+
+
+	public SymbolTable getSymbolTable(){ return symbolTable; }
+
+
+	public int getStartingAddress(){ return startingAddress; }
+
+
+	public int getProgramLength(){ return programLength; }
+
+
+	public int getRescanCount(){ return rescanCount; }//lines tokenized by the last edit
+
+
+	public int getEncodeCount(){ return encodeCount; }//lines encoded by the last edit
+
+	}//END OF: class IncrementalAssembler
@@ -5,13 +5,15 @@ package UIAssembler;
  left for typing SIC/SICXE instructions, the one on the right for displaying output after assembly.
  On the upper left are two radio buttons for switching between SIC and SICXE. on the bottom is a submit button used to 
  submit code are assembly and a cancel button to clear the left canvas in order to type in new code.
+ Submitted code is assembled in memory by an IncrementalAssembler on a background thread, so the window stays
+ responsive and only the lines changed since the last submit are assembled again; no files are written.
  This code was created by my project partner, Vo Trang. 
  */
  
 import java.awt.*;
 import javax.swing.*;
 import java.awt.event.*;
-import java.io.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 
@@ -33,6 +35,18 @@ public class InputDialogue extends JPanel
     JScrollPane scrollPane2 = new JScrollPane(textOutput);
     protected JButton submitBtn = new JButton("Submit");
     protected JButton cancelBtn = new JButton("Cancel");
+    
+    //assembly runs on one background thread, in memory, and keeps its state between submits
+    private final ExecutorService assemblyThread = Executors.newSingleThreadExecutor(new ThreadFactory(){
+        public Thread newThread(Runnable r){
+            Thread thread = new Thread(r, "assembler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final IncrementalAssembler incremental = new IncrementalAssembler(true);
+    private Future<?> pendingRun = null;
+    private volatile int submitCount = 0;//only the newest submit publishes its output, counted on the EDT
 
     
     
@@ -129,24 +143,24 @@ public class InputDialogue extends JPanel
     
     public class submitEvent implements ActionListener{
             public void actionPerformed(ActionEvent e){
-                BufferedWriter fileOut;
-                String text2 = textInput.getText();
-                try{ 
-                    fileOut = new BufferedWriter(new FileWriter("inputCode.txt", false));
-                    textInput.write(fileOut);
-                    fileOut.close();                
-                } catch (IOException ex) {
-                    Logger.getLogger(InputDialogue.class.getName()).log(Level.SEVERE, null, ex);
-                }
+                final String text = textInput.getText();
+                final boolean is_sic = sicOption.isSelected();
+                final int submit = ++submitCount;
+                if(pendingRun != null)
+                    pendingRun.cancel(false);//a stale run that has not started is dropped
                 
-                Assembler codeAssem = new Assembler("inputCode.txt", sicOption.isSelected());
-                codeAssem.assemble();
-                
-            if(codeAssem.isErrorFree())
-                printOutputFile("finalAssembly.txt");
-            else
-                printOutputFile("errorMsg.txt");
-            
+                pendingRun = assemblyThread.submit(new Runnable(){
+                    public void run(){
+                        try{
+                            incremental.setIsSIC(is_sic);
+                            incremental.setText(text);
+                            if(submit == submitCount)//no listing for a run that is already stale
+                                publishOutput(submit, incremental.getOutput());
+                        } catch (RuntimeException ex) {
+                            Logger.getLogger(InputDialogue.class.getName()).log(Level.SEVERE, null, ex);
+                        }
+                    }
+                });
         }
     }
             
@@ -157,25 +171,15 @@ public class InputDialogue extends JPanel
     }
     
     
-    private void printOutputFile (String fileName){
-        FileReader reader = null;
-            try {
-            	reader = new FileReader(fileName);
-            	textOutput.read(reader, fileName);
-            	}catch(IOException exception){
-            		System.err.println("Errors while printing out results");
-            		exception.printStackTrace();
-            	}finally{
-            		if(reader !=null){
-            			try{
-            				reader.close();
-            				}catch(IOException exception){
-            				System.err.println("error closing reader");
-            				exception.printStackTrace();
-                        	}
-                    	}
-                	} 
-    	}//END OF: printOutputFile
+    private void publishOutput(final int submit, final String output){
+        SwingUtilities.invokeLater(new Runnable(){
+            public void run(){
+                if(submit != submitCount) return;//a newer submit is on its way
+                textOutput.setText(output);
+                textOutput.setCaretPosition(0);
+            }
+        });
+    }//END OF: publishOutput
     
     
     private static void createAndShowGUI(){
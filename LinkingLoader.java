@@ -0,0 +1,371 @@
+package UIAssembler;
+
+/*
+A linking loader for the object programs this assembler writes. It places one or more programs, and every control
+section in them, one after the other from a program load address in a flat image of the SICXE 1 MB memory, the
+way the two pass linking loader of the textbook does:
+1) pass one reads the H and D records and enters every section name and EXTDEF symbol with its load address in the
+   external symbol table (ESTAB),
+2) pass two copies the T records into memory and applies the M records, adding the section's load address to
+   relocate an address field, or the ESTAB address of the external symbol an M record names.
+ESTAB is a SymbolTable, so names are hashed once each and addresses live in a plain int array. A program added as
+an AssemblyResult brings its object code as a memory image, and each T record's bytes are copied from it with one
+System.arraycopy; the hex digits of a program read from a file are decoded with a 128 entry table straight into the
+memory image, two table reads and a shift per byte, with no substrings or Integer.parseInt per byte.
+Problems (a symbol defined twice, an M record naming a symbol no section defines, a program that does not fit below
+1 MB, a record that is cut short or not hex) are collected in getErrors(); pass two only runs if pass one found none.
+It is invoked as so:
+java UIAssembler.LinkingLoader [-address hex] [-out image.bin] copy.obj.txt ...
+or from code:
+LinkingLoader loader = new LinkingLoader(0x4000);
+loader.addProgram(result);	//or loader.addFile("objectProgram.txt")
+if(loader.load()) run(loader.getMemory(), loader.getExecutionAddress());
+*/
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LinkingLoader {
+
+	public static final int MEMORY_SIZE = 1 << 20;	//SICXE addresses are 20 bits
+	private static final byte[] HEX_VALUES = new byte[128];	//-1 for a char that is not a hex digit
+	static{
+		Arrays.fill(HEX_VALUES, (byte)-1);
+		for(int i = 0; i < 10; i++) HEX_VALUES['0' + i] = (byte)i;
+		for(int i = 0; i < 6; i++) HEX_VALUES['A' + i] = HEX_VALUES['a' + i] = (byte)(10 + i);
+		}
+	private final int programAddress;
+	private final ArrayList<List<String>> programs;
+	private final ArrayList<byte[]> images;		//the AssemblyResult's object code, null for a file
+	private final ArrayList<String> programNames;	//file names, for the error messages
+	private final SymbolTable estab;
+	private final ArrayList<String> loadMap, errors;
+	private byte[] memory;
+	private int endAddress, executionAddress;
+	private String source;		//program and line an error is reported for
+	private boolean isRecordValid;
+
+
+	public LinkingLoader(int progAddr){
+		programAddress = progAddr;
+		programs = new ArrayList<List<String>>();
+		images = new ArrayList<byte[]>();
+		programNames = new ArrayList<String>();
+		estab = new SymbolTable();
+		loadMap = new ArrayList<String>();
+		errors = new ArrayList<String>();
+		memory = null;
+		endAddress = executionAddress = progAddr;
+		}
+
+
+	public void addProgram(AssemblyResult result){
+		/**addProgram: an assembled program, its T records are copied from the result's memory image**/
+		byte[] image = result.getObjectCode();
+		addProgram("program " + (programs.size() + 1), result.getObjectProgram(),
+				image.length >= result.getProgramLength() ? image : null);
+		}
+
+
+	public void addProgram(String name, List<String> records){ addProgram(name, records, null); }
+
+
+	private void addProgram(String name, List<String> records, byte[] image){
+		programs.add(records);
+		programNames.add(name);
+		images.add(image);
+		}
+
+
+	public void addFile(String fileName) throws IOException {
+		addProgram(fileName, Files.readAllLines(Paths.get(fileName), StandardCharsets.ISO_8859_1));
+		}
+
+
+	public boolean load(){
+		/**load: links and loads every program added so far, true if there were no errors**/
+		if(memory == null) memory = new byte[MEMORY_SIZE];
+		else Arrays.fill(memory, (byte)0);
+		estab.clear();
+		loadMap.clear();
+		errors.clear();
+		executionAddress = -1;
+		endAddress = programAddress;
+		pass1();
+		if(errors.isEmpty()) pass2();
+		if(executionAddress < 0) executionAddress = programAddress;//no E record named a first instruction
+		return errors.isEmpty();
+		}//END OF: load
+
+
+	private void pass1(){
+		/**pass1: assigns every control section its load address and enters the section names and EXTDEF symbols
+		in ESTAB**/
+		int csAddress = programAddress, hStart = 0, csLength = 0;
+		for(int p = 0; p < programs.size(); p++){
+			List<String> records = programs.get(p);
+			for(int n = 0; n < records.size(); n++){
+				String record = records.get(n);
+				if(record.isEmpty()) continue;
+				startRecord(p, n);
+				char type = record.charAt(0);
+				if(type == 'H'){
+					String name = field(record, 1, 6);
+					hStart = hex(record, 7, 6);
+					csLength = hex(record, 13, 6);
+					if(!isRecordValid) continue;
+					if(csAddress + csLength > MEMORY_SIZE){
+						error("Control section " + name + " does not fit in memory");
+						csLength = 0;
+						}
+					define(name, csAddress);
+					loadMap.add(String.format("%-6s\t\t%05X\t%05X", name, csAddress, csLength));
+					}
+				else if(type == 'D'){
+					for(int i = 1; i + 12 <= record.length(); i += 12){
+						String name = field(record, i, 6);
+						int address = hex(record, i + 6, 6);
+						if(!isRecordValid) break;
+						define(name, csAddress + address - hStart);
+						loadMap.add(String.format("\t%-6s\t%05X", name, csAddress + address - hStart));
+						}
+					if((record.length() - 1) % 12 != 0) error("Invalid D record");
+					}
+				else if(type == 'E'){
+					csAddress += csLength;//the next section follows this one
+					csLength = 0;
+					}
+				}
+			}
+		endAddress = csAddress + csLength;
+		}//END OF: pass1
+
+
+	private void pass2(){
+		/**pass2: copies the object code into memory and applies the modifications**/
+		int csAddress = programAddress, hStart = 0, csLength = 0;
+		for(int p = 0; p < programs.size(); p++){
+			List<String> records = programs.get(p);
+			byte[] image = images.get(p);
+			int imageBase = csAddress;//the image holds the program's sections one after the other, as loaded
+			for(int n = 0; n < records.size(); n++){
+				String record = records.get(n);
+				if(record.isEmpty()) continue;
+				startRecord(p, n);
+				switch(record.charAt(0)){
+					case 'H':
+						hStart = hex(record, 7, 6);
+						csLength = hex(record, 13, 6);
+						break;
+					case 'T':
+						loadText(record, csAddress - hStart, csAddress + csLength, image, imageBase);
+						break;
+					case 'M':
+						modify(record, csAddress - hStart, csAddress + csLength);
+						break;
+					case 'E':
+						if(record.length() > 1 && executionAddress < 0){
+							int first = hex(record, 1, 6);
+							if(isRecordValid) executionAddress = csAddress + first - hStart;
+							}
+						csAddress += csLength;
+						csLength = 0;
+						break;
+					case 'D':
+					case 'R'://R names are checked where an M record uses them
+						break;
+					default:
+						error("Invalid record type " + record.charAt(0));
+						break;
+					}
+				}
+			}
+		}//END OF: pass2
+
+
+	private void loadText(String record, int relocation, int csEnd, byte[] image, int imageBase){
+		/**loadText: copies a T record's object code from the program's image, or decodes it, into memory at its
+		load address**/
+		int address = hex(record, 1, 6) + relocation, length = hex(record, 7, 2);
+		if(!isRecordValid) return;
+		if(record.length() < 9 + 2 * length){
+			error("T record is shorter than its length");
+			return;
+			}
+		if(address < relocation || address + length > csEnd){
+			error("T record outside of its control section");
+			return;
+			}
+		if(image != null && address - imageBase + length <= image.length){
+			System.arraycopy(image, address - imageBase, memory, address, length);
+			return;
+			}
+		for(int i = 9, end = 9 + 2 * length; i < end; i += 2){
+			int hi = digit(record.charAt(i)), lo = digit(record.charAt(i + 1));
+			if((hi | lo) < 0){
+				error("Invalid hex digit in T record");
+				return;
+				}
+			memory[address++] = (byte)(hi << 4 | lo);
+			}
+		}//END OF: loadText
+
+
+	private void modify(String record, int relocation, int csEnd){
+		/**modify: adds (or subtracts) the section's relocation or an external symbol's address to the field of
+		halfBytes hex digits at address; an odd count leaves the high half of the first byte alone, like the
+		opcode and flags of a format 4 instruction**/
+		int address = hex(record, 1, 6) + relocation, halfBytes = hex(record, 7, 2);
+		if(!isRecordValid) return;
+		int byteCount = (halfBytes + 1) / 2;
+		if(halfBytes == 0 || byteCount > 3 || address < relocation || address + byteCount > csEnd){
+			error("Invalid M record");
+			return;
+			}
+		int delta = relocation;
+		if(record.length() > 9){
+			String name = record.substring(10).trim();
+			int id = estab.find(name);
+			if(!estab.isDefined(id)){
+				error("Undefined external symbol " + name);
+				return;
+				}
+			delta = estab.address(id);
+			if(record.charAt(9) == '-') delta = -delta;
+			else if(record.charAt(9) != '+'){
+				error("Invalid M record");
+				return;
+				}
+			}
+		int value = 0;
+		for(int i = 0; i < byteCount; i++) value = value << 8 | (memory[address + i] & 0xFF);
+		int mask = (1 << 4 * halfBytes) - 1;
+		value = (value & ~mask) | ((value + delta) & mask);
+		for(int i = byteCount - 1; i >= 0; i--, value >>= 8) memory[address + i] = (byte)value;
+		}//END OF: modify
+
+
+	private void define(String name, int address){
+		int id = estab.intern(name);
+		if(estab.isDefined(id)) error("Duplicate external symbol " + name);
+		else estab.define(id, address);
+		}
+
+
+	private void startRecord(int program, int line){
+		source = programNames.get(program) + " line " + (line + 1);
+		isRecordValid = true;
+		}
+
+
+	private void error(String message){ errors.add(source + ": " + message); }
+
+
+	private String field(String record, int start, int length){
+		/**field: a name padded to length with spaces, trimmed**/
+		if(record.length() < start + length){
+			if(isRecordValid) error("Record is too short");
+			isRecordValid = false;
+			return "";
+			}
+		return record.substring(start, start + length).trim();
+		}
+
+
+	private int hex(String record, int start, int digits){
+		/**hex: the value of digits hex digits at start, isRecordValid is cleared if they are missing or not hex**/
+		if(record.length() < start + digits){
+			if(isRecordValid) error("Record is too short");
+			isRecordValid = false;
+			return 0;
+			}
+		int value = 0;
+		for(int i = start; i < start + digits; i++){
+			int d = digit(record.charAt(i));
+			if(d < 0){
+				if(isRecordValid) error("Invalid hex digit");
+				isRecordValid = false;
+				return 0;
+				}
+			value = value << 4 | d;
+			}
+		return value;
+		}//END OF: hex
+
+
+	private static int digit(char c){ return c < 128 ? HEX_VALUES[c] : -1; }
+
+
+	public boolean isErrorFree(){ return errors.isEmpty(); }
+
+
+	public List<String> getErrors(){ return errors; }
+
+
+	public byte[] getMemory(){ return memory; }//the loader's own image, not a copy
+
+
+	public int getProgramAddress(){ return programAddress; }
+
+
+	public int getEndAddress(){ return endAddress; }//the address after the last section
+
+
+	public int getExecutionAddress(){ return executionAddress; }
+
+
+	public List<String> getLoadMap(){ return loadMap; }//control section, symbol, address and length lines
+
+
+	public Map<String, Integer> getSymbols(){
+		/**getSymbols: ESTAB, every section name and EXTDEF symbol with its load address, in load order**/
+		LinkedHashMap<String, Integer> symbols = new LinkedHashMap<String, Integer>();
+		for(int id = 0; id < estab.size(); id++)
+			if(estab.isDefined(id)) symbols.put(estab.name(id), estab.address(id));
+		return symbols;
+		}
+
+
+	public static void main(String[] args) throws IOException {
+		int progAddr = 0;
+		String outputFile = null;
+		List<String> inputs = new ArrayList<String>();
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-address") && i + 1 < args.length) progAddr = Integer.parseInt(args[++i], 16);
+			else if(args[i].equals("-out") && i + 1 < args.length) outputFile = args[++i];
+			else inputs.add(args[i]);
+			}
+		if(inputs.isEmpty()){
+			System.err.println("usage: LinkingLoader [-address hex] [-out image.bin] files...");
+			System.exit(2);
+			}
+
+		LinkingLoader loader = new LinkingLoader(progAddr);
+		for(String input : inputs) loader.addFile(input);
+		long startTime = System.nanoTime();
+		boolean isLoaded = loader.load();
+		long elapsed = System.nanoTime() - startTime;
+		for(String error : loader.getErrors()) System.out.println(error);
+		if(!isLoaded) System.exit(1);
+
+		System.out.println("section\tsymbol\taddress\tlength");
+		for(String line : loader.getLoadMap()) System.out.println(line);
+		System.out.printf("loaded %05X-%05X, execution starts at %05X, %.3f ms%n", loader.getProgramAddress(),
+				loader.getEndAddress(), loader.getExecutionAddress(), elapsed / 1e6);
+		if(outputFile != null){
+			try(OutputStream out = new FileOutputStream(outputFile)){
+				out.write(loader.getMemory(), progAddr, loader.getEndAddress() - progAddr);
+				}
+			}
+		}//END OF: main
+
+	}//END OF: class LinkingLoader
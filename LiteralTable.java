@@ -0,0 +1,154 @@
+package UIAssembler;
+
+/*
+The literal table (LITTAB). A literal operand such as =C'EOF', =X'05' or =3 names a constant the assembler places
+in the next literal pool, at the next LTORG or at END, and the instruction refers to the constant's address.
+Literals are kept by value, not by spelling: =C'EOF' and =X'454F46' are the same three bytes and share one pool
+entry, and a literal used on many lines is stored once per pool. Values are found through an open addressing hash
+table over the bytes, like the SymbolTable's. Once a pool is placed the next uses of a literal start a new entry in
+the next pool, so a literal is always close to the code that uses it.
+Every entry is also a symbol in the assembler's SymbolTable, under its spelling followed by a space and the pool
+number, a name no source symbol can have. The instruction's operand id is that symbol, so pass two, the one pass
+fixup chains and the modification records treat a literal like any other forward reference; placing the pool just
+defines the symbols.
+It is invoked as so:
+int symbolId = literals.intern("=C'EOF'", symbolTable);	//-1 if the literal is not valid
+...at LTORG or END:
+for(int id = literals.poolStart(); id < literals.size(); id++) locCounter += literals.length(id);
+literals.endPool();
+*/
+
+import java.util.Arrays;
+
+public class LiteralTable {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private byte[][] values;
+	private String[] names;		//the first spelling of each value
+	private int[] symbolIds;
+	private int[] slots;		//id + 1 of the entries in the current pool, 0 for empty
+	private int count, poolStart, pool;
+
+
+	public LiteralTable(){
+		values = new byte[INITIAL_CAPACITY][];
+		names = new String[INITIAL_CAPACITY];
+		symbolIds = new int[INITIAL_CAPACITY];
+		slots = new int[2 * INITIAL_CAPACITY];
+		count = poolStart = pool = 0;
+		}
+
+
+	public void clear(){
+		Arrays.fill(values, 0, count, null);
+		Arrays.fill(names, 0, count, null);
+		Arrays.fill(slots, 0);
+		count = poolStart = pool = 0;
+		}
+
+
+	public int intern(String literal, SymbolTable symbols){
+		/**intern: the symbol id of the pool entry holding the literal's value, -1 if it is not a valid literal**/
+		byte[] value = value(literal);
+		if(value == null) return -1;
+		int mask = slots.length - 1;
+		int i = hash(value) & mask;
+		for(; slots[i] != 0; i = (i + 1) & mask)
+			if(Arrays.equals(values[slots[i] - 1], value)) return symbolIds[slots[i] - 1];
+		if(count == values.length){
+			grow();
+			mask = slots.length - 1;
+			for(i = hash(value) & mask; slots[i] != 0; i = (i + 1) & mask);
+			}
+		values[count] = value;
+		names[count] = literal;
+		symbolIds[count] = symbols.intern(literal + " " + pool);
+		slots[i] = ++count;
+		return symbolIds[count - 1];
+		}//END OF: intern
+
+
+	public int poolStart(){ return poolStart; }//the first entry of the pool not placed yet
+
+
+	public int size(){ return count; }
+
+
+	public void endPool(){
+		/**endPool: the pending entries have been placed, later uses start a new pool**/
+		if(poolStart == count) return;
+		Arrays.fill(slots, 0);
+		poolStart = count;
+		pool++;
+		}
+
+
+	public byte[] value(int id){ return values[id]; }
+
+
+	public int length(int id){ return values[id].length; }
+
+
+	public String name(int id){ return names[id]; }
+
+
+	public int symbolId(int id){ return symbolIds[id]; }
+
+
+	public static boolean isLiteral(String operand){ return operand.length() > 1 && operand.charAt(0) == '='; }
+
+
+	public static byte[] value(String literal){
+		/**value: the bytes of =C'text', =X'hex' or =decimal (one word), null if literal is none of them**/
+		if(!isLiteral(literal)) return null;
+		int length = literal.length();
+		if(length >= 5 && literal.charAt(2) == '\'' && literal.charAt(length - 1) == '\''){
+			char type = literal.charAt(1);
+			String body = literal.substring(3, length - 1);
+			if(type == 'C'){
+				byte[] value = new byte[body.length()];
+				for(int i = 0; i < value.length; i++) value[i] = (byte)body.charAt(i);
+				return value;
+				}
+			if(type == 'X' && body.length() % 2 == 0){
+				byte[] value = new byte[body.length() / 2];
+				for(int i = 0; i < value.length; i++){
+					int hi = Character.digit(body.charAt(2 * i), 16), lo = Character.digit(body.charAt(2 * i + 1), 16);
+					if(hi < 0 || lo < 0) return null;
+					value[i] = (byte)(hi << 4 | lo);
+					}
+				return value;
+				}
+			return null;
+			}
+		try{
+			int word = Integer.parseInt(literal.substring(1));
+			return new byte[]{(byte)(word >> 16), (byte)(word >> 8), (byte)word};
+			}
+		catch(NumberFormatException e){ return null; }
+		}//END OF: value
+
+
+	private static int hash(byte[] value){
+		int h = Arrays.hashCode(value);
+		h = (h ^ (h >>> 16)) * 0x85EBCA6B;
+		h = (h ^ (h >>> 13)) * 0xC2B2AE35;
+		return h ^ (h >>> 16);
+		}
+
+
+	private void grow(){
+		/**grow: doubles the entry arrays and rehashes the current pool's entries**/
+		values = Arrays.copyOf(values, 2 * values.length);
+		names = Arrays.copyOf(names, 2 * names.length);
+		symbolIds = Arrays.copyOf(symbolIds, 2 * symbolIds.length);
+		slots = new int[2 * values.length];
+		int mask = slots.length - 1;
+		for(int id = poolStart; id < count; id++){
+			int i = hash(values[id]) & mask;
+			while(slots[i] != 0) i = (i + 1) & mask;
+			slots[i] = id + 1;
+			}
+		}//END OF: grow
+
+	}//END OF: class LiteralTable
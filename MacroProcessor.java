@@ -0,0 +1,483 @@
+package UIAssembler;
+
+/*
+The macro processor. It sits between the source and pass one (or one pass): definitions are taken out of the
+source as they are read and every invocation is replaced by its expansion, one line at a time, so the expanded
+program only ever exists as the lines pass one is handed and is never written to a file.
+A definition is
+RDBUFF	MACRO	&INDEV,&BUFADR
+		CLEAR	X
+$LP		TD		=X'&INDEV'
+		...
+		MEND
+and an invocation such as "CLOOP	RDBUFF	F1,BUFFER" becomes a comment line holding the invocation followed by the
+body with every &parameter replaced by the argument in its position (missing arguments are empty). The label of
+the invocation goes on the first line of the expansion, which must not have a label of its own. A label starting
+with $ is made unique per invocation by replacing the $ with a letter id, $LP becomes AALP, ABLP, ... The id has
+two letters, three after the first 676 invocations, and the label has to stay within the assembler's MAX_SYMBOL_LEN:
+a definition with a $ label of more than 4 characters after the $ is rejected, and an expansion whose id makes a
+label too long is reported. Bodies may invoke other macros, up to MAX_DEPTH deep, but not a macro that is already
+being expanded: recursion could never end, so such an invocation is reported instead. A source's expansions together
+give at most MAX_EXPANDED_LINES lines, past that the expansion is dropped and reported, as is every invocation after
+it. Macro names cannot be mnemonics, a later definition replaces an earlier one.
+Expansions are cached: an invocation with the same name and arguments as an earlier one reuses its expanded lines
+and their tokenizer field bounds, so the body is neither substituted nor tokenized again. Only lines with $ labels
+are rewritten for the new invocation. Nested invocations stay in the cached expansion as invocations, so each one
+gets its own $ labels and its own cache entry.
+Errors are reported on the line nextLine() returns next, see takeError().
+It is invoked as so:
+MacroProcessor macros = new MacroProcessor(reader::readLine);
+for(CharSequence line = macros.nextLine(tokenizer); line != null; line = macros.nextLine(tokenizer)){
+	while(macros.hasError()) report(macros.takeError());
+	...the tokenizer already holds the fields of line
+	}
+*/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class MacroProcessor {
+
+	public interface LineSource{ CharSequence readLine() throws IOException; }
+
+	public static final int MAX_DEPTH = 16;
+	public static final int MAX_EXPANDED_LINES = 1 << 20;
+	private static final String MACRO = "MACRO", MEND = "MEND";
+	private static final String INVALID_INVOCATION = ".!!!Error detected on next line. Invalid macro invocation!!!";
+	private static final String LONG_LABEL = ".!!!Error detected on next line. Macro label too long!!!";
+	private static final String TOO_MANY_LINES = ".!!!Error detected on next line. Macro expansion too long!!!";
+	private static final int ID_LENGTH = 2;//letters of the first 676 ids
+	private static final int BOUNDS = 1 + 2 * Tokenizer.MAX_FIELDS;//count, then start and end of every field
+	private final LineSource source;
+	private final HashMap<String, Macro> macros;
+	private final HashMap<String, Expansion> expansions;//by name + '\n' + arguments
+	private final Tokenizer scanner;	//for bodies, the caller's tokenizer holds the line being returned
+	private final Expansion[] frames;	//the expansions being returned, nested invocations on top
+	private final int[] nexts;			//the next line of each
+	private final String[] uniques;		//the $ label id of each
+	private final Macro[] invokedMacros;//the macro of each
+	private int depth;					//0 when reading the source
+	private int invocations;
+	private int expandedLines;			//returned from expansions so far
+	private final ArrayList<String> errors;//for the line nextLine() returns next
+	private int expansionCount, cacheHits;
+
+
+	private static final class Macro{
+		/**a definition: the body lines cut into text and parameter numbers**/
+		final String name;
+		final int parameterCount;
+		final ArrayList<Object[]> body = new ArrayList<Object[]>();//String pieces, Integer parameter indexes
+		Macro(String macroName, int parameters){
+			name = macroName;
+			parameterCount = parameters;
+			}
+		}//END OF: class Macro
+
+
+	private static final class Invocation{
+		/**a macro invoked from the body of another, expanded when it is reached**/
+		final Macro macro;
+		final String arguments;
+		String label;
+		Invocation(Macro invoked, String args, String invocationLabel){
+			macro = invoked;
+			arguments = args;
+			label = invocationLabel;
+			}
+		}//END OF: class Invocation
+
+
+	private static final class Expansion{
+		/**the lines of one expansion, where the tokenizer found their fields and the nested invocations**/
+		String[] text = new String[8];
+		int[] bounds = new int[8 * BOUNDS];
+		boolean[] isUnique = new boolean[8];	//has $ labels
+		Invocation[] nested = new Invocation[8];//non null for an entry that is an invocation, not a line
+		int size;
+		String error;
+		void add(String line, Tokenizer tokenizer, Invocation invocation){
+			if(size == text.length){
+				text = Arrays.copyOf(text, 2 * size);
+				bounds = Arrays.copyOf(bounds, 2 * size * BOUNDS);
+				isUnique = Arrays.copyOf(isUnique, 2 * size);
+				nested = Arrays.copyOf(nested, 2 * size);
+				}
+			text[size] = line;
+			if(line != null){
+				tokenizer.save(bounds, size * BOUNDS);
+				isUnique[size] = hasUniqueLabels(line);
+				}
+			nested[size] = invocation;
+			size++;
+			}
+		Expansion copy(){
+			Expansion copy = new Expansion();
+			copy.text = text.clone();
+			copy.bounds = bounds.clone();
+			copy.isUnique = isUnique.clone();
+			copy.nested = nested.clone();
+			copy.size = size;
+			copy.error = error;
+			return copy;
+			}
+		}//END OF: class Expansion
+
+
+	public MacroProcessor(LineSource lineSource){
+		source = lineSource;
+		macros = new HashMap<String, Macro>();
+		expansions = new HashMap<String, Expansion>();
+		scanner = new Tokenizer();
+		frames = new Expansion[MAX_DEPTH];
+		nexts = new int[MAX_DEPTH];
+		uniques = new String[MAX_DEPTH];
+		invokedMacros = new Macro[MAX_DEPTH];
+		errors = new ArrayList<String>();
+		clear();
+		}
+
+
+	public void clear(){
+		/**clear: forgets every definition and expansion, for the next source**/
+		macros.clear();
+		expansions.clear();
+		Arrays.fill(frames, null);
+		Arrays.fill(invokedMacros, null);
+		depth = invocations = expandedLines = 0;
+		errors.clear();
+		expansionCount = cacheHits = 0;
+		}
+
+
+	public CharSequence nextLine(Tokenizer tokenizer) throws IOException {
+		/**nextLine: the next line for the assembler, already scanned into tokenizer, null at the end of the
+		source. Definitions are read and kept, invocations start an expansion**/
+		while(true){
+			if(depth > 0){
+				CharSequence line = expandedLine(tokenizer);
+				if(line != null) return line;
+				continue;
+				}
+			CharSequence line = source.readLine();
+			tokenizer.scan(line);
+			if(line == null) return null;
+			if(isDefinition(line, tokenizer)){
+				define(tokenizer);
+				continue;
+				}
+			Macro macro = invoked(line, tokenizer);
+			if(macro == null) return line;
+			String label = tokenizer.count() == 3 ? tokenizer.field(0) : "";
+			String arguments = tokenizer.field(tokenizer.count() == 3 ? 2 : 1);
+			push(macro, arguments, label);
+			/**the invocation itself is listed as a comment before its expansion**/
+			line = comment(macro, arguments);
+			tokenizer.scan(line);
+			return line;
+			}
+		}//END OF: nextLine
+
+
+	public boolean hasError(){ return !errors.isEmpty(); }
+
+
+	public String takeError(){
+		/**takeError: the next error message for the line nextLine() returned last, null if there is none**/
+		return errors.isEmpty() ? null : errors.remove(0);
+		}
+
+
+	public int getExpansionCount(){ return expansionCount; }//invocations expanded
+
+
+	public int getCacheHits(){ return cacheHits; }//invocations that reused a cached expansion
+
+
+	private CharSequence expandedLine(Tokenizer tokenizer){
+		/**expandedLine: the next line of the innermost expansion with fresh $ labels if it has any, null if that
+		expansion ended or a nested invocation was started instead**/
+		Expansion expansion = frames[depth - 1];
+		int i = nexts[depth - 1]++;
+		if(i == expansion.size){
+			frames[--depth] = null;
+			invokedMacros[depth] = null;
+			return null;
+			}
+		Invocation invocation = expansion.nested[i];
+		if(invocation != null){
+			if(depth == MAX_DEPTH || isExpanding(invocation.macro)) errors.add(INVALID_INVOCATION);//recursion
+			else push(invocation.macro, invocation.arguments, invocation.label);
+			return null;
+			}
+		if(++expandedLines > MAX_EXPANDED_LINES){
+			/**runaway expansion: drop what is left of it, the source goes on after the outermost invocation**/
+			errors.add(TOO_MANY_LINES);
+			Arrays.fill(frames, null);
+			Arrays.fill(invokedMacros, null);
+			depth = 0;
+			return null;
+			}
+		String text = expansion.text[i];
+		if(!expansion.isUnique[i]){
+			tokenizer.load(text, expansion.bounds, i * BOUNDS);
+			return text;
+			}
+		String unique = uniques[depth - 1];
+		StringBuilder line = new StringBuilder(text.length() + unique.length());
+		boolean isTooLong = false;
+		for(int c = 0; c < text.length(); c++){
+			if(!isUniqueLabel(text, c)){
+				line.append(text.charAt(c));
+				continue;
+				}
+			line.append(unique);//in place of the $
+			if(unique.length() + labelLength(text, c) > Assembler.MAX_SYMBOL_LEN) isTooLong = true;
+			}
+		if(isTooLong) errors.add(LONG_LABEL);
+		tokenizer.scan(line);
+		return line.toString();
+		}//END OF: expandedLine
+
+
+	private boolean isExpanding(Macro macro){
+		/**isExpanding: macro is one of the expansions being returned, invoking it again would never end**/
+		for(int d = 0; d < depth; d++)
+			if(invokedMacros[d] == macro) return true;
+		return false;
+		}
+
+
+	private static boolean isUniqueLabel(String line, int i){
+		/**a $ that starts a symbol, as a label or in an operand, not one inside a C'..' constant**/
+		if(line.charAt(i) != '$') return false;
+		if(i == 0) return true;
+		char c = line.charAt(i - 1);
+		return c <= ' ' || c == '#' || c == '@' || c == ',' || c == '=';
+		}
+
+
+	private static int labelLength(String line, int i){
+		/**labelLength: the characters of the $ label at i, after the $**/
+		int end = i + 1;
+		while(end < line.length() && Character.isLetterOrDigit(line.charAt(end))) end++;
+		return end - i - 1;
+		}
+
+
+	private static boolean hasLongLabels(String line){
+		/**hasLongLabels: a $ label of the line does not fit MAX_SYMBOL_LEN with even a two letter id**/
+		for(int i = line.indexOf('$'); i >= 0; i = line.indexOf('$', i + 1))
+			if(isUniqueLabel(line, i) && ID_LENGTH + labelLength(line, i) > Assembler.MAX_SYMBOL_LEN) return true;
+		return false;
+		}
+
+
+	private static boolean hasUniqueLabels(String line){
+		for(int i = line.indexOf('$'); i >= 0; i = line.indexOf('$', i + 1))
+			if(isUniqueLabel(line, i)) return true;
+		return false;
+		}
+
+
+	private void push(Macro macro, String arguments, String label){
+		/**push: starts returning the expansion of macro with arguments, from the cache if it was expanded before**/
+		expansionCount++;
+		String key = macro.name + '\n' + arguments;
+		Expansion expansion = expansions.get(key);
+		if(expansion != null)
+			cacheHits++;
+		else{
+			expansion = expand(macro, arguments);
+			expansions.put(key, expansion);
+			}
+		if(!label.equals("")) expansion = labeled(expansion, label);
+		if(expansion.error != null) errors.add(expansion.error);
+		frames[depth] = expansion;
+		invokedMacros[depth] = macro;
+		nexts[depth] = 0;
+		uniques[depth] = uniqueId(invocations++);
+		depth++;
+		}//END OF: push
+
+
+	private Expansion expand(Macro macro, String arguments){
+		/**expand: substitutes the arguments into the body, nested invocations are kept for later**/
+		Expansion expansion = new Expansion();
+		String[] values = split(arguments);
+		if(values.length > macro.parameterCount){
+			expansion.error = INVALID_INVOCATION;//too many arguments
+			return expansion;
+			}
+		StringBuilder line = new StringBuilder(64);
+		for(Object[] pieces : macro.body){
+			line.setLength(0);
+			for(Object piece : pieces){
+				if(piece instanceof String) line.append((String)piece);
+				else{
+					int index = (Integer)piece;
+					if(index < values.length) line.append(values[index]);
+					}
+				}
+			String text = line.toString();
+			scanner.scan(text);
+			Macro nested = invoked(text, scanner);
+			if(nested == null){
+				expansion.add(text, scanner, null);
+				continue;
+				}
+			String label = scanner.count() == 3 ? scanner.field(0) : "";
+			String nestedArguments = scanner.field(scanner.count() == 3 ? 2 : 1);
+			String comment = comment(nested, nestedArguments);
+			scanner.scan(comment);
+			expansion.add(comment, scanner, null);
+			expansion.add(null, scanner, new Invocation(nested, nestedArguments, label));
+			}
+		return expansion;
+		}//END OF: expand
+
+
+	private static String comment(Macro macro, String arguments){
+		return ".\t" + macro.name + (arguments.equals("") ? "" : "\t" + arguments);
+		}
+
+
+	private Expansion labeled(Expansion expansion, String label){
+		/**labeled: a copy of expansion with the invocation's label on its first line, or on its first nested
+		invocation, the cached one is shared. It is an error if that line already has a label**/
+		Expansion copy = expansion.copy();
+		if(copy.size > 1 && copy.nested[1] != null){//the comment of a nested invocation, then the invocation
+			Invocation invocation = copy.nested[1];
+			if(!invocation.label.equals("")) copy.error = INVALID_INVOCATION;
+			else copy.nested[1] = new Invocation(invocation.macro, invocation.arguments, label);
+			return copy;
+			}
+		int count = copy.size > 0 ? copy.bounds[0] : 0;
+		if(count == 0 || count > 2 || copy.text[0].charAt(copy.bounds[1]) == '.'){
+			copy.error = INVALID_INVOCATION;
+			return copy;
+			}
+		String line = label + "\t" + copy.text[0].substring(copy.bounds[1]);
+		scanner.scan(line);
+		copy.text[0] = line;
+		scanner.save(copy.bounds, 0);
+		copy.isUnique[0] = hasUniqueLabels(line);
+		return copy;
+		}//END OF: labeled
+
+
+	private void define(Tokenizer tokenizer) throws IOException {
+		/**define: reads a definition up to MEND, the MACRO line is in tokenizer**/
+		String name = tokenizer.field(0);
+		String[] parameters = split(tokenizer.field(2));
+		Macro macro = new Macro(name, parameters.length);
+		boolean isValid = OpcodeTable.lookup(name) < 0, isTooLong = false;
+		for(String parameter : parameters)
+			if(parameter.length() < 2 || parameter.charAt(0) != '&') isValid = false;
+		for(CharSequence line = source.readLine(); ; line = source.readLine()){
+			if(line == null){
+				isValid = false;//no MEND before the end of the source
+				break;
+				}
+			scanner.scan(line);
+			int opcode = scanner.count() == 3 ? 1 : 0;
+			if(scanner.count() > 0 && scanner.count() <= 3 && fieldEquals(line, scanner, opcode, MEND)) break;
+			if(isDefinition(line, scanner)) isValid = false;//definitions do not nest
+			if(hasLongLabels(line.toString())) isTooLong = true;
+			macro.body.add(template(line.toString(), parameters));
+			}
+		if(isTooLong && isValid){
+			errors.add(LONG_LABEL);
+			return;
+			}
+		if(!isValid){
+			errors.add(".!!!Error detected on next line. Invalid macro definition!!!");
+			return;
+			}
+		macros.put(name, macro);
+		expansions.clear();//a redefinition changes any expansion that used the old one
+		}//END OF: define
+
+
+	private static Object[] template(String line, String[] parameters){
+		/**template: cuts a body line into text pieces and the indexes of the parameters it refers to**/
+		ArrayList<Object> pieces = new ArrayList<Object>();
+		int start = 0, length = line.length();
+		for(int i = line.indexOf('&'); i >= 0; i = line.indexOf('&', i)){
+			int end = i + 1;
+			while(end < length && Character.isLetterOrDigit(line.charAt(end))) end++;
+			int index = -1;
+			for(int p = 0; p < parameters.length && index < 0; p++)
+				if(parameters[p].length() == end - i && line.startsWith(parameters[p], i)) index = p;
+			if(index < 0){
+				i = end;//not a parameter, kept as text
+				continue;
+				}
+			if(i > start) pieces.add(line.substring(start, i));
+			pieces.add(Integer.valueOf(index));
+			start = i = end;
+			}
+		if(start < length) pieces.add(line.substring(start));
+		return pieces.toArray();
+		}//END OF: template
+
+
+	private boolean isDefinition(CharSequence line, Tokenizer tokenizer){
+		/**isDefinition: NAME MACRO [&P1,&P2...], a two field line is only one if NAME is not a mnemonic**/
+		int count = tokenizer.count();
+		if(count < 2 || count > 3 || line.charAt(tokenizer.start(0)) == '.') return false;
+		if(!fieldEquals(line, tokenizer, 1, MACRO)) return false;
+		return count == 3 || OpcodeTable.lookup(line, tokenizer.start(0), tokenizer.end(0)) < 0;
+		}
+
+
+	private Macro invoked(CharSequence line, Tokenizer tokenizer){
+		/**invoked: the macro the line invokes, null if it is not an invocation. Mnemonics are never looked up**/
+		int count = tokenizer.count();
+		if(macros.isEmpty() || count == 0 || count > 3 || line.charAt(tokenizer.start(0)) == '.') return null;
+		int field = count == 3 ? 1 : 0;
+		if(OpcodeTable.lookup(line, tokenizer.start(field), tokenizer.end(field)) >= 0) return null;
+		return macros.get(tokenizer.field(field));
+		}
+
+
+	private static boolean fieldEquals(CharSequence line, Tokenizer tokenizer, int field, String str){
+		if(field >= tokenizer.count() || tokenizer.length(field) != str.length()) return false;
+		for(int i = 0; i < str.length(); i++)
+			if(line.charAt(tokenizer.start(field) + i) != str.charAt(i)) return false;
+		return true;
+		}
+
+
+	private static String[] split(String arguments){
+		/**split: the comma separated arguments, commas inside quotes (C'A,B') do not separate**/
+		if(arguments.equals("")) return new String[0];
+		ArrayList<String> values = new ArrayList<String>();
+		boolean isQuoted = false;
+		int start = 0;
+		for(int i = 0; i < arguments.length(); i++){
+			char c = arguments.charAt(i);
+			if(c == '\'') isQuoted = !isQuoted;
+			else if(c == ',' && !isQuoted){
+				values.add(arguments.substring(start, i));
+				start = i + 1;
+				}
+			}
+		values.add(arguments.substring(start));
+		return values.toArray(new String[values.size()]);
+		}//END OF: split
+
+
+	private static String uniqueId(int n){
+		/**uniqueId: AA, AB, ... ZZ, then AAA ...**/
+		StringBuilder id = new StringBuilder(3);
+		id.append((char)('A' + n % 26));
+		n /= 26;
+		id.append((char)('A' + n % 26));
+		for(n /= 26; n > 0; n = (n - 1) / 26) id.append((char)('A' + (n - 1) % 26));
+		return id.reverse().toString();
+		}
+
+	}//END OF: class MacroProcessor
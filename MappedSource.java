@@ -0,0 +1,77 @@
+package UIAssembler;
+
+/*
+Reads an assembly source file through a memory mapping instead of a BufferedReader. The file is mapped once with
+FileChannel.map and read as ASCII, one byte per character, so nothing is decoded or copied up front. nextLine()
+moves a window over the mapped bytes and returns this object, which is itself a CharSequence of the current line;
+the tokenizer and the opcode table read the line straight from the mapping, and a String is only created when
+a field is actually kept (labels, operands, unknown opcodes).
+Files up to 2GB can be mapped. The window is reused, so a returned line is only valid until the next call.
+It is invoked as so:
+MappedSource source = new MappedSource("bigProgram.txt");
+for(CharSequence line = source.nextLine(); line != null; line = source.nextLine()) tokenizer.scan(line);
+source.close();
+*/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+public class MappedSource implements CharSequence, Closeable {
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	private final int size;
+	private int position;			//start of the next line
+	private int lineStart, lineEnd;	//the current line, without its line terminator
+
+
+	public MappedSource(String fileName) throws IOException {
+		file = new RandomAccessFile(fileName, "r");
+		FileChannel channel = file.getChannel();
+		if(channel.size() > Integer.MAX_VALUE){
+			file.close();
+			throw new IOException(fileName + " is too large to map");
+			}
+		size = (int)channel.size();
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		position = lineStart = lineEnd = 0;
+		}
+
+
+	public CharSequence nextLine(){
+		/**nextLine: moves to the next line, returns null at the end of the file**/
+		if(position >= size) return null;
+		lineStart = position;
+		int i = position;
+		while(i < size && buffer.get(i) != '\n') i++;
+		position = i + 1;
+		if(i > lineStart && buffer.get(i - 1) == '\r') i--;
+		lineEnd = i;
+		return this;
+		}//END OF: nextLine
+
+
+	public int length(){ return lineEnd - lineStart; }
+
+
+	public char charAt(int index){ return (char)(buffer.get(lineStart + index) & 0xFF); }
+
+
+	public CharSequence subSequence(int start, int end){
+		/**subSequence: copies part of the current line out of the mapping**/
+		byte[] bytes = new byte[end - start];
+		buffer.get(lineStart + start, bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+		}
+
+
+	public String toString(){ return subSequence(0, length()).toString(); }
+
+
+	public void close() throws IOException { file.close(); }
+
+	}//END OF: class MappedSource
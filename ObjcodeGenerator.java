@@ -10,9 +10,14 @@ the method generateObjcode, takes in these parameters inorder: The OPCODE, the O
 the source address, the destination address, the contents of the base register, the contents of the index register,
 and the format.
 It returns a string.
+To avoid building a string for every instruction, encodeObjcode takes the same parameters plus a byte array and an
+offset (or a ByteBuffer), writes the object code bytes there and returns how many bytes it wrote.
+The generator counts the format 3 instructions it made PC relative and base relative, and the format 4 ones.
+Encodings made with setCounting(false), such as the provisional ones of a one pass forward reference, are not
+counted.
 */
 
-import java.util.Hashtable;
+import java.nio.ByteBuffer;
 
 public class ObjcodeGenerator {
 
@@ -21,20 +26,49 @@ public class ObjcodeGenerator {
 	private final byte FORMATSIC = 0, FORMAT1 = 1; 
 	private final byte FORMAT2 = 2, FORMAT3 = 3, FORMAT4 = 4;
 	private final byte FORMATBYTE = 5, FORMATWORD = 6;
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+	public static final int MAX_OBJCODE_LEN = 4;
+	public static final int PC_MIN_DISP = -2048, PC_MAX_DISP = 2047;//the 12 bit PC relative displacement is signed
 	private boolean setBflag; 
 	private boolean	offPflag;
 	private boolean setPflag;
-	private Hashtable<String, Byte> registerTable;
+	private byte[] scratch;
+	private int pcRelativeCount, baseRelativeCount, extendedCount;
+	private boolean isCounting;
 	
 	public ObjcodeGenerator(){
 		setPflag = offPflag = setBflag = false;
-		buildRegisterTable();
+		scratch = new byte[MAX_OBJCODE_LEN];
+		pcRelativeCount = baseRelativeCount = extendedCount = 0;
+		isCounting = true;
+		}
+	
+	public int getPcRelativeCount(){ return pcRelativeCount; }
+	
+	public int getBaseRelativeCount(){ return baseRelativeCount; }
+	
+	public int getExtendedCount(){ return extendedCount; }
+	
+	void setCounting(boolean is_counting){ isCounting = is_counting; }//false while an encoding is not final
+	
+	void addCounts(ObjcodeGenerator other){
+		/**adds the counts of another generator, pass two uses one per control section**/
+		pcRelativeCount += other.pcRelativeCount;
+		baseRelativeCount += other.baseRelativeCount;
+		extendedCount += other.extendedCount;
 		}
 	
 	public String generateObjcode(String OPCODE, byte opHexRep, String OPERAND, int srcAddress,
 	int destAddress, int baseRegister, int xRegister, byte FORMAT){
+		int len = encodeObjcode(OPCODE, opHexRep, OPERAND, srcAddress, destAddress,
+				baseRegister, xRegister, FORMAT, scratch, 0);
+		return toHex(scratch, 0, len);//turn byte array into a string
+		}
+	
+	public int encodeObjcode(String OPCODE, byte opHexRep, String OPERAND, int srcAddress,
+	int destAddress, int baseRegister, int xRegister, byte FORMAT, byte[] dest, int offset){
+		/**writes the object code into dest starting at offset, returns the number of bytes written**/
 		byte nixbpe;
-		byte[] objcode;
 		int disp_TA;
 		
 		nixbpe = setNixbpe(OPCODE, OPERAND, FORMAT);//sets nixbpe flags
@@ -45,89 +79,116 @@ public class ObjcodeGenerator {
 			nixbpe |= 0x04;// set nixbpe b flag
 			nixbpe &= 0xFD;// turn nixbpe p flag off
 			setBflag = false; //set to false for next iteration
+			if(isCounting) baseRelativeCount++;
 			}
 		else if(setPflag){
 			nixbpe |= 0x02;//set nixbpe p flag
 			setPflag = false;
+			if(isCounting) pcRelativeCount++;
 			}
+		else if(FORMAT == FORMAT4 && isCounting)
+			extendedCount++;
 		
-		if((nixbpe & 0x01) == 1){// if format 4 truncate the '+' off of OPCODE string
-			OPCODE = OPCODE.substring(1);
+		return encodeObjcodeToByte(opHexRep, OPERAND, disp_TA, (short)disp_TA, 
+				(short)disp_TA, FORMAT, nixbpe, dest, offset);//generate the objcode
+		}
+	
+	public int encodeObjcode(String OPCODE, byte opHexRep, String OPERAND, int srcAddress,
+	int destAddress, int baseRegister, int xRegister, byte FORMAT, ByteBuffer dest){
+		/**writes the object code at the buffer's position and advances it, returns the number of bytes written**/
+		int len;
+		if(dest.hasArray()){
+			len = encodeObjcode(OPCODE, opHexRep, OPERAND, srcAddress, destAddress, baseRegister,
+					xRegister, FORMAT, dest.array(), dest.arrayOffset() + dest.position());
+			dest.position(dest.position() + len);
+			}
+		else{
+			len = encodeObjcode(OPCODE, opHexRep, OPERAND, srcAddress, destAddress, baseRegister,
+					xRegister, FORMAT, scratch, 0);
+			dest.put(scratch, 0, len);
 			}
+		return len;
+		}
 	
-		objcode = encodeObjcodeToByte(opHexRep, OPERAND, disp_TA, (short)disp_TA, 
-				(short)disp_TA, FORMAT, nixbpe);//generate the objcode
-		
-		StringBuilder strBuilder = new StringBuilder();//turn byte array into a string
-		for(int i =0; i < objcode.length; i++)
-			strBuilder.append(String.format("%02X", objcode[i]));
-		
-		return strBuilder.toString();
+	public static String toHex(byte[] bytes, int offset, int len){
+		/**table driven hex formatting, two upper case digits per byte**/
+		char[] hex = new char[2 * len];
+		for(int i = 0; i < len; i++){
+			int b = bytes[offset + i] & 0xFF;
+			hex[2*i] = HEX_DIGITS[b >> 4];
+			hex[2*i + 1] = HEX_DIGITS[b & 0x0F];
+			}
+		return new String(hex);
 		}
 	
-	private byte[] encodeObjcodeToByte(byte opcode, String operand, int extAddr, short addr, short disp, byte format, byte nixbpe){
-		byte[] objcode = null;
+	private int encodeObjcodeToByte(byte opcode, String operand, int extAddr, short addr, short disp,
+	byte format, byte nixbpe, byte[] objcode, int i){
+		int len = 0;
 		if(format == 1){
 			/**format1(8 bits): |opcode(8)|**/
 			/**[opcode(8)]**/
-			objcode = new byte[1];
-			objcode[0] = opcode;
+			len = 1;
+			objcode[i] = opcode;
 			}
 		else if(format == 2){
 			/**format2(16 bits): |opcode(8)|register1(4)|register2(4)|**/
 			/**[opcode(8)], [register1(4 lo) | register2(4 lo)]**/
-			objcode = new byte[2];
-			byte reg1 = 0, reg2 = 0;
-			reg1 = registerTable.get(operand.charAt(0)+"");
-			if(operand.length() > 2)//find second register
-				reg2 = registerTable.get(operand.charAt(2)+"");
-			objcode[0] = opcode;
-			objcode[1] = (byte) ( (reg1 << 4) | (reg2) );
+			len = 2;
+			/**SVC n has n in register1, SHIFTL r1,n and SHIFTR r1,n have n - 1 in register2**/
+			int reg1 = 0, reg2 = 0, comma = operand.indexOf(',');
+			String first = comma < 0 ? operand : operand.substring(0, comma);
+			reg1 = isConstant(first) ? Integer.parseInt(first) : RegisterTable.number(operand.charAt(0));
+			if(comma >= 0 && comma + 1 < operand.length()){//find second register
+				String second = operand.substring(comma + 1);
+				reg2 = isConstant(second) ? Integer.parseInt(second) - 1 : RegisterTable.number(second.charAt(0));
+				}
+			objcode[i] = opcode;
+			objcode[i+1] = (byte) ( ((reg1 & 0x0F) << 4) | (reg2 & 0x0F) );
 			}
 		else if(format == 3){
 			/**format3(24 bits): |opcode(6)|nixbbe(6)|displacement(12)|**/
 			/**[opcode(6) | nixbpe(2 hi)], [nixbpe(4 lo) | displacement(4 hi)], [displacement(8 lo)]**/
-			objcode = new byte[3];
-			objcode[0] = (byte) (opcode | ( (nixbpe & 0x30) >> 4) );
-			objcode[1] = (byte) ( ( (nixbpe & 0x0F) << 4) | ( (disp & 0x0F00) >> 8) );
-			objcode[2] = (byte) (disp & 0x00FF);
+			len = 3;
+			objcode[i] = (byte) (opcode | ( (nixbpe & 0x30) >> 4) );
+			objcode[i+1] = (byte) ( ( (nixbpe & 0x0F) << 4) | ( (disp & 0x0F00) >> 8) );
+			objcode[i+2] = (byte) (disp & 0x00FF);
 			}
 		else if(format == FORMATSIC){
 			/**SIC format(24 bits): |opcode(8)|x(1)|address(15)|**/
 			/**[opcode(8)], [nixbpe(1, 4th bit) | address(7 hi)], [address(8lo)]**/
-			objcode = new byte[3];
-			objcode[0] = opcode;
-			objcode[1] = (byte) (((addr & 0x7F00) >> 8) | ((nixbpe & 0x08) << 4));
-			objcode[2] = (byte)   (addr & 0x00FF);
+			len = 3;
+			objcode[i] = opcode;
+			objcode[i+1] = (byte) (((addr & 0x7F00) >> 8) | ((nixbpe & 0x08) << 4));
+			objcode[i+2] = (byte)   (addr & 0x00FF);
 			}
 		else if(format == 4){
 			/**format4(32 bits): |opcode(6)|nixbpe(6)|address(20)|**/
 			/**[opcode(6 hi) | nixbpe(2 hi)], [nixbpe(4 lo) | address(4 hi)], [address(8 mid)], [address(8 lo)]**/
-			objcode = new byte[4];
-			objcode[0] = (byte) (opcode | ((nixbpe & 0x30) >> 4));
-			objcode[1] = (byte) ( ( (nixbpe & 0x0F) << 4) | ( (extAddr & 0x000F0000) >> 16) );
-			objcode[2] = (byte) ((extAddr & 0x0000FF00) >> 8);//0x105D
-			objcode[3] = (byte) (extAddr & 0x000000FF);
+			len = 4;
+			objcode[i] = (byte) (opcode | ((nixbpe & 0x30) >> 4));
+			objcode[i+1] = (byte) ( ( (nixbpe & 0x0F) << 4) | ( (extAddr & 0x000F0000) >> 16) );
+			objcode[i+2] = (byte) ((extAddr & 0x0000FF00) >> 8);//0x105D
+			objcode[i+3] = (byte) (extAddr & 0x000000FF);
 			}
 		else if((format == FORMATWORD)){
-			objcode = new byte[3];
-			objcode[0] = (byte) ((extAddr & 0x00FF0000) >> 16);
-			objcode[1] = (byte) ((extAddr & 0x0000FF00) >> 8);
-			objcode[2] = (byte) (extAddr & 0x000000FF);
+			len = 3;
+			objcode[i] = (byte) ((extAddr & 0x00FF0000) >> 16);
+			objcode[i+1] = (byte) ((extAddr & 0x0000FF00) >> 8);
+			objcode[i+2] = (byte) (extAddr & 0x000000FF);
 			}
 		else if(format == FORMATBYTE){
 			if((extAddr & 0x0000FF) != extAddr){
-				objcode = new byte[3];
-				objcode[0] = (byte) ((extAddr & 0x00FF0000) >> 16);
-				objcode[1] = (byte) ((extAddr & 0x0000FF00) >> 8);
-				objcode[2] = (byte) (extAddr & 0x000000FF);
+				len = 3;
+				objcode[i] = (byte) ((extAddr & 0x00FF0000) >> 16);
+				objcode[i+1] = (byte) ((extAddr & 0x0000FF00) >> 8);
+				objcode[i+2] = (byte) (extAddr & 0x000000FF);
 				}
 			else{
-				objcode = new byte[1];
-				objcode[0] = (byte)disp;
+				len = 1;
+				objcode[i] = (byte)disp;
 				}
 			}
-		return objcode;
+		return len;
 		}//END OF encode objcode to byte
 	
 	private byte setNixbpe(String OPCODE, String OPERAND, byte FORMAT){
@@ -139,19 +200,19 @@ public class ObjcodeGenerator {
 			nixbpe = 0x00;
 		else if(!isSICXE){
 			/**SIC**/
-			if(len > 2 && OPERAND.substring(OPERAND.length() - 2).equals(",X")){
+			if(OPERAND.endsWith(",X")){
 				/**test: is indexed?**/
 				nixbpe |= 0x08;//set x flag
 				}
 			}
 		else if(isSICXE){
 			/**SICXE**/
-			if(len > 1 && OPCODE.charAt(0) == '+'){
+			if(len > 0 && OPCODE.charAt(0) == '+'){
 				/**test: is extended format?**/
 				nixbpe |= 0x01;//set e flag
 				nixbpe &= 0x39;//turn off b and p flags
 				}
-			if(len > 1){
+			if(len > 0){//a one character operand such as LDA 0 is an operand too
 				char firstC = OPERAND.charAt(0);
 				if(firstC == '@'){
 					/**test: is indirect mode?**/
@@ -161,7 +222,7 @@ public class ObjcodeGenerator {
 					/**test: is immediate mode?**/
 					nixbpe |= 0x10;//set i flag
 					}
-				else if(OPERAND.substring(OPERAND.length() - 2).equals(",X")){
+				else if(OPERAND.endsWith(",X")){
 					/**test: is indexed?**/
 					nixbpe |= 0x08;//set x flag
 					}
@@ -235,18 +296,19 @@ public class ObjcodeGenerator {
 		else
 			disp_addr = targetAddr;
 		
-		if(isConst && (isImmediate || isIndirect)) return (disp_addr & 0x00000FFF);//extract 12 bits
+		int constMask = isExtFormat ? 0x000FFFFF : 0x00000FFF;//a format 4 constant has 20 bits
+		if(isConst && (isImmediate || isIndirect)) return (disp_addr & constMask);//extract 12 or 20 bits
 		if(isIndexed) disp_addr += xReg; //add x register to target address
-		if(isConst && isSimpleSICXE) return (disp_addr & 0x00000FFF);//extract 12 bits
+		if(isConst && isSimpleSICXE) return (disp_addr & constMask);//extract 12 or 20 bits
 		if(isExtFormat) return (disp_addr & 0x000FFFFF); //extract 20 bits
 		if(isSimpleSIC) return (disp_addr & 0x00007FFF); //extract 15 bits
 			
 		disp_addr = targetAddr - pc;//calculate the displacement
- 		if(disp_addr > 0 && (disp_addr != (disp_addr & 0x00000FFF))){//determine is target address is too far
+ 		if(disp_addr > PC_MAX_DISP){//determine is target address is too far, the displacement is signed
 			disp_addr = targetAddr - baseReg;//if true use base register instead
 			setBflag = true;
 			}
- 		else if(disp_addr < 0 && (-disp_addr != (-disp_addr & 0x00000FFF))){
+ 		else if(disp_addr < PC_MIN_DISP){
  			disp_addr = targetAddr - baseReg;//if true use base register instead
 			setBflag = true;
  			}
@@ -266,17 +328,4 @@ public class ObjcodeGenerator {
 	  	return true;  
 		}//END OF isDigit
 	
-	private void buildRegisterTable(){
-		registerTable = new Hashtable<String, Byte>();
-		registerTable.put("A", (byte)0);
-		registerTable.put("X", (byte)1);
-		registerTable.put("L", (byte)2);
-		registerTable.put("B", (byte)3);
-		registerTable.put("S", (byte)4);
-		registerTable.put("T", (byte)5);
-		registerTable.put("F", (byte)6);
-		registerTable.put("PC", (byte)8);
-		registerTable.put("SW", (byte)9);
-		}//END OF buildRegisterTable
-	
 }//END of class ObjcodeGenerator
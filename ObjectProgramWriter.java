@@ -0,0 +1,177 @@
+package UIAssembler;
+
+/*
+Writes the standard SIC/SICXE object program: one Header record, Text records of at most 30 bytes, Modification
+records and one End record, one record per line:
+H<name(6)><starting address(6)><program length(6)>
+T<starting address(6)><length(2)><object code>
+M<address(6)><length in half bytes(2)>
+E<address of first executable instruction(6)>
+A program of several control sections has one such group per section, with the Define and Refer records of its
+EXTDEF and EXTREF after the Header, Modification records that name the external symbol to add, and an End record
+with no address after the first section:
+D<name(6)><address(6)>...		up to 6 per record
+R<name(6)>...					up to 12 per record
+M<address(6)><length in half bytes(2)>+<name>
+Pass two hands it the object code bytes of every line as they are encoded. The bytes are collected in one reusable
+30 byte buffer that is flushed as a Text record when the next line's bytes do not fit in it, when they do not follow
+on from the last ones, or when a RESW/RESB gap is reported. Modification records are kept until the End record is
+written.
+*/
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+public class ObjectProgramWriter {
+
+	public static final int MAX_TEXT_BYTES = 30;
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+	private final PrintWriter out;
+	private final byte[] text;
+	private final StringBuilder record;
+	private int textStart, textLength;
+	private int[] modifications;	//address, half byte length pairs
+	private String[] modificationSymbols;//"+NAME" or "-NAME" for an external symbol, null to relocate
+	private int modificationCount;
+
+
+	public ObjectProgramWriter(PrintWriter writer){
+		out = writer;
+		text = new byte[MAX_TEXT_BYTES];
+		record = new StringBuilder(2 * MAX_TEXT_BYTES + 9);
+		textStart = textLength = 0;
+		modifications = new int[32];
+		modificationSymbols = new String[16];
+		modificationCount = 0;
+		}
+
+
+	public void writeHeader(String name, int startingAddress, int programLength){
+		record.setLength(0);
+		record.append('H');
+		appendName(name);
+		appendHex(startingAddress, 6);
+		appendHex(programLength, 6);
+		out.println(record);
+		}//END OF: writeHeader
+
+
+	public void writeDefinitions(List<String> names, List<Integer> addresses){
+		/**writeDefinitions: the D records of a control section's EXTDEF symbols**/
+		for(int i = 0; i < names.size(); i += 6){
+			record.setLength(0);
+			record.append('D');
+			for(int j = i; j < names.size() && j < i + 6; j++){
+				appendName(names.get(j));
+				appendHex(addresses.get(j), 6);
+				}
+			out.println(record);
+			}
+		}//END OF: writeDefinitions
+
+
+	public void writeReferences(List<String> names){
+		/**writeReferences: the R records of a control section's EXTREF symbols**/
+		for(int i = 0; i < names.size(); i += 12){
+			record.setLength(0);
+			record.append('R');
+			for(int j = i; j < names.size() && j < i + 12; j++) appendName(names.get(j));
+			out.println(record);
+			}
+		}//END OF: writeReferences
+
+
+	public void addText(int address, byte[] objcode, int offset, int len){
+		/**addText: appends the object code of one line that starts at address to the current Text record, or to a
+		new one if it does not fit or follow on, so an instruction is never cut across two records. Only a
+		constant longer than a record is split**/
+		if(textLength > 0 && (textLength + len > MAX_TEXT_BYTES || textStart + textLength != address))
+			flushText();
+		for(int i = 0; i < len; i++){
+			if(textLength == MAX_TEXT_BYTES) flushText();
+			if(textLength == 0) textStart = address + i;
+			text[textLength++] = objcode[offset + i];
+			}
+		}//END OF: addText
+
+
+	public void gap(){
+		/**gap: reserved storage, the next object code starts a new Text record**/
+		flushText();
+		}
+
+
+	public void addModification(int address, int halfBytes){ addModification(address, halfBytes, null); }
+
+
+	public void addModification(int address, int halfBytes, String symbol){
+		/**addModification: symbol is "+NAME" to add the address of an external symbol, null to relocate**/
+		if(2 * modificationCount == modifications.length){
+			modifications = Arrays.copyOf(modifications, 2 * modifications.length);
+			modificationSymbols = Arrays.copyOf(modificationSymbols, modificationCount * 2);
+			}
+		modifications[2 * modificationCount] = address;
+		modifications[2 * modificationCount + 1] = halfBytes;
+		modificationSymbols[modificationCount] = symbol;
+		modificationCount++;
+		}//END OF: addModification
+
+
+	public void writeEnd(int firstInstruction){
+		writeModifications();
+		record.setLength(0);
+		record.append('E');
+		appendHex(firstInstruction, 6);
+		out.println(record);
+		}//END OF: writeEnd
+
+
+	public void writeEnd(){
+		/**writeEnd: the End record of a control section other than the first, it has no address**/
+		writeModifications();
+		out.println('E');
+		}
+
+
+	private void writeModifications(){
+		flushText();
+		for(int i = 0; i < modificationCount; i++){
+			record.setLength(0);
+			record.append('M');
+			appendHex(modifications[2 * i], 6);
+			appendHex(modifications[2 * i + 1], 2);
+			if(modificationSymbols[i] != null) record.append(modificationSymbols[i]);
+			out.println(record);
+			}
+		modificationCount = 0;
+		}//END OF: writeModifications
+
+
+	private void flushText(){
+		if(textLength == 0) return;
+		record.setLength(0);
+		record.append('T');
+		appendHex(textStart, 6);
+		appendHex(textLength, 2);
+		for(int i = 0; i < textLength; i++){
+			record.append(HEX_DIGITS[(text[i] >> 4) & 0x0F]);
+			record.append(HEX_DIGITS[text[i] & 0x0F]);
+			}
+		out.println(record);
+		textLength = 0;
+		}//END OF: flushText
+
+
+	private void appendName(String name){
+		record.append(name.length() > 6 ? name.substring(0, 6) : name);
+		for(int i = name.length(); i < 6; i++) record.append(' ');
+		}
+
+
+	private void appendHex(int value, int digits){
+		for(int shift = 4 * (digits - 1); shift >= 0; shift -= 4)
+			record.append(HEX_DIGITS[(value >> shift) & 0x0F]);
+		}
+
+	}//END OF: class ObjectProgramWriter
@@ -0,0 +1,166 @@
+package UIAssembler;
+
+/*
+The SIC/SICXE operation code table, built once per JVM and shared by every Assembler and ObjcodeGenerator.
+Every mnemonic, instructions and assembler directives alike, has a dense integer id: the instructions come first
+(0 to INSTRUCTION_COUNT - 1), followed by the directives. The id indexes straight into the opcode and format arrays
+so both passes can dispatch on it without looking anything up again.
+Lookups go through a perfect hash: the multiplier is chosen when the class loads so that no two mnemonics share a
+slot, which means a lookup hashes the characters once, reads one slot and compares one mnemonic. Lookups take a
+character range, so "+JSUB" is looked up from index 1 without building a substring.
+It is invoked as so:
+int id = OpcodeTable.lookup("+JSUB", 1, 5);
+int opcode = OpcodeTable.opcode(id);	//0x48
+byte format = OpcodeTable.format(id);	//3
+*/
+
+public final class OpcodeTable {
+
+	public static final byte FORMAT1 = 1, FORMAT2 = 2, FORMAT3 = 3, FORMAT4 = 4;
+	public static final byte DIRECTIVE = 0;
+
+	private static final String[] MNEMONICS = {
+		"ADD", "ADDF", "ADDR", "AND", "CLEAR", "COMP", "COMPF", "COMPR", "DIV", "DIVF", "DIVR",
+		"FIX", "FLOAT", "HIO",
+		"J", "JEQ", "JGT", "JLT", "JSUB",
+		"LDA", "LDB", "LDCH", "LDF", "LDL", "LDS", "LDT", "LDX", "LPS",
+		"MUL", "MULF", "MULR", "NORM", "OR", "RD", "RMO", "RSUB", "SHIFTL", "SHIFTR", "SIO", "SSK",
+		"STA", "STB", "STCH", "STF", "STI", "STL", "STS", "STSW", "STT", "STX",
+		"SUB", "SUBF", "SUBR", "SVC", "TD", "TIO", "TIX", "TIXR", "WD",
+		/**assembler directives**/
+		"START", "END", "BYTE", "WORD", "RESB", "RESW", "BASE", "LTORG", "CSECT", "EXTDEF", "EXTREF",
+		"EQU", "ORG"
+		};
+	private static final int[] OPCODES = {
+		0x18, 0x58, 0x90, 0x40, 0xB4, 0x28, 0x88, 0xA0, 0x24, 0x64, 0x9C,
+		0xC4, 0xC0, 0xF4,
+		0x3C, 0x30, 0x34, 0x38, 0x48,
+		0x00, 0x68, 0x50, 0x70, 0x08, 0x6C, 0x74, 0x04, 0xD0,
+		0x20, 0x60, 0x98, 0xC8, 0x44, 0xD8, 0xAC, 0x4C, 0xA4, 0xA8, 0xF0, 0xEC,
+		0x0C, 0x78, 0x54, 0x80, 0xD4, 0x14, 0x7C, 0xE8, 0x84, 0x10,
+		0x1C, 0x5C, 0x94, 0xB0, 0xE0, 0xF8, 0x2C, 0xB8, 0xDC
+		};
+	private static final byte[] FORMATS = {
+		3, 3, 2, 3, 2, 3, 3, 2, 3, 3, 2,
+		1, 1, 1,
+		3, 3, 3, 3, 3,
+		3, 3, 3, 3, 3, 3, 3, 3, 3,
+		3, 3, 2, 1, 3, 3, 2, 3, 2, 2, 1, 3,
+		3, 3, 3, 3, 3, 3, 3, 3, 3, 3,
+		3, 3, 2, 2, 3, 1, 3, 2, 3
+		};
+	/**the instructions the SIC assembler accepts**/
+	private static final String[] SIC_MNEMONICS = {
+		"ADD", "AND", "CLEAR", "COMP", "DIV", "J", "JEQ", "JGT", "JLT", "JSUB",
+		"LDA", "LDCH", "LDL", "LDX", "LPS", "MUL", "OR", "RD", "RSUB", "SHIFTL", "SHIFTR", "SSK",
+		"STA", "STCH", "STI", "STL", "STSW", "STX", "SUB", "SVC", "TD", "TIO", "TIX", "WD"
+		};
+
+	public static final int INSTRUCTION_COUNT = 59;//OPCODES.length, written out so the ids below are constants
+	public static final int START = INSTRUCTION_COUNT, END = START + 1, BYTE = START + 2;
+	public static final int WORD = START + 3, RESB = START + 4, RESW = START + 5, BASE = START + 6;
+	public static final int LTORG = START + 7;
+	public static final int CSECT = START + 8, EXTDEF = START + 9, EXTREF = START + 10;//SICXE only
+	public static final int EQU = START + 11, ORG = START + 12;
+	public static final int SIZE = MNEMONICS.length;
+
+	private static final int SLOT_BITS = 8;
+	private static final boolean[] IN_SIC = new boolean[SIZE];
+	private static final String[] EXTENDED_MNEMONICS = new String[INSTRUCTION_COUNT];//"+JSUB" etc.
+	private static final short[] SLOTS = new short[1 << SLOT_BITS];//id + 1, 0 if the slot is empty
+	private static final byte[] OPCODE_IDS = new byte[64];//instruction id by opcode >> 2, -1 if there is none
+	private static final int MULTIPLIER;
+
+	static {
+		if(OPCODES.length != INSTRUCTION_COUNT || FORMATS.length != INSTRUCTION_COUNT)
+			throw new IllegalStateException("opcode table size mismatch");
+		for(String m : SIC_MNEMONICS)
+			IN_SIC[find(m)] = true;
+		for(int id = 0; id < INSTRUCTION_COUNT; id++)
+			EXTENDED_MNEMONICS[id] = "+" + MNEMONICS[id];
+		java.util.Arrays.fill(OPCODE_IDS, (byte)-1);
+		for(int id = 0; id < INSTRUCTION_COUNT; id++)
+			OPCODE_IDS[OPCODES[id] >> 2] = (byte)id;
+		MULTIPLIER = buildSlots();
+		}
+
+
+	private OpcodeTable(){}
+
+
+	private static int find(String mnemonic){
+		for(int id = 0; id < SIZE; id++)
+			if(MNEMONICS[id].equals(mnemonic)) return id;
+		throw new IllegalStateException("no mnemonic " + mnemonic);
+		}
+
+
+	private static int buildSlots(){
+		/**buildSlots: tries multipliers until every mnemonic lands in its own slot**/
+		for(int m = 31; ; m += 2){
+			java.util.Arrays.fill(SLOTS, (short)0);
+			boolean isPerfect = true;
+			for(int id = 0; id < SIZE && isPerfect; id++){
+				int slot = slot(MNEMONICS[id], 0, MNEMONICS[id].length(), m);
+				if(SLOTS[slot] != 0) isPerfect = false;
+				else SLOTS[slot] = (short)(id + 1);
+				}
+			if(isPerfect) return m;
+			}
+		}//END OF: buildSlots
+
+
+	private static int slot(CharSequence s, int from, int to, int m){
+		int h = to - from;
+		for(int i = from; i < to; i++)
+			h = h * m + s.charAt(i);
+		return (h * 0x9E3779B1) >>> (32 - SLOT_BITS);
+		}
+
+
+	public static int lookup(CharSequence s){ return lookup(s, 0, s.length()); }
+
+
+	public static int lookup(CharSequence s, int from, int to){
+		/**lookup: the id of the mnemonic in s[from, to), -1 if there is none**/
+		if(to - from <= 0 || to - from > 6) return -1;
+		int id = SLOTS[slot(s, from, to, MULTIPLIER)] - 1;
+		if(id < 0) return -1;
+		String m = MNEMONICS[id];
+		if(m.length() != to - from) return -1;
+		for(int i = 0; i < m.length(); i++)
+			if(m.charAt(i) != s.charAt(from + i)) return -1;
+		return id;
+		}//END OF: lookup
+
+
+	public static boolean isInstruction(int id){ return id >= 0 && id < INSTRUCTION_COUNT; }
+
+
+	public static boolean isSIC(int id){
+		return id >= 0 && id < SIZE && (IN_SIC[id] || id >= INSTRUCTION_COUNT && id < CSECT || id >= EQU);
+		}
+
+
+	public static int opcode(int id){ return OPCODES[id]; }
+
+
+	public static int instruction(int firstByte){
+		/**instruction: the id of the instruction whose first object code byte is firstByte, the n and i bits in its
+		low two bits are ignored; -1 if no instruction has that opcode**/
+		return OPCODE_IDS[(firstByte & 0xFF) >> 2];
+		}
+
+
+	public static byte format(int id){ return id < INSTRUCTION_COUNT ? FORMATS[id] : DIRECTIVE; }
+
+
+	public static String mnemonic(int id){ return MNEMONICS[id]; }
+
+
+	public static String mnemonic(int id, boolean extended){
+		/**the shared mnemonic string, with the '+' prefix for a format 4 instruction**/
+		return extended && id < INSTRUCTION_COUNT ? EXTENDED_MNEMONICS[id] : MNEMONICS[id];
+		}
+
+	}//END OF: class OpcodeTable
@@ -0,0 +1,261 @@
+package UIAssembler;
+
+/*
+Writes synthetic SIC or SICXE programs of any size for scaling tests. The output is built from blocks, each a short
+stretch of code followed by its labelled data:
+Bnnnnn	+LDB	#Dnnnnn			(SICXE only, with BASE Dnnnnn)
+		...body lines...		instructions, inline BYTE/WORD/RESB/RESW and comments, picked by weight
+Wnnnnn	WORD	...				a word, a character and a hex constant and a reserved word the body refers to
+Knnnnn	BYTE	C'...'
+Hnnnnn	BYTE	X'..'
+Vnnnnn	RESW	1
+Rnnnnn	RESB	4096			(every BUFFER_EVERY blocks, pushes Dnnnnn out of PC relative range)
+Dnnnnn	WORD	...				reached through the base register when the buffer is there
+The body refers forward to its own block's data and back to the previous block's last word, so both passes (and
+the one pass fixup chains) see forward and backward references. Displacements stay inside the PC relative and base
+relative ranges the assembler accepts, and every program assembles without errors; a SIC program past 32K bytes or
+a SICXE program past 1M bytes simply has more locations than the machine, which the assembler does not check.
+The mix is set with a weight per kind of body line; a kind with weight 0 is never emitted, and the SICXE only kinds
+are ignored for SIC. The same seed always gives the same program.
+It is invoked as so:
+java UIAssembler.ProgramGenerator [-sic] [-seed n] lines output.txt
+or from code:
+ProgramGenerator generator = new ProgramGenerator(false, 42);
+generator.setWeight(ProgramGenerator.EXTENDED, 10);
+int written = generator.write("big.txt", 1000000);
+*/
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+public class ProgramGenerator {
+
+	/**kinds of body line**/
+	public static final int FORMAT1 = 0, FORMAT2 = 1, SIMPLE = 2, INDEXED = 3, IMMEDIATE = 4, INDIRECT = 5;
+	public static final int EXTENDED = 6, JUMP = 7, DATA = 8, RESERVE = 9, COMMENT = 10;
+	private static final int KINDS = 11;
+	private static final int[] DEFAULT_WEIGHTS = {2, 6, 40, 8, 8, 4, 4, 6, 6, 2, 4};
+
+	public static final int BLOCK_SIZE = 48;	//body lines per block
+	public static final int BUFFER_EVERY = 4;	//blocks per RESB 4096 buffer
+
+	private static final String[] FORMAT1_OPS = {"FIX", "FLOAT", "NORM"};
+	private static final String[] FORMAT2_OPS = {"ADDR\tA,S", "COMPR\tA,T", "SUBR\tS,A", "MULR\tT,S", "RMO\tA,B",
+		"CLEAR\tX", "TIXR\tT"};
+	private static final String[] WORD_OPS = {"LDA", "ADD", "SUB", "COMP", "MUL", "STA", "LDX", "STX", "LDL", "STL"};
+	private static final String[] XE_WORD_OPS = {"LDS", "LDT", "STS", "STT", "LDB"};
+	private static final String[] BYTE_OPS = {"LDCH", "STCH"};
+	private static final String[] JUMP_OPS = {"J", "JEQ", "JGT", "JLT"};
+	private static final String[] CHARS = {"EOF", "A", "XYZ", "Q", "SIC"};
+
+	private final boolean isSIC;
+	private final Random random;
+	private final int[] weights;
+	private int totalWeight;
+	private Writer out;
+	private int written;
+
+
+	public ProgramGenerator(boolean is_sic, long seed){
+		isSIC = is_sic;
+		random = new Random(seed);
+		weights = DEFAULT_WEIGHTS.clone();
+		sumWeights();
+		}
+
+
+	public ProgramGenerator(){ this(true, 1); }
+
+
+	public void setWeight(int kind, int weight){
+		/**setWeight: how often a kind of body line is picked, relative to the others**/
+		weights[kind] = Math.max(0, weight);
+		sumWeights();
+		}
+
+
+	public int getWeight(int kind){ return weights[kind]; }
+
+
+	public boolean isSIC(){ return isSIC; }
+
+
+	public int write(String fileName, int lineCount) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new FileWriter(fileName), 1 << 16);
+		try{
+			return write(writer, lineCount);
+			}
+		finally{
+			writer.close();
+			}
+		}//END OF: write
+
+
+	public int write(Writer writer, int lineCount) throws IOException {
+		/**write: a program of about lineCount lines (never fewer than one block), returns the exact count**/
+		out = writer;
+		written = 0;
+		line("SYNTH", "START", "0");
+		line(".", "synthetic " + (isSIC ? "SIC" : "SICXE") + " program", "");
+		int block = 0;
+		do{
+			int body = Math.min(BLOCK_SIZE, lineCount - written - 10);
+			block(block++, Math.max(1, body));
+			}while(written + 11 < lineCount);
+		line("", "END", "B00000");
+		out.flush();
+		return written;
+		}//END OF: write
+
+
+	private void block(int n, int bodyLines) throws IOException {
+		String id = id(n), previous = n > 0 ? id(n - 1) : id;
+		boolean hasBuffer = n % BUFFER_EVERY == BUFFER_EVERY - 1;
+		if(isSIC)
+			line("B" + id, "LDX", "W" + id);
+		else{
+			line("B" + id, "+LDB", "#D" + id);
+			line("", "BASE", "D" + id);
+			}
+		for(int i = 0; i < bodyLines; i++)
+			body(pick(), id, previous);
+		line("W" + id, "WORD", Integer.toString(n % 4096));
+		line("K" + id, "BYTE", "C'" + CHARS[n % CHARS.length] + "'");
+		line("H" + id, "BYTE", "X'" + hex2(n) + "'");
+		line("V" + id, "RESW", "1");
+		if(hasBuffer) line("R" + id, "RESB", "4096");
+		line("D" + id, "WORD", Integer.toString((7 * n) % 4096));
+		}//END OF: block
+
+
+	private void body(int kind, String id, String previous) throws IOException {
+		/**body: one line of the given kind, referring to this block's data or the previous block's last word**/
+		switch(kind){
+			case FORMAT1:
+				line("", any(FORMAT1_OPS), "");
+				break;
+			case FORMAT2:
+				String op = any(FORMAT2_OPS);
+				int tab = op.indexOf('\t');
+				line("", op.substring(0, tab), op.substring(tab + 1));
+				break;
+			case SIMPLE:
+				if(random.nextInt(4) == 0) line("", wordOp(), "D" + previous);//backward, within PC range
+				else line("", wordOp(), any("W", "V", "D") + id);
+				break;
+			case INDEXED:
+				line("", any(BYTE_OPS), any("K", "H") + id + ",X");
+				break;
+			case IMMEDIATE:
+				if(random.nextBoolean()) line("", "LDA", "#" + random.nextInt(4096));
+				else line("", any("LDA", "LDT", "COMP"), "#W" + id);
+				break;
+			case INDIRECT:
+				line("", any("LDA", "J"), "@V" + id);
+				break;
+			case EXTENDED:
+				if(random.nextBoolean()) line("", "+JSUB", "B00000");
+				else line("", "+" + wordOp(), "D" + previous);
+				break;
+			case JUMP:
+				line("", any(JUMP_OPS), "B" + id);
+				break;
+			case DATA:
+				if(random.nextBoolean()) line("", "WORD", Integer.toString(random.nextInt(100000)));
+				else line("", "BYTE", random.nextBoolean() ? "X'" + hex2(random.nextInt(256)) + "'"
+						: "C'" + any(CHARS) + "'");
+				break;
+			case RESERVE:
+				if(random.nextBoolean()) line("", "RESW", Integer.toString(1 + random.nextInt(4)));
+				else line("", "RESB", Integer.toString(1 + random.nextInt(12)));
+				break;
+			default:
+				line(".", "comment line " + written, "");
+				break;
+			}
+		}//END OF: body
+
+
+	private int pick(){
+		int r = random.nextInt(totalWeight);
+		for(int kind = 0; ; kind++){
+			if(!isAllowed(kind)) continue;
+			r -= weights[kind];
+			if(r < 0) return kind;
+			}
+		}
+
+
+	private boolean isAllowed(int kind){
+		/**the kinds a SIC program cannot have**/
+		return !isSIC || (kind != FORMAT1 && kind != FORMAT2 && kind != IMMEDIATE && kind != INDIRECT
+				&& kind != EXTENDED);
+		}
+
+
+	private void sumWeights(){
+		totalWeight = 0;
+		for(int kind = 0; kind < KINDS; kind++)
+			if(isAllowed(kind)) totalWeight += weights[kind];
+		if(totalWeight == 0) throw new IllegalArgumentException("every body line kind has weight 0");
+		}
+
+
+	private String wordOp(){
+		if(!isSIC && random.nextInt(4) == 0) return any(XE_WORD_OPS);
+		return any(WORD_OPS);
+		}
+
+
+	private String any(String... choices){ return choices[random.nextInt(choices.length)]; }
+
+
+	private void line(String label, String opcode, String operand) throws IOException {
+		out.write(label);
+		out.write('\t');
+		out.write(opcode);
+		if(!operand.isEmpty()){
+			out.write('\t');
+			out.write(operand);
+			}
+		out.write('\n');
+		written++;
+		}//END OF: line
+
+
+	private static String id(int n){
+		/**five base 36 digits, so labels are six characters**/
+		String digits = Integer.toString(n, 36).toUpperCase();
+		return "00000".substring(Math.min(5, digits.length())) + digits;
+		}
+
+
+	private static String hex2(int n){
+		String digits = Integer.toHexString(n & 0xFF).toUpperCase();
+		return digits.length() == 1 ? "0" + digits : digits;
+		}
+
+
+	public static void main(String[] args) throws IOException {
+		boolean is_sic = false;
+		long seed = 1;
+		int lineCount = -1;
+		String outputFile = null;
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-sic")) is_sic = true;
+			else if(args[i].equals("-seed") && i + 1 < args.length) seed = Long.parseLong(args[++i]);
+			else if(lineCount < 0) lineCount = Integer.parseInt(args[i]);
+			else outputFile = args[i];
+			}
+		if(lineCount < 0 || outputFile == null){
+			System.err.println("usage: ProgramGenerator [-sic] [-seed n] lines output.txt");
+			System.exit(2);
+			}
+		int written = new ProgramGenerator(is_sic, seed).write(outputFile, lineCount);
+		System.out.printf("%d lines written to %s%n", written, outputFile);
+		}//END OF: main
+
+	}//END OF: class ProgramGenerator
@@ -0,0 +1,56 @@
+package UIAssembler;
+
+/*
+The SICXE register numbers, shared by the assembler and the object code generator. A switch on the register
+name replaces the Hashtable each Assembler and ObjcodeGenerator used to build for itself.
+*/
+
+public final class RegisterTable {
+
+	public static final int A = 0, X = 1, L = 2, B = 3, S = 4, T = 5, F = 6, PC = 8, SW = 9;
+
+
+	private RegisterTable(){}
+
+
+	public static int number(char name){
+		/**number: the register number of a one letter register name, -1 if it is not a register**/
+		switch(name){
+			case 'A': return A;
+			case 'X': return X;
+			case 'L': return L;
+			case 'B': return B;
+			case 'S': return S;
+			case 'T': return T;
+			case 'F': return F;
+			default: return -1;
+			}
+		}//END OF: number
+
+
+	public static int number(String name){
+		/**number: the register number of a register name, -1 if it is not a register**/
+		if(name.length() == 1) return number(name.charAt(0));
+		if(name.equals("PC")) return PC;
+		if(name.equals("SW")) return SW;
+		return -1;
+		}//END OF: number
+
+
+	public static String name(int number){
+		/**name: the name of a register number, null if it is not a register**/
+		switch(number){
+			case A: return "A";
+			case X: return "X";
+			case L: return "L";
+			case B: return "B";
+			case S: return "S";
+			case T: return "T";
+			case F: return "F";
+			case PC: return "PC";
+			case SW: return "SW";
+			default: return null;
+			}
+		}//END OF: name
+
+	}//END OF: class RegisterTable
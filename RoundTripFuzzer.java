@@ -0,0 +1,338 @@
+package UIAssembler;
+
+/*
+A differential fuzzer for the object code generator. Each case is one random but valid instruction: a random
+mnemonic with a random addressing mode (simple, indexed, immediate constant or label, indirect, direct constant,
+format 4, the registers of format 2, or the SIC format), whose target is a label before the code, right after it
+(PC relative), past a 3000 byte gap (base relative) or past a second gap (format 4 only). Cases are assembled in
+batches of BATCH_SIZE as one program with that fixed data layout, the object code of every case is decoded again
+by the Disassembler and compared field by field with what the case asked for: the mnemonic, the format, the n, i
+and x flags, and the target address or the registers. The address each case should be at is summed from the
+formats, so pass one's location counting is checked too, and an error the assembler reports for a case is a
+mismatch like any other.
+Batches run on every core. Batch k always uses the random seed (seed, k), so a run can be repeated exactly. A
+failing batch is shrunk before it is reported: cases are taken away (halves first, then single ones) and the
+remaining ones simplified (smaller constants, the first label, no '+', start address 0) as long as it still
+fails, and the minimal source is printed with what was expected and what came back.
+It is invoked as so:
+java UIAssembler.RoundTripFuzzer [-sic] [-seed n] [-threads n] [-seconds s] [-batches n]
+or from code:
+RoundTripFuzzer fuzzer = new RoundTripFuzzer(false, 42);
+List<String> failures = fuzzer.run(Runtime.getRuntime().availableProcessors(), 10, Long.MAX_VALUE);
+*/
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RoundTripFuzzer {
+
+	public static final int BATCH_SIZE = 64;
+	private static final int MAX_FAILURES = 10;
+	/**addressing modes of a case**/
+	private static final int NONE = 0, REGISTERS = 1, SIMPLE = 2, INDEXED = 3, IMMEDIATE = 4, IMMEDIATE_LABEL = 5,
+			INDIRECT = 6, DIRECT = 7;
+	private static final String[] MODE_NAMES = {
+		"none", "registers", "simple", "indexed", "immediate", "immediate label", "indirect", "direct"
+		};
+	/**the data labels a case can refer to, 4 of each, see source()**/
+	private static final char[] LABEL_KINDS = {'P', 'N', 'F', 'G'};//before, after, base relative, format 4 only
+	private static final int LABELS_PER_KIND = 4;
+	private static final int RSUB = OpcodeTable.lookup("RSUB"), CLEAR = OpcodeTable.lookup("CLEAR");
+	private static final int TIXR = OpcodeTable.lookup("TIXR"), SVC = OpcodeTable.lookup("SVC");
+	private static final int SHIFTL = OpcodeTable.lookup("SHIFTL"), SHIFTR = OpcodeTable.lookup("SHIFTR");
+	private static final int[] REGISTERS_USED = {
+		RegisterTable.A, RegisterTable.X, RegisterTable.L, RegisterTable.B, RegisterTable.S, RegisterTable.T,
+		RegisterTable.F
+		};
+
+	private final boolean isSIC;
+	private final long seed;
+	private final int[] instructions;	//the ids a case can use
+	private final AtomicLong cases, batches;
+	private final List<String> failures;
+
+
+	static final class Case{
+		/**one instruction to assemble, value is the constant, the label number or the registers**/
+		int id, mode, value, r1, r2;
+		boolean isExtended;
+		Case(int instruction, int addressing, boolean extended, int v, int reg1, int reg2){
+			id = instruction;
+			mode = addressing;
+			isExtended = extended;
+			value = v;
+			r1 = reg1;
+			r2 = reg2;
+			}
+		Case copy(){ return new Case(id, mode, isExtended, value, r1, r2); }
+		}//END OF: class Case
+
+
+	public RoundTripFuzzer(boolean is_sic, long randomSeed){
+		isSIC = is_sic;
+		seed = randomSeed;
+		int count = 0;
+		int[] ids = new int[OpcodeTable.INSTRUCTION_COUNT];
+		for(int id = 0; id < OpcodeTable.INSTRUCTION_COUNT; id++)
+			if(!is_sic || OpcodeTable.isSIC(id) && OpcodeTable.format(id) == OpcodeTable.FORMAT3) ids[count++] = id;
+		instructions = java.util.Arrays.copyOf(ids, count);
+		cases = new AtomicLong();
+		batches = new AtomicLong();
+		failures = Collections.synchronizedList(new ArrayList<String>());
+		}
+
+
+	public List<String> run(int threads, double seconds, long maxBatches) throws InterruptedException {
+		/**run: fuzzes on threads workers until seconds have passed or maxBatches batches are done, returns the
+		shrunk failures**/
+		final long deadline = System.nanoTime() + (long)(seconds * 1e9);
+		final long batchLimit = maxBatches;
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		List<Future<Void>> workers = new ArrayList<Future<Void>>();
+		for(int t = 0; t < Math.max(1, threads); t++){
+			workers.add(pool.submit(new Callable<Void>(){
+				public Void call(){
+					Assembler assembler = new Assembler("", isSIC);
+					Disassembler disassembler = new Disassembler(isSIC);
+					StringBuilder source = new StringBuilder(BATCH_SIZE * 16 + 256);
+					for(long k = batches.getAndIncrement(); k < batchLimit && System.nanoTime() < deadline
+							&& failures.size() < MAX_FAILURES; k = batches.getAndIncrement()){
+						Random random = new Random(seed * 0x9E3779B97F4A7C15L + k);
+						List<Case> batch = new ArrayList<Case>(BATCH_SIZE);
+						for(int i = 0; i < BATCH_SIZE; i++) batch.add(randomCase(random));
+						int start = isSIC ? random.nextInt(0x1000) : random.nextInt(0x10000);
+						cases.addAndGet(BATCH_SIZE);
+						if(check(batch, start, assembler, disassembler, source) != null)
+							failures.add(shrink(batch, start, assembler, disassembler, source) + "(batch " + k + ")");
+						}
+					return null;
+					}
+				}));
+			}
+		pool.shutdown();
+		for(Future<Void> worker : workers){
+			try{ worker.get(); }
+			catch(ExecutionException e){ throw new IllegalStateException(e.getCause()); }
+			}
+		return new ArrayList<String>(failures);
+		}//END OF: run
+
+
+	public long getCaseCount(){ return cases.get(); }
+
+
+	private Case randomCase(Random random){
+		int id = instructions[random.nextInt(instructions.length)];
+		byte format = OpcodeTable.format(id);
+		if(format == OpcodeTable.FORMAT1) return new Case(id, NONE, false, 0, 0, 0);
+		if(format == OpcodeTable.FORMAT2){
+			int r1 = REGISTERS_USED[random.nextInt(REGISTERS_USED.length)];
+			int r2 = REGISTERS_USED[random.nextInt(REGISTERS_USED.length)];
+			if(id == SVC) r1 = random.nextInt(16);
+			if(id == SHIFTL || id == SHIFTR) r2 = random.nextInt(16);//shifts r2 + 1 bits
+			if(id == SVC || id == CLEAR || id == TIXR) r2 = 0;
+			return new Case(id, REGISTERS, false, 0, r1, r2);
+			}
+		if(id == RSUB) return new Case(id, NONE, false, 0, 0, 0);
+		if(isSIC)
+			return new Case(id, random.nextBoolean() ? SIMPLE : INDEXED, false, randomLabel(random, false), 0, 0);
+
+		boolean isExtended = random.nextInt(4) == 0;
+		int mode = SIMPLE + random.nextInt(DIRECT - SIMPLE + 1);
+		int value = mode == IMMEDIATE || mode == DIRECT
+				? random.nextInt(isExtended ? 1 << 20 : 1 << 12) >> random.nextInt(isExtended ? 20 : 12)//small ones too
+				: randomLabel(random, isExtended);
+		return new Case(id, mode, isExtended, value, 0, 0);
+		}//END OF: randomCase
+
+
+	private static int randomLabel(Random random, boolean isExtended){
+		/**randomLabel: kind * LABELS_PER_KIND + number, the G labels are out of reach of format 3**/
+		return random.nextInt((isExtended ? 4 : 3) * LABELS_PER_KIND);
+		}
+
+
+	private static String label(int value){ return LABEL_KINDS[value / LABELS_PER_KIND] + "" + value % LABELS_PER_KIND; }
+
+
+	private String source(List<Case> batch, int start, StringBuilder text){
+		/**source: the program of a batch, the data labels around the code are laid out as so:
+		P0..P3 (before the code), the code, N0..N3 (right after it), 3000 bytes, F0..F3 (B holds F0),
+		5000 bytes, G0..G3**/
+		text.setLength(0);
+		text.append("FUZZ\tSTART\t").append(Integer.toHexString(start).toUpperCase()).append('\n');
+		for(int i = 0; i < LABELS_PER_KIND; i++) text.append('P').append(i).append("\tWORD\t").append(i).append('\n');
+		if(isSIC) text.append("FIRST\tLDX\tP0\n");
+		else text.append("FIRST\t+LDB\t#F0\n\tBASE\tF0\n");
+		for(Case c : batch){
+			text.append('\t');
+			if(c.isExtended) text.append('+');
+			text.append(OpcodeTable.mnemonic(c.id));
+			switch(c.mode){
+				case REGISTERS:
+					text.append('\t');
+					if(c.id == SVC) text.append(c.r1);
+					else text.append(RegisterTable.name(c.r1));
+					if(c.id == SHIFTL || c.id == SHIFTR) text.append(',').append(c.r2 + 1);
+					else if(c.id != SVC && c.id != CLEAR && c.id != TIXR) text.append(',').append(RegisterTable.name(c.r2));
+					break;
+				case SIMPLE: text.append('\t').append(label(c.value)); break;
+				case INDEXED: text.append('\t').append(label(c.value)).append(",X"); break;
+				case IMMEDIATE: text.append("\t#").append(c.value); break;
+				case IMMEDIATE_LABEL: text.append("\t#").append(label(c.value)); break;
+				case INDIRECT: text.append("\t@").append(label(c.value)); break;
+				case DIRECT: text.append('\t').append(c.value); break;
+				default: break;
+				}
+			text.append('\n');
+			}
+		for(int i = 0; i < LABELS_PER_KIND; i++) text.append('N').append(i).append("\tWORD\t").append(i).append('\n');
+		text.append("GAP1\tRESB\t3000\n");
+		for(int i = 0; i < LABELS_PER_KIND; i++) text.append('F').append(i).append("\tWORD\t").append(i).append('\n');
+		text.append("GAP2\tRESB\t5000\n");
+		for(int i = 0; i < LABELS_PER_KIND; i++) text.append('G').append(i).append("\tWORD\t").append(i).append('\n');
+		text.append("\tEND\tFIRST\n");
+		return text.toString();
+		}//END OF: source
+
+
+	private String check(List<Case> batch, int start, Assembler assembler, Disassembler disassembler,
+			StringBuilder text){
+		/**check: assembles and disassembles a batch, null if every case came back as it went in, else what differed**/
+		AssemblyResult result;
+		try{
+			result = assembler.assemble(source(batch, start, text));
+			}
+		catch(RuntimeException e){
+			return "assembler threw " + e;
+			}
+		if(!result.isErrorFree()) return "assembler reported " + result.getDiagnostics();
+		byte[] image = result.getObjectCode();
+		Integer first = result.getAddress("FIRST");
+		if(first == null) return "FIRST is not defined";
+		int address = first + (isSIC ? 3 : 4);//after LDX P0 or +LDB #F0
+		disassembler.setBase(isSIC ? -1 : result.getAddress("F0"));
+
+		for(int i = 0; i < batch.size(); i++){
+			Case c = batch.get(i);
+			int length = disassembler.decode(image, address - start, address);
+			String mismatch = compare(c, length, disassembler, result);
+			if(mismatch != null)
+				return String.format("case %d at %05X: %s, disassembled %s %s", i, address, mismatch,
+						disassembler.mnemonic(), disassembler.operand());
+			address += length;
+			}
+		return null;
+		}//END OF: check
+
+
+	private String compare(Case c, int length, Disassembler d, AssemblyResult result){
+		/**compare: null if the decoded instruction is what the case asked for**/
+		if(length == 0) return "not an instruction";
+		if(d.id() != c.id) return "mnemonic";
+		byte format = OpcodeTable.format(c.id);
+		int expectedFormat = isSIC && format == OpcodeTable.FORMAT3 ? Disassembler.FORMAT_SIC
+				: c.isExtended ? OpcodeTable.FORMAT4 : format;
+		if(d.format() != expectedFormat) return "format " + expectedFormat + " expected";
+		if(c.mode == REGISTERS)
+			return d.register1() == c.r1 && d.register2() == c.r2 ? null : "registers " + c.r1 + "," + c.r2 + " expected";
+		if(c.mode == NONE) return null;
+
+		int ni = d.nixbpe() & (Disassembler.N | Disassembler.I);
+		int expectedNi = isSIC ? 0 : c.mode == IMMEDIATE || c.mode == IMMEDIATE_LABEL ? Disassembler.I
+				: c.mode == INDIRECT ? Disassembler.N : Disassembler.N | Disassembler.I;
+		if(ni != expectedNi) return "n,i = " + (expectedNi >> 4) + " expected";
+		if(d.isIndexed() != (c.mode == INDEXED)) return "x flag";
+		int target = c.mode == IMMEDIATE || c.mode == DIRECT ? c.value : result.getAddress(label(c.value));
+		if(d.targetAddress() != target) return String.format("%s target %X expected", MODE_NAMES[c.mode], target);
+		return null;
+		}//END OF: compare
+
+
+	private String shrink(List<Case> batch, int start, Assembler assembler, Disassembler disassembler,
+			StringBuilder text){
+		/**shrink: the smallest failing program found from a failing batch, and why it fails**/
+		List<Case> cases = new ArrayList<Case>(batch);
+		/**take cases away, halves first**/
+		for(int chunk = cases.size() / 2; chunk >= 1; chunk /= 2){
+			for(int from = 0; from + chunk <= cases.size() && cases.size() > 1; ){
+				List<Case> fewer = new ArrayList<Case>(cases.subList(0, from));
+				fewer.addAll(cases.subList(from + chunk, cases.size()));
+				if(!fewer.isEmpty() && check(fewer, start, assembler, disassembler, text) != null) cases = fewer;
+				else from += chunk;
+				}
+			}
+		/**simplify what is left**/
+		if(check(cases, 0, assembler, disassembler, text) != null) start = 0;
+		for(boolean isSmaller = true; isSmaller; ){
+			isSmaller = false;
+			for(int i = 0; i < cases.size(); i++){
+				Case c = cases.get(i);
+				List<Case> candidates = new ArrayList<Case>();
+				if(c.isExtended && (c.mode == IMMEDIATE || c.mode == DIRECT ? c.value < 1 << 12
+						: c.value < 3 * LABELS_PER_KIND)){
+					Case simpler = c.copy();
+					simpler.isExtended = false;
+					candidates.add(simpler);
+					}
+				if(c.value > 0 && c.mode >= SIMPLE){
+					Case simpler = c.copy();
+					simpler.value = c.mode == IMMEDIATE || c.mode == DIRECT ? c.value / 2 : c.value - 1;
+					candidates.add(simpler);
+					}
+				if(c.mode > SIMPLE && !(c.mode == IMMEDIATE || c.mode == DIRECT)){
+					Case simpler = c.copy();
+					simpler.mode = SIMPLE;
+					candidates.add(simpler);
+					}
+				for(Case simpler : candidates){
+					cases.set(i, simpler);
+					if(check(cases, start, assembler, disassembler, text) != null){
+						isSmaller = true;
+						break;
+						}
+					cases.set(i, c);
+					}
+				}
+			}
+		String reason = check(cases, start, assembler, disassembler, text);
+		return reason + "\n" + source(cases, start, text);
+		}//END OF: shrink
+
+
+	public static void main(String[] args) throws InterruptedException {
+		boolean is_sic = false;
+		long randomSeed = 1, maxBatches = Long.MAX_VALUE;
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		double seconds = 10;
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-sic")) is_sic = true;
+			else if(args[i].equals("-seed") && i + 1 < args.length) randomSeed = Long.parseLong(args[++i]);
+			else if(args[i].equals("-threads") && i + 1 < args.length) threadCount = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-seconds") && i + 1 < args.length) seconds = Double.parseDouble(args[++i]);
+			else if(args[i].equals("-batches") && i + 1 < args.length) maxBatches = Long.parseLong(args[++i]);
+			else{
+				System.err.println("usage: RoundTripFuzzer [-sic] [-seed n] [-threads n] [-seconds s] [-batches n]");
+				System.exit(2);
+				}
+			}
+
+		RoundTripFuzzer fuzzer = new RoundTripFuzzer(is_sic, randomSeed);
+		long startTime = System.nanoTime();
+		List<String> found = fuzzer.run(threadCount, seconds, maxBatches);
+		double elapsed = (System.nanoTime() - startTime) / 1e9;
+		for(String failure : found) System.out.println("MISMATCH " + failure);
+		System.out.printf("%d cases in %.1f s on %d threads: %.0f cases/min, %d mismatches%n", fuzzer.getCaseCount(),
+				elapsed, threadCount, fuzzer.getCaseCount() * 60 / elapsed, found.size());
+		if(!found.isEmpty()) System.exit(1);
+		}//END OF: main
+
+	}//END OF: class RoundTripFuzzer
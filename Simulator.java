@@ -0,0 +1,502 @@
+package UIAssembler;
+
+/*
+A SICXE instruction set simulator that runs a loaded memory image, normally the LinkingLoader's. The registers are
+the ones RegisterTable numbers, A, X, L, B, S, T, F, PC and SW; F holds a 48 bit floating point value and the others
+24 bit words. Instructions are decoded with OpcodeTable.instruction() and the bit layouts ObjcodeGenerator encodes:
+format 1 and 2, format 3 with PC or base relative displacements, format 4, and the SIC format with n = i = 0.
+Every decoded instruction is kept in a direct mapped cache of CACHE_SIZE entries, by its address: the opcode, its
+length, the addressing mode flags and the displacement or address field, so the body of a loop is decoded once and
+afterwards each instruction is one tag compare and the target address adds. A store into an address a cached
+instruction covers drops that entry, so self modifying code is decoded again.
+The devices TD, RD and WD use are pluggable: any Device can be attached to a device number, ByteDevice reads from a
+byte array and collects what is written to it in memory. A device nobody attached is never ready.
+run() stops when the program returns (RSUB or a jump to the return address it was started with in L, which is
+outside memory), at a J to itself, at SVC, at an invalid instruction, on a divide by zero, or after maxSteps
+instructions, and reports instructions per second.
+It is invoked as so:
+java UIAssembler.Simulator [-address hex] [-steps n] [-in device file] [-out device file] copy.obj.txt ...
+or from code:
+Simulator simulator = new Simulator(loader.getMemory());
+simulator.setDevice(0xF1, new Simulator.ByteDevice(inputBytes));
+int stop = simulator.run(loader.getExecutionAddress(), 100000000L);
+*/
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class Simulator {
+
+	public static final int RETURN_ADDRESS = 0xFFFFFF;	//in L when run() starts, RSUB to it ends the run
+	public static final int STEP_LIMIT = 0, RETURNED = 1, HALTED = 2, SUPERVISOR_CALL = 3, INVALID_INSTRUCTION = 4,
+			DIVIDE_BY_ZERO = 5;
+	private static final String[] STOP_NAMES = {
+		"step limit", "returned", "halted", "supervisor call", "invalid instruction", "divide by zero"
+		};
+	public static final int CC_LT = 0x00, CC_EQ = 0x40, CC_GT = 0x80;//condition code in SW, bits 7 and 6
+	private static final int CC_MASK = 0xC0;
+	private static final int WORD_MASK = 0xFFFFFF, ADDRESS_MASK = LinkingLoader.MEMORY_SIZE - 1;
+	private static final int CACHE_BITS = 16, CACHE_SIZE = 1 << CACHE_BITS, CACHE_MASK = CACHE_SIZE - 1;
+	/**addressing mode flags of a decoded instruction**/
+	private static final int INDEXED = 1, PC_RELATIVE = 2, BASE_RELATIVE = 4, IMMEDIATE = 8, INDIRECT = 16;
+
+	private final byte[] memory;
+	private final int[] registers;	//A, X, L, B, S, T by RegisterTable number, 24 bits each
+	private double f;
+	private int pc, sw;
+	private final Device[] devices;
+	/**the decoded instruction cache, by address & CACHE_MASK**/
+	private final int[] cacheTags;	//address + 1, 0 for an empty entry
+	private final byte[] cacheOpcodes, cacheLengths, cacheFlags;
+	private final int[] cacheOperands;//the displacement, the format 4 or SIC address, or r1 << 4 | r2 for format 2
+	private long instructionCount, decodeCount, elapsedNanos;
+
+
+	public interface Device{
+		/**an I/O device of TD, RD and WD**/
+		boolean test();			//TD: true if the device is ready
+		int read();				//RD: the next byte
+		void write(int b);		//WD
+		}
+
+
+	public static class ByteDevice implements Device{
+		/**reads from a byte array, 0 once it is used up, and keeps what is written to it**/
+		private final byte[] input;
+		private int position;
+		private byte[] output;
+		private int outputLength;
+		public ByteDevice(){ this(new byte[0]); }
+		public ByteDevice(byte[] in){
+			input = in;
+			position = 0;
+			output = new byte[64];
+			outputLength = 0;
+			}
+		public boolean test(){ return true; }
+		public int read(){ return position < input.length ? input[position++] & 0xFF : 0; }
+		public void write(int b){
+			if(outputLength == output.length) output = Arrays.copyOf(output, 2 * output.length);
+			output[outputLength++] = (byte)b;
+			}
+		public byte[] getOutput(){ return Arrays.copyOf(output, outputLength); }
+		}//END OF: class ByteDevice
+
+
+	public Simulator(byte[] mem){
+		/**mem is used as the SICXE memory as it is, LinkingLoader.MEMORY_SIZE bytes**/
+		if(mem.length != LinkingLoader.MEMORY_SIZE)
+			throw new IllegalArgumentException("memory must be " + LinkingLoader.MEMORY_SIZE + " bytes");
+		memory = mem;
+		registers = new int[RegisterTable.T + 1];
+		f = 0;
+		pc = sw = 0;
+		devices = new Device[256];
+		cacheTags = new int[CACHE_SIZE];
+		cacheOpcodes = new byte[CACHE_SIZE];
+		cacheLengths = new byte[CACHE_SIZE];
+		cacheFlags = new byte[CACHE_SIZE];
+		cacheOperands = new int[CACHE_SIZE];
+		instructionCount = decodeCount = elapsedNanos = 0;
+		}
+
+
+	public void setDevice(int number, Device device){ devices[number & 0xFF] = device; }
+
+
+	public void invalidate(){
+		/**invalidate: forget every decoded instruction, after memory was changed from outside the simulator**/
+		Arrays.fill(cacheTags, 0);
+		}
+
+
+	public int run(int startAddress, long maxSteps){
+		/**run: executes from startAddress with L = RETURN_ADDRESS until the program stops, returns the reason**/
+		pc = startAddress;
+		registers[RegisterTable.L] = RETURN_ADDRESS;
+		long startTime = System.nanoTime(), steps = 0;
+		int stop = STEP_LIMIT;
+		byte[] mem = memory;
+		int[] reg = registers;
+
+		while(steps < maxSteps){
+			int address = pc;
+			if(address < 0 || address >= mem.length){ stop = RETURNED; break; }
+			int slot = address & CACHE_MASK;
+			if(cacheTags[slot] != address + 1 && !decode(address, slot)){ stop = INVALID_INSTRUCTION; break; }
+			int opcode = cacheOpcodes[slot] & 0xFF, flags = cacheFlags[slot], operand = cacheOperands[slot];
+			pc = address + cacheLengths[slot];
+			steps++;
+
+			/**target address: the displacement plus PC, B and X as the flags say, then one indirection**/
+			int ta = operand;
+			if((flags & PC_RELATIVE) != 0) ta += pc;
+			else if((flags & BASE_RELATIVE) != 0) ta += reg[RegisterTable.B];
+			if((flags & INDEXED) != 0) ta += reg[RegisterTable.X];
+			ta &= ADDRESS_MASK;
+			int target = ta;//where a jump goes, an indirect one can leave memory through RETURN_ADDRESS
+			if((flags & INDIRECT) != 0) ta = (target = word(ta)) & ADDRESS_MASK;
+			boolean isImmediate = (flags & IMMEDIATE) != 0;
+
+			switch(opcode){
+				/**format 3 and 4, loads and stores**/
+				case 0x00: reg[RegisterTable.A] = operand(ta, isImmediate); break;			//LDA
+				case 0x68: reg[RegisterTable.B] = operand(ta, isImmediate); break;			//LDB
+				case 0x50:																	//LDCH
+					reg[RegisterTable.A] = reg[RegisterTable.A] & 0xFFFF00 | (isImmediate ? ta & 0xFF : mem[ta] & 0xFF);
+					break;
+				case 0x70: f = isImmediate ? ta : toDouble(ta); break;						//LDF
+				case 0x08: reg[RegisterTable.L] = operand(ta, isImmediate); break;			//LDL
+				case 0x6C: reg[RegisterTable.S] = operand(ta, isImmediate); break;			//LDS
+				case 0x74: reg[RegisterTable.T] = operand(ta, isImmediate); break;			//LDT
+				case 0x04: reg[RegisterTable.X] = operand(ta, isImmediate); break;			//LDX
+				case 0x0C: store(ta, reg[RegisterTable.A]); break;							//STA
+				case 0x78: store(ta, reg[RegisterTable.B]); break;							//STB
+				case 0x54:																	//STCH
+					mem[ta] = (byte)reg[RegisterTable.A];
+					invalidate(ta, 1);
+					break;
+				case 0x80: storeFloat(ta, f); break;										//STF
+				case 0x14: store(ta, reg[RegisterTable.L]); break;							//STL
+				case 0x7C: store(ta, reg[RegisterTable.S]); break;							//STS
+				case 0xE8: store(ta, sw); break;											//STSW
+				case 0x84: store(ta, reg[RegisterTable.T]); break;							//STT
+				case 0x10: store(ta, reg[RegisterTable.X]); break;							//STX
+				/**arithmetic and logic on A**/
+				case 0x18:																	//ADD
+					reg[RegisterTable.A] = (reg[RegisterTable.A] + operand(ta, isImmediate)) & WORD_MASK;
+					break;
+				case 0x1C:																	//SUB
+					reg[RegisterTable.A] = (reg[RegisterTable.A] - operand(ta, isImmediate)) & WORD_MASK;
+					break;
+				case 0x20:																	//MUL
+					reg[RegisterTable.A] = (signed(reg[RegisterTable.A]) * signed(operand(ta, isImmediate))) & WORD_MASK;
+					break;
+				case 0x24:{																	//DIV
+					int divisor = signed(operand(ta, isImmediate));
+					if(divisor == 0){ stop = DIVIDE_BY_ZERO; break; }
+					reg[RegisterTable.A] = (signed(reg[RegisterTable.A]) / divisor) & WORD_MASK;
+					break;
+					}
+				case 0x40: reg[RegisterTable.A] &= operand(ta, isImmediate); break;			//AND
+				case 0x44: reg[RegisterTable.A] |= operand(ta, isImmediate); break;			//OR
+				case 0x28: compare(reg[RegisterTable.A], operand(ta, isImmediate)); break;	//COMP
+				case 0x2C:																	//TIX
+					reg[RegisterTable.X] = (reg[RegisterTable.X] + 1) & WORD_MASK;
+					compare(reg[RegisterTable.X], operand(ta, isImmediate));
+					break;
+				/**floating point on F**/
+				case 0x58: f += isImmediate ? ta : toDouble(ta); break;						//ADDF
+				case 0x5C: f -= isImmediate ? ta : toDouble(ta); break;						//SUBF
+				case 0x60: f *= isImmediate ? ta : toDouble(ta); break;						//MULF
+				case 0x64:{																	//DIVF
+					double divisor = isImmediate ? ta : toDouble(ta);
+					if(divisor == 0){ stop = DIVIDE_BY_ZERO; break; }
+					f /= divisor;
+					break;
+					}
+				case 0x88:{																	//COMPF
+					double value = isImmediate ? ta : toDouble(ta);
+					sw = sw & ~CC_MASK | (f < value ? CC_LT : f == value ? CC_EQ : CC_GT);
+					break;
+					}
+				/**jumps**/
+				case 0x3C:																	//J
+					if(target == address) stop = HALTED;//J * is how SIC programs stop
+					pc = target;
+					break;
+				case 0x30: if((sw & CC_MASK) == CC_EQ) pc = target; break;					//JEQ
+				case 0x34: if((sw & CC_MASK) == CC_GT) pc = target; break;					//JGT
+				case 0x38: if((sw & CC_MASK) == CC_LT) pc = target; break;					//JLT
+				case 0x48:																	//JSUB
+					reg[RegisterTable.L] = pc;
+					pc = target;
+					break;
+				case 0x4C: pc = reg[RegisterTable.L]; break;								//RSUB
+				/**devices**/
+				case 0xE0:{																	//TD
+					Device device = devices[isImmediate ? ta & 0xFF : mem[ta] & 0xFF];
+					sw = sw & ~CC_MASK | (device != null && device.test() ? CC_LT : CC_EQ);
+					break;
+					}
+				case 0xD8:{																	//RD
+					Device device = devices[isImmediate ? ta & 0xFF : mem[ta] & 0xFF];
+					int b = device == null ? 0 : device.read() & 0xFF;
+					reg[RegisterTable.A] = reg[RegisterTable.A] & 0xFFFF00 | b;
+					break;
+					}
+				case 0xDC:{																	//WD
+					Device device = devices[isImmediate ? ta & 0xFF : mem[ta] & 0xFF];
+					if(device != null) device.write(reg[RegisterTable.A] & 0xFF);
+					break;
+					}
+				/**format 2, operand is r1 << 4 | r2**/
+				case 0x90: setRegister(operand & 15, register(operand & 15) + register(operand >> 4)); break;//ADDR
+				case 0x94: setRegister(operand & 15, register(operand & 15) - register(operand >> 4)); break;//SUBR
+				case 0x98:																	//MULR
+					setRegister(operand & 15, signed(register(operand & 15)) * signed(register(operand >> 4)));
+					break;
+				case 0x9C:{																	//DIVR
+					int divisor = signed(register(operand >> 4));
+					if(divisor == 0){ stop = DIVIDE_BY_ZERO; break; }
+					setRegister(operand & 15, signed(register(operand & 15)) / divisor);
+					break;
+					}
+				case 0xA0: compare(register(operand >> 4), register(operand & 15)); break;	//COMPR
+				case 0xB4: setRegister(operand >> 4, 0); break;								//CLEAR
+				case 0xAC: setRegister(operand & 15, register(operand >> 4)); break;		//RMO
+				case 0xA4:{																	//SHIFTL, circular
+					int r = operand >> 4, n = (operand & 15) + 1, value = register(r);
+					setRegister(r, value << n | value >>> (24 - n));
+					break;
+					}
+				case 0xA8:{																	//SHIFTR, fills with the sign bit
+					int r = operand >> 4, n = (operand & 15) + 1;
+					setRegister(r, signed(register(r)) >> n);
+					break;
+					}
+				case 0xB8:																	//TIXR
+					reg[RegisterTable.X] = (reg[RegisterTable.X] + 1) & WORD_MASK;
+					compare(reg[RegisterTable.X], register(operand >> 4));
+					break;
+				case 0xB0: stop = SUPERVISOR_CALL; break;									//SVC
+				/**format 1**/
+				case 0xC4: reg[RegisterTable.A] = (int)(long)f & WORD_MASK; break;			//FIX
+				case 0xC0: f = signed(reg[RegisterTable.A]); break;							//FLOAT
+				default://NORM, HIO, SIO, TIO, LPS, SSK, STI: nothing to do without an operating system
+					break;
+				}
+			if(stop != STEP_LIMIT) break;
+			}
+
+		instructionCount += steps;
+		elapsedNanos += System.nanoTime() - startTime;
+		return stop;
+		}//END OF: run
+
+
+	private boolean decode(int address, int slot){
+		/**decode: fills the cache entry of the instruction at address, false if it is not an instruction**/
+		byte[] mem = memory;
+		int b0 = mem[address] & 0xFF, b1 = mem[(address + 1) & ADDRESS_MASK] & 0xFF;
+		int b2 = mem[(address + 2) & ADDRESS_MASK] & 0xFF;
+		int id = OpcodeTable.instruction(b0);
+		if(id < 0) return false;
+		int length, flags = 0, operand = 0;
+		switch(OpcodeTable.format(id)){
+			case OpcodeTable.FORMAT1:
+				length = 1;
+				break;
+			case OpcodeTable.FORMAT2:
+				length = 2;
+				operand = b1;//r1 << 4 | r2
+				break;
+			default:
+				if((b1 & 0x80) != 0) flags |= INDEXED;
+				int ni = b0 & 3;
+				if(ni == 0){
+					/**SIC: |opcode(8)|x(1)|address(15)|**/
+					length = 3;
+					operand = (b1 & 0x7F) << 8 | b2;
+					}
+				else{
+					if(ni == 1) flags |= IMMEDIATE;
+					else if(ni == 2) flags |= INDIRECT;
+					if((b1 & 0x10) != 0){
+						/**format 4: |opcode(6)|nixbpe(6)|address(20)|**/
+						length = 4;
+						operand = (b1 & 0x0F) << 16 | b2 << 8 | (mem[(address + 3) & ADDRESS_MASK] & 0xFF);
+						}
+					else{
+						/**format 3: |opcode(6)|nixbpe(6)|displacement(12)|**/
+						length = 3;
+						operand = (b1 & 0x0F) << 8 | b2;
+						if((b1 & 0x20) != 0){
+							flags |= PC_RELATIVE;
+							operand = operand << 20 >> 20;//the PC relative displacement is signed
+							}
+						else if((b1 & 0x40) != 0) flags |= BASE_RELATIVE;
+						}
+					}
+				break;
+			}
+		cacheTags[slot] = address + 1;
+		cacheOpcodes[slot] = (byte)(b0 & 0xFC);
+		cacheLengths[slot] = (byte)length;
+		cacheFlags[slot] = (byte)flags;
+		cacheOperands[slot] = operand;
+		decodeCount++;
+		return true;
+		}//END OF: decode
+
+
+	private int word(int address){
+		byte[] mem = memory;
+		return (mem[address] & 0xFF) << 16 | (mem[(address + 1) & ADDRESS_MASK] & 0xFF) << 8
+				| (mem[(address + 2) & ADDRESS_MASK] & 0xFF);
+		}
+
+
+	private int operand(int ta, boolean isImmediate){ return isImmediate ? ta : word(ta); }
+
+
+	private void store(int address, int value){
+		memory[address] = (byte)(value >> 16);
+		memory[(address + 1) & ADDRESS_MASK] = (byte)(value >> 8);
+		memory[(address + 2) & ADDRESS_MASK] = (byte)value;
+		invalidate(address, 3);
+		}
+
+
+	private void invalidate(int address, int length){
+		/**invalidate: drops the cached instructions that start up to 3 bytes before the stored bytes or in them**/
+		for(int a = address - 3; a < address + length; a++){
+			int slot = a & CACHE_MASK;
+			if(cacheTags[slot] == (a & ADDRESS_MASK) + 1) cacheTags[slot] = 0;
+			}
+		}
+
+
+	private void compare(int left, int right){
+		int l = signed(left), r = signed(right);
+		sw = sw & ~CC_MASK | (l < r ? CC_LT : l == r ? CC_EQ : CC_GT);
+		}
+
+
+	private static int signed(int word){ return word << 8 >> 8; }//a 24 bit word sign extended
+
+
+	private int register(int number){
+		/**register: the value of a format 2 register operand**/
+		switch(number){
+			case RegisterTable.F: return (int)(long)f & WORD_MASK;
+			case RegisterTable.PC: return pc;
+			case RegisterTable.SW: return sw;
+			default: return number < registers.length ? registers[number] : 0;
+			}
+		}
+
+
+	private void setRegister(int number, int value){
+		switch(number){
+			case RegisterTable.F: f = signed(value & WORD_MASK); break;
+			case RegisterTable.PC: pc = value & ADDRESS_MASK; break;
+			case RegisterTable.SW: sw = value & WORD_MASK; break;
+			default: if(number < registers.length) registers[number] = value & WORD_MASK; break;
+			}
+		}
+
+
+	private double toDouble(int address){
+		/**toDouble: the 48 bit float at address, |sign(1)|exponent(11)|fraction(36)|, worth
+		0.fraction * 2^(exponent - 1024)**/
+		long bits = 0;
+		for(int i = 0; i < 6; i++) bits = bits << 8 | (memory[(address + i) & ADDRESS_MASK] & 0xFF);
+		long fraction = bits & ((1L << 36) - 1);
+		if(fraction == 0) return 0;
+		int exponent = (int)(bits >> 36) & 0x7FF;
+		double value = Math.scalb((double)fraction, exponent - 1024 - 36);
+		return (bits >> 47 & 1) != 0 ? -value : value;
+		}//END OF: toDouble
+
+
+	private void storeFloat(int address, double value){
+		long bits = 0;
+		if(value != 0 && !Double.isNaN(value)){
+			double magnitude = Math.abs(value);
+			int exponent = Math.getExponent(magnitude) + 1;//magnitude / 2^exponent is in [0.5, 1)
+			long fraction = Math.round(Math.scalb(magnitude, 36 - exponent));
+			if(fraction == 1L << 36){
+				fraction >>= 1;
+				exponent++;
+				}
+			bits = (value < 0 ? 1L << 47 : 0) | (long)((exponent + 1024) & 0x7FF) << 36 | fraction;
+			}
+		for(int i = 5; i >= 0; i--, bits >>= 8) memory[(address + i) & ADDRESS_MASK] = (byte)bits;
+		invalidate(address, 6);
+		}//END OF: storeFloat
+
+
+	public int getRegister(int number){ return register(number); }//by RegisterTable number
+
+
+	public double getF(){ return f; }
+
+
+	public int getPC(){ return pc; }
+
+
+	public int getSW(){ return sw; }
+
+
+	public long getInstructionCount(){ return instructionCount; }
+
+
+	public long getDecodeCount(){ return decodeCount; }//instructions decoded, the rest came from the cache
+
+
+	public double getInstructionsPerSecond(){ return elapsedNanos == 0 ? 0 : instructionCount * 1e9 / elapsedNanos; }
+
+
+	public static String stopName(int stop){ return STOP_NAMES[stop]; }
+
+
+	public static void main(String[] args) throws IOException {
+		int progAddr = 0;
+		long maxSteps = 1000000000L;
+		List<String> inputs = new ArrayList<String>();
+		List<String> deviceArgs = new ArrayList<String>();//"-in"/"-out", device, file triples
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-address") && i + 1 < args.length) progAddr = Integer.parseInt(args[++i], 16);
+			else if(args[i].equals("-steps") && i + 1 < args.length) maxSteps = Long.parseLong(args[++i]);
+			else if((args[i].equals("-in") || args[i].equals("-out")) && i + 2 < args.length){
+				deviceArgs.add(args[i]);
+				deviceArgs.add(args[++i]);
+				deviceArgs.add(args[++i]);
+				}
+			else inputs.add(args[i]);
+			}
+		if(inputs.isEmpty()){
+			System.err.println("usage: Simulator [-address hex] [-steps n] [-in device file] [-out device file] files...");
+			System.exit(2);
+			}
+
+		LinkingLoader loader = new LinkingLoader(progAddr);
+		for(String input : inputs) loader.addFile(input);
+		if(!loader.load()){
+			for(String error : loader.getErrors()) System.out.println(error);
+			System.exit(1);
+			}
+		Simulator simulator = new Simulator(loader.getMemory());
+		ByteDevice[] outputs = new ByteDevice[deviceArgs.size() / 3];
+		for(int i = 0; i < deviceArgs.size(); i += 3){
+			int number = Integer.parseInt(deviceArgs.get(i + 1), 16);
+			ByteDevice device = deviceArgs.get(i).equals("-in")
+					? new ByteDevice(Files.readAllBytes(Paths.get(deviceArgs.get(i + 2)))) : new ByteDevice();
+			if(deviceArgs.get(i).equals("-out")) outputs[i / 3] = device;
+			simulator.setDevice(number, device);
+			}
+
+		int stop = simulator.run(loader.getExecutionAddress(), maxSteps);
+		for(int i = 0; i < outputs.length; i++){
+			if(outputs[i] == null) continue;
+			try(OutputStream out = new FileOutputStream(deviceArgs.get(3 * i + 2))){
+				out.write(outputs[i].getOutput());
+				}
+			}
+		System.out.printf("%s at %05X: A=%06X X=%06X L=%06X B=%06X S=%06X T=%06X SW=%06X%n", stopName(stop),
+				simulator.getPC(), simulator.getRegister(RegisterTable.A), simulator.getRegister(RegisterTable.X),
+				simulator.getRegister(RegisterTable.L), simulator.getRegister(RegisterTable.B),
+				simulator.getRegister(RegisterTable.S), simulator.getRegister(RegisterTable.T), simulator.getSW());
+		System.out.printf("%d instructions, %d decoded, %.1f million instructions/s%n", simulator.getInstructionCount(),
+				simulator.getDecodeCount(), simulator.getInstructionsPerSecond() / 1e6);
+		if(stop == INVALID_INSTRUCTION || stop == DIVIDE_BY_ZERO) System.exit(1);
+		}//END OF: main
+
+	}//END OF: class Simulator
@@ -0,0 +1,95 @@
+package UIAssembler;
+
+/*
+A SourceLine is the in-memory record the assembler builds for every line of the input during pass one. It holds
+the tokens of the line, its location counter values, the formatted listing text and any error messages found
+for it. Pass two walks the list of records directly instead of re-reading and re-parsing errorMsg.txt, so the
+listing files are only ever written, never read back.
+*/
+
+import java.util.ArrayList;
+
+public class SourceLine {
+
+	String text;			//the line as it was read from the source, null for memory mapped input
+	String label, opcode, operand;
+	int opcodeId;			//OpcodeTable id of the opcode, -1 if it is invalid
+	boolean isExtended;		//format 4 '+' prefix
+	int labelId, operandId;	//SymbolTable ids of the label and the operand's symbol, -1 for none
+	int location;			//location counter before the line is processed (address of the line)
+	int nextLocation;		//location counter after the line, printed in the loc column and used as PC
+	int lineNumber;			//line of the source file, from 1
+	boolean isComment;
+	String listing;			//the formatted loc/label/opcode/operand columns
+	ArrayList<String> diagnostics;
+	byte[] literal;			//the value of a literal pool entry, null for a source line
+	Expression expression;	//the compiled operand of EQU, ORG, a symbolic WORD or an instruction, null for none
+	/**kept by IncrementalAssembler between edits**/
+	int length;				//how far the line moves the location counter, -1 if its opcode is invalid
+	int fieldCount;			//fields on the line, more than 3 means the tokens came from the line before
+	boolean isDefiner;		//the line defines its label, it is not a duplicate
+	String objcode;			//the object code column, null until the line is encoded
+	int encodedDest, encodedPc, encodedBase;//what objcode was encoded with
+
+
+	SourceLine(String text, String label, String opcode, String operand, int location){
+		this.text = text;
+		this.label = label;
+		this.opcode = opcode;
+		this.operand = operand;
+		this.opcodeId = -1;
+		this.isExtended = false;
+		this.labelId = this.operandId = -1;
+		this.location = location;
+		this.nextLocation = location;
+		isComment = false;
+		listing = "";
+		diagnostics = null;
+		literal = null;
+		expression = null;
+		length = -1;
+		fieldCount = 0;
+		isDefiner = false;
+		objcode = null;
+		}
+
+
+	void addDiagnostic(String msg){
+		if(diagnostics == null) diagnostics = new ArrayList<String>();
+		diagnostics.add(msg);
+		}
+
+
+	public String getText(){ return text; }
+
+
+	public String getLabel(){ return label; }
+
+
+	public String getOpcode(){ return opcode; }
+
+
+	public String getOperand(){ return operand; }
+
+
+	public int getOpcodeId(){ return opcodeId; }
+
+
+	public int getLocation(){ return location; }
+
+
+	public int getNextLocation(){ return nextLocation; }
+
+
+	public boolean isComment(){ return isComment; }
+
+
+	public String getListing(){ return listing; }
+
+
+	public String getObjcode(){ return objcode == null ? "" : objcode; }
+
+
+	public boolean hasDiagnostics(){ return diagnostics != null && !diagnostics.isEmpty(); }
+
+	}//END OF: class SourceLine
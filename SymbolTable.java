@@ -0,0 +1,148 @@
+package UIAssembler;
+
+/*
+The assembler's symbol table. Symbol names are interned to dense int ids the first time they are seen, either as a
+label or as an operand, and the addresses are kept in a plain int array indexed by id. Pass one interns every
+label and operand symbol once; pass two and the one pass fixup chains then work with the ids only and never hash a
+name again. Addresses are full ints, so SICXE programs larger than 32K keep their real 20 bit addresses.
+A symbol EQU defines with an absolute value, such as MAXLEN EQU 4096, is not an address: it is kept as a 24 bit word
+and marked absolute, so it is not relocated.
+Names are found through an open addressing hash table (linear probing) that holds id + 1 per slot, 0 for empty.
+It is invoked as so:
+SymbolTable symbols = new SymbolTable();
+int id = symbols.intern("BUFFER");
+symbols.define(id, 0x0036);
+if(symbols.isDefined(id)) address = symbols.address(id);
+*/
+
+import java.util.Arrays;
+
+public class SymbolTable {
+
+	public static final int UNDEFINED = -1;
+	public static final int EXTERNAL = -2;	//named by EXTREF, defined in another control section
+	private static final int INITIAL_CAPACITY = 64;//ids, the hash table has twice as many slots
+	private String[] names;
+	private int[] addresses;
+	private boolean[] absolutes;
+	private int[] slots;
+	private int count;
+	private long lookups;	//names hashed since the last clear(), for AssemblyMetrics
+
+
+	public SymbolTable(){
+		names = new String[INITIAL_CAPACITY];
+		addresses = new int[INITIAL_CAPACITY];
+		absolutes = new boolean[INITIAL_CAPACITY];
+		slots = new int[2 * INITIAL_CAPACITY];
+		count = 0;
+		lookups = 0;
+		}
+
+
+	public void clear(){
+		Arrays.fill(names, 0, count, null);
+		Arrays.fill(slots, 0);
+		count = 0;
+		lookups = 0;
+		}
+
+
+	public long lookups(){ return lookups; }
+
+
+	public int size(){ return count; }
+
+
+	public int find(String name){
+		/**find: the id of name, -1 if it was never interned**/
+		lookups++;
+		int mask = slots.length - 1;
+		for(int i = hash(name) & mask; slots[i] != 0; i = (i + 1) & mask)
+			if(names[slots[i] - 1].equals(name)) return slots[i] - 1;
+		return -1;
+		}//END OF: find
+
+
+	public int intern(String name){
+		/**intern: the id of name, a new undefined symbol is added if it was never seen**/
+		lookups++;
+		int mask = slots.length - 1;
+		int i = hash(name) & mask;
+		for(; slots[i] != 0; i = (i + 1) & mask)
+			if(names[slots[i] - 1].equals(name)) return slots[i] - 1;
+		if(count == names.length){
+			grow();
+			mask = slots.length - 1;
+			for(i = hash(name) & mask; slots[i] != 0; i = (i + 1) & mask);//name is new, any free slot
+			}
+		names[count] = name;
+		addresses[count] = UNDEFINED;
+		absolutes[count] = false;
+		slots[i] = ++count;
+		return count - 1;
+		}//END OF: intern
+
+
+	public void define(int id, int address){
+		addresses[id] = address;
+		absolutes[id] = false;
+		}
+
+
+	public void defineAbsolute(int id, int value){
+		addresses[id] = value & 0xFFFFFF;//never UNDEFINED or EXTERNAL
+		absolutes[id] = true;
+		}
+
+
+	public boolean isDefined(int id){ return id >= 0 && addresses[id] != UNDEFINED; }//external ones too
+
+
+	public boolean isExternal(int id){ return id >= 0 && addresses[id] == EXTERNAL; }
+
+
+	public boolean isAbsolute(int id){ return isDefined(id) && absolutes[id]; }
+
+
+	public int address(int id){ return addresses[id]; }
+
+
+	public String name(int id){ return names[id]; }
+
+
+	public boolean containsKey(String name){ return isDefined(find(name)); }
+
+
+	public int get(String name){
+		/**get: the address of a defined symbol, UNDEFINED otherwise**/
+		int id = find(name);
+		return id < 0 ? UNDEFINED : addresses[id];
+		}
+
+
+	private static int hash(String name){
+		/**hash: mixes every bit of hashCode into the low bits, labels like BUF001, BUF002 ... have consecutive
+		hash codes that would otherwise fill one long run of slots and make linear probing quadratic**/
+		int h = name.hashCode();
+		h = (h ^ (h >>> 16)) * 0x85EBCA6B;
+		h = (h ^ (h >>> 13)) * 0xC2B2AE35;
+		return h ^ (h >>> 16);
+		}
+
+
+	private void grow(){
+		/**grow: doubles the id arrays and rehashes the slots**/
+		names = Arrays.copyOf(names, 2 * names.length);
+		addresses = Arrays.copyOf(addresses, 2 * addresses.length);
+		absolutes = Arrays.copyOf(absolutes, 2 * absolutes.length);
+		slots = new int[2 * names.length];
+		int mask = slots.length - 1;
+		for(int id = 0; id < count; id++){
+			int i = hash(names[id]) & mask;
+			while(slots[i] != 0) i = (i + 1) & mask;
+			slots[i] = id + 1;
+			}
+		}//END OF: grow
+
+	}//END OF: class SymbolTable
@@ -0,0 +1,92 @@
+package UIAssembler;
+
+/*
+This class splits a source line into its label, opcode and operand fields. It replaces line.trim().split("\\s+"):
+it walks the line once, remembers where each whitespace separated field starts and ends, and only creates a
+String when a field is asked for. At most four fields are located, a fourth field only tells the caller the line
+has more than three.
+It is invoked as so:
+Tokenizer tokenizer = new Tokenizer();
+int count = tokenizer.scan("CLOOP	JSUB	RDREC");	//count is 3
+String opcode = tokenizer.field(1);					//"JSUB"
+*/
+
+public class Tokenizer {
+
+	public static final int MAX_FIELDS = 4;
+	private CharSequence line;
+	private int count;
+	private final int[] start, end;
+
+
+	public Tokenizer(){
+		start = new int[MAX_FIELDS];
+		end = new int[MAX_FIELDS];
+		line = "";
+		count = 0;
+		}
+
+
+	public int scan(CharSequence str){
+		/**scan: finds the field boundaries of str, returns the number of fields (at most MAX_FIELDS)**/
+		line = str;
+		count = 0;
+		if(str == null) return 0;
+		int len = str.length(), i = 0;
+		while(count < MAX_FIELDS){
+			while(i < len && str.charAt(i) <= ' ') i++;//skip white space
+			if(i == len) break;
+			start[count] = i;
+			while(i < len && str.charAt(i) > ' ') i++;//skip the field
+			end[count++] = i;
+			}
+		return count;
+		}//END OF: scan
+
+
+	public int count(){ return count; }
+
+
+	public int start(int i){ return start[i]; }
+
+
+	public int end(int i){ return end[i]; }
+
+
+	public int length(int i){ return end[i] - start[i]; }
+
+
+	public String field(int i){
+		/**field: materializes field i of the last scanned line**/
+		if(i >= count) return "";
+		return line.subSequence(start[i], end[i]).toString();
+		}
+
+
+	public void save(int[] to, int offset){
+		/**save: copies the field count and bounds into to[offset...], 1 + 2 * MAX_FIELDS ints**/
+		to[offset] = count;
+		for(int i = 0; i < count; i++){
+			to[offset + 1 + 2 * i] = start[i];
+			to[offset + 2 + 2 * i] = end[i];
+			}
+		}
+
+
+	public void load(CharSequence str, int[] from, int offset){
+		/**load: sets str as the scanned line with the bounds save() kept for it, without scanning it again**/
+		line = str;
+		count = from[offset];
+		for(int i = 0; i < count; i++){
+			start[i] = from[offset + 1 + 2 * i];
+			end[i] = from[offset + 2 + 2 * i];
+			}
+		}
+
+
+	public boolean isComment(char commentChar){
+		/**a blank line, or a line whose first field starts with the comment character**/
+		return count == 0 || line.charAt(start[0]) == commentChar;
+		}
+
+	}//END OF: class Tokenizer
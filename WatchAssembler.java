@@ -0,0 +1,190 @@
+package UIAssembler;
+
+/*
+Watch mode for the edit-save-assemble loop. Every source file is assembled once, then the directories holding them
+are registered with a WatchService and a file is assembled again whenever it is saved. Events are debounced: after
+the first one the watcher waits until no event has come for the debounce period (an editor saving a file can cause
+several), then assembles only the source files that changed during the burst.
+The outputs are named as BatchAssembler names them (prog.errorMsg.txt, prog.finalAssembly.txt and prog.obj.txt for
+prog.txt) and are first written to .tmp files in the same directory, then renamed over the old outputs, so an editor
+or loader reading them never sees a half written file. When a file has errors the listing and object program of its
+last good assembly are removed, so the outputs on disk always belong to the same version of the source.
+It is invoked as so:
+java UIAssembler.WatchAssembler [-sicxe] [-onepass] [-debounce milliseconds] [-out directory] file1.txt ...
+*/
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class WatchAssembler {
+
+	private static final String[] SUFFIXES = {".errorMsg.txt", ".finalAssembly.txt", ".obj.txt"};
+
+	private final boolean isSIC;
+	private final long debounceMillis;
+	private boolean isOnePass;
+	private String outputDir;
+	private final Set<Path> sources;	//absolute path of every watched source
+	private int assembleCount;
+
+
+	public WatchAssembler(boolean is_sic, long debounce){
+		isSIC = is_sic;
+		debounceMillis = Math.max(0, debounce);
+		isOnePass = false;
+		outputDir = null;
+		sources = new LinkedHashSet<Path>();
+		assembleCount = 0;
+		}
+
+
+	public WatchAssembler(){ this(true, 200); }
+
+
+	public void setOnePass(boolean is_one_pass){ isOnePass = is_one_pass; }
+
+
+	public void setOutputDir(String directory){ outputDir = directory; }
+
+
+	public int getAssembleCount(){ return assembleCount; }
+
+
+	public void addSource(String file){ sources.add(Paths.get(file).toAbsolutePath().normalize()); }
+
+
+	public boolean assembleOne(Path source) throws IOException {
+		/**assembleOne: assembles source into .tmp outputs, then renames them over the real ones**/
+		String input = source.toString();
+		String[] outputs = new String[SUFFIXES.length], temps = new String[SUFFIXES.length];
+		for(int i = 0; i < SUFFIXES.length; i++){
+			outputs[i] = BatchAssembler.outputFile(input, outputDir, SUFFIXES[i]);
+			temps[i] = outputs[i] + ".tmp";
+			Files.deleteIfExists(Paths.get(temps[i]));
+			}
+		long start = System.nanoTime();
+		Assembler assembler = new Assembler(input, isSIC);
+		assembler.setOnePass(isOnePass);
+		assembler.setOutputFiles(temps[0], temps[1]);
+		assembler.setObjectProgramFile(temps[2]);
+		assembler.assemble();
+		assembleCount++;
+
+		/**publish: a missing .tmp means this run did not produce that output, so the old one is stale**/
+		for(int i = 0; i < SUFFIXES.length; i++){
+			Path temp = Paths.get(temps[i]), output = Paths.get(outputs[i]);
+			if(Files.exists(temp)) replace(temp, output);
+			else Files.deleteIfExists(output);
+			}
+		System.out.printf("%s %s in %.1f ms%s%n", assembler.isErrorFree() ? "OK     " : "ERRORS ", input,
+				(System.nanoTime() - start) / 1e6, assembler.isErrorFree() ? "" : " -> " + outputs[0]);
+		return assembler.isErrorFree();
+		}//END OF: assembleOne
+
+
+	private static void replace(Path temp, Path output) throws IOException {
+		try{
+			Files.move(temp, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+		catch(AtomicMoveNotSupportedException e){
+			Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}//END OF: replace
+
+
+	public void watch() throws IOException, InterruptedException {
+		/**watch: assembles every source, then reassembles the changed ones after each burst of events, forever**/
+		for(Path source : sources) assembleSafely(source);
+		WatchService watcher = FileSystems.getDefault().newWatchService();
+		try{
+			Set<Path> directories = new LinkedHashSet<Path>();
+			for(Path source : sources) directories.add(source.getParent());
+			for(Path directory : directories)
+				directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			System.out.printf("watching %d files in %d directories%n", sources.size(), directories.size());
+
+			while(true){
+				Set<Path> changed = new LinkedHashSet<Path>();
+				WatchKey key = watcher.take();
+				/**debounce: keep collecting until the directories have been quiet for debounceMillis**/
+				while(key != null){
+					collect(key, changed);
+					key = watcher.poll(debounceMillis, TimeUnit.MILLISECONDS);
+					}
+				for(Path source : changed)
+					if(Files.exists(source)) assembleSafely(source);//not while an editor has it deleted
+				}
+			}
+		finally{
+			watcher.close();
+			}
+		}//END OF: watch
+
+
+	private void collect(WatchKey key, Set<Path> changed){
+		/**collect: adds the watched sources key's events touched to changed, every source of the directory on overflow**/
+		Path directory = (Path)key.watchable();
+		for(WatchEvent<?> event : key.pollEvents()){
+			if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+				for(Path source : sources)
+					if(source.getParent().equals(directory)) changed.add(source);
+				continue;
+				}
+			Path source = directory.resolve((Path)event.context());
+			if(sources.contains(source)) changed.add(source);
+			}
+		key.reset();
+		}//END OF: collect
+
+
+	private void assembleSafely(Path source){
+		try{
+			assembleOne(source);
+			}
+		catch(IOException | RuntimeException e){
+			System.out.printf("FAILED  %s: %s%n", source, e);
+			}
+		}//END OF: assembleSafely
+
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		boolean is_sic = true, is_one_pass = false;
+		long debounce = 200;
+		String outputDir = null;
+		List<String> inputs = new ArrayList<String>();
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-sicxe")) is_sic = false;
+			else if(args[i].equals("-onepass")) is_one_pass = true;
+			else if(args[i].equals("-debounce") && i + 1 < args.length) debounce = Long.parseLong(args[++i]);
+			else if(args[i].equals("-out") && i + 1 < args.length) outputDir = args[++i];
+			else inputs.add(args[i]);
+			}
+		if(inputs.isEmpty()){
+			System.err.println("usage: WatchAssembler [-sicxe] [-onepass] [-debounce ms] [-out directory] files...");
+			System.exit(2);
+			}
+		if(outputDir != null) new File(outputDir).mkdirs();
+
+		WatchAssembler watcher = new WatchAssembler(is_sic, debounce);
+		watcher.setOnePass(is_one_pass);
+		watcher.setOutputDir(outputDir);
+		for(String input : inputs) watcher.addSource(input);
+		watcher.watch();
+		}//END OF: main
+
+	}//END OF: class WatchAssembler
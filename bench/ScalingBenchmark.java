@@ -0,0 +1,196 @@
+package UIAssembler;
+
+/*
+End to end scaling benchmark. For every size it writes a synthetic program with ProgramGenerator, assembles it with
+Assembler.assemble() and reports the wall time, lines per second and peak heap, in SIC and SICXE mode. The best of
+a few rounds is kept for the small sizes, one round is run for the large ones. Peak heap is the sum of the peak
+usage of the heap memory pools over the run, reset before it starts.
+The results are compared with a stored baseline (bench/scaling-baseline.txt when it exists, or -baseline file) and
+any size that is more than -tolerance percent slower or bigger than its baseline is flagged; the exit status is 1 if
+there is one. -save file writes the results as a new baseline.
+It is invoked as so, from the directory holding the sources:
+java -Xmx8g -cp <classes> UIAssembler.ScalingBenchmark [-sic | -sicxe] [-onepass] [-sizes 1000,10000,...]
+	[-baseline file] [-save file] [-tolerance percent]
+*/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class ScalingBenchmark {
+
+	private static final String DEFAULT_BASELINE = "bench/scaling-baseline.txt";
+	private static final int WARMUP_LINES = 20000, WARMUP_ROUNDS = 5;
+	private static final long ROUND_LINES = 1000000;//lines assembled per size, at least one round, at most 5
+
+	static class Result{
+		final String mode;
+		final int lines;
+		final double millis, linesPerSecond, peakHeapMB;
+		Result(String m, int count, double ms, double heap){
+			mode = m;
+			lines = count;
+			millis = ms;
+			linesPerSecond = count / (ms / 1000);
+			peakHeapMB = heap;
+			}
+		String key(){ return mode + " " + lines; }
+		}
+
+
+	public static void main(String[] args) throws IOException {
+		boolean sic = true, sicxe = true, is_one_pass = false;
+		int[] sizes = {1000, 10000, 100000, 1000000};
+		String baselineFile = DEFAULT_BASELINE, saveFile = null;
+		double tolerance = 25;
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-sic")) sicxe = false;
+			else if(args[i].equals("-sicxe")) sic = false;
+			else if(args[i].equals("-onepass")) is_one_pass = true;
+			else if(args[i].equals("-sizes") && i + 1 < args.length) sizes = parseSizes(args[++i]);
+			else if(args[i].equals("-baseline") && i + 1 < args.length) baselineFile = args[++i];
+			else if(args[i].equals("-save") && i + 1 < args.length) saveFile = args[++i];
+			else if(args[i].equals("-tolerance") && i + 1 < args.length) tolerance = Double.parseDouble(args[++i]);
+			else{
+				System.err.println("usage: ScalingBenchmark [-sic | -sicxe] [-onepass] [-sizes n,n,...] "
+						+ "[-baseline file] [-save file] [-tolerance percent]");
+				System.exit(2);
+				}
+			}
+
+		Path dir = Files.createTempDirectory("asm-scaling");
+		List<Result> results = new ArrayList<Result>();
+		try{
+			for(int mode = 0; mode < 2; mode++){
+				boolean is_sic = mode == 0;
+				if(is_sic ? !sic : !sicxe) continue;
+				String name = (is_sic ? "SIC" : "SICXE") + (is_one_pass ? "-1P" : "");
+				Path warmup = dir.resolve("warmup.txt");
+				new ProgramGenerator(is_sic, 7).write(warmup.toString(), WARMUP_LINES);
+				for(int i = 0; i < WARMUP_ROUNDS; i++) run(warmup, dir, is_sic, is_one_pass);
+				for(int size : sizes){
+					Path source = dir.resolve("program.txt");
+					int lines = new ProgramGenerator(is_sic, size).write(source.toString(), size);
+					int rounds = (int)Math.max(1, Math.min(5, ROUND_LINES / lines));
+					double best = Double.MAX_VALUE, peak = 0;
+					for(int r = 0; r < rounds; r++){
+						System.gc();
+						resetPeaks();
+						double ms = run(source, dir, is_sic, is_one_pass);
+						peak = Math.max(peak, peakHeapMB());
+						best = Math.min(best, ms);
+						}
+					Result result = new Result(name, lines, best, peak);
+					results.add(result);
+					System.out.printf(Locale.ROOT, "%-9s %10d lines %10.1f ms %12.0f lines/s %9.1f MB peak heap%n",
+							name, lines, best, result.linesPerSecond, peak);
+					}
+				}
+			}
+		finally{
+			for(File f : dir.toFile().listFiles()) f.delete();
+			dir.toFile().delete();
+			}
+
+		int regressions = 0;
+		if(new File(baselineFile).exists())
+			regressions = compare(results, readBaseline(baselineFile), tolerance, baselineFile);
+		else
+			System.out.println("no baseline at " + baselineFile);
+		if(saveFile != null){
+			saveBaseline(results, saveFile);
+			System.out.println("baseline saved to " + saveFile);
+			}
+		if(regressions > 0) System.exit(1);
+		}//END OF: main
+
+
+	private static double run(Path source, Path dir, boolean is_sic, boolean is_one_pass){
+		/**run: assembles source once, returns the wall time in milliseconds**/
+		Assembler assembler = new Assembler(source.toString(), is_sic);
+		assembler.setOutputFiles(dir.resolve("errorMsg.txt").toString(), dir.resolve("finalAssembly.txt").toString());
+		assembler.setObjectProgramFile(dir.resolve("objectProgram.txt").toString());
+		assembler.setOnePass(is_one_pass);
+		long start = System.nanoTime();
+		assembler.assemble();
+		long nanos = System.nanoTime() - start;
+		if(!assembler.isErrorFree())
+			throw new IllegalStateException("synthetic program " + source + " did not assemble cleanly");
+		return nanos / 1e6;
+		}//END OF: run
+
+
+	private static void resetPeaks(){
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if(pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+		}
+
+
+	private static double peakHeapMB(){
+		long bytes = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if(pool.getType() == MemoryType.HEAP) bytes += pool.getPeakUsage().getUsed();
+		return bytes / (1024.0 * 1024.0);
+		}
+
+
+	private static int compare(List<Result> results, List<Result> baseline, double tolerance, String file){
+		/**compare: prints every result against its baseline, returns how many regressed past tolerance**/
+		System.out.printf("against %s (tolerance %.0f%%):%n", file, tolerance);
+		int regressions = 0;
+		for(Result r : results){
+			Result b = null;
+			for(Result candidate : baseline)
+				if(candidate.key().equals(r.key())) b = candidate;
+			if(b == null){
+				System.out.printf("%-9s %10d lines  no baseline%n", r.mode, r.lines);
+				continue;
+				}
+			double time = 100 * (r.millis / b.millis - 1), heap = 100 * (r.peakHeapMB / b.peakHeapMB - 1);
+			boolean isRegression = time > tolerance || heap > tolerance;
+			if(isRegression) regressions++;
+			System.out.printf(Locale.ROOT, "%-9s %10d lines  time %+6.1f%%  peak heap %+6.1f%%%s%n",
+					r.mode, r.lines, time, heap, isRegression ? "  REGRESSION" : "");
+			}
+		return regressions;
+		}//END OF: compare
+
+
+	private static List<Result> readBaseline(String file) throws IOException {
+		List<Result> baseline = new ArrayList<Result>();
+		for(String line : Files.readAllLines(Paths.get(file))){
+			if(line.startsWith("#") || line.trim().isEmpty()) continue;
+			String[] f = line.trim().split("\\s+");
+			baseline.add(new Result(f[0], Integer.parseInt(f[1]), Double.parseDouble(f[2]), Double.parseDouble(f[4])));
+			}
+		return baseline;
+		}
+
+
+	private static void saveBaseline(List<Result> results, String file) throws IOException {
+		PrintWriter out = new PrintWriter(file, "UTF-8");
+		out.println("# mode\tlines\tmillis\tlines/s\tpeak heap MB");
+		for(Result r : results)
+			out.printf(Locale.ROOT, "%s\t%d\t%.1f\t%.0f\t%.1f%n", r.mode, r.lines, r.millis, r.linesPerSecond,
+					r.peakHeapMB);
+		out.close();
+		}
+
+
+	private static int[] parseSizes(String list){
+		String[] parts = list.split(",");
+		int[] sizes = new int[parts.length];
+		for(int i = 0; i < parts.length; i++) sizes[i] = Integer.parseInt(parts[i].trim());
+		return sizes;
+		}
+
+	}//END OF: class ScalingBenchmark
@@ -0,0 +1,88 @@
+package UIAssembler;
+
+/*
+Benchmark for the source line tokenizer. It reads the sample programs, repeats their lines until it has the
+requested number of lines (2,000,000 by default) and then times the old line.trim().split("\\s+") tokenizing
+against Tokenizer over the whole set, reporting lines per second for each.
+It is invoked as so, from the directory holding the sample files:
+java -cp <classes> UIAssembler.TokenizerBenchmark [lines] [sourceFile ...]
+*/
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TokenizerBenchmark {
+
+	private static final int WARMUP_ROUNDS = 3, ROUNDS = 5;
+
+	public static void main(String[] args) throws IOException {
+		int lineCount = 2000000;
+		List<String> files = new ArrayList<String>();
+		for(String arg : args){
+			if(arg.matches("\\d+")) lineCount = Integer.parseInt(arg);
+			else files.add(arg);
+			}
+		if(files.isEmpty()){
+			files.add("sampleCode_SIC1.txt");
+			files.add("sampleCode_SICXE1.txt");
+			}
+
+		List<String> sample = new ArrayList<String>();
+		for(String f : files)
+			for(String line : Files.readAllLines(Paths.get(f)))
+				if(!line.trim().isEmpty()) sample.add(line);
+		String[] lines = new String[lineCount];
+		for(int i = 0; i < lineCount; i++)
+			lines[i] = sample.get(i % sample.size());
+
+		System.out.printf("%d lines from %s%n", lineCount, files);
+		for(int i = 0; i < WARMUP_ROUNDS; i++){
+			splitRound(lines);
+			tokenizerRound(lines);
+			}
+		long splitTime = Long.MAX_VALUE, scanTime = Long.MAX_VALUE;
+		long sink = 0;
+		for(int i = 0; i < ROUNDS; i++){
+			long t = System.nanoTime();
+			sink += splitRound(lines);
+			splitTime = Math.min(splitTime, System.nanoTime() - t);
+			t = System.nanoTime();
+			sink += tokenizerRound(lines);
+			scanTime = Math.min(scanTime, System.nanoTime() - t);
+			}
+		report("split(\"\\\\s+\")", lineCount, splitTime);
+		report("Tokenizer", lineCount, scanTime);
+		System.out.printf("speedup: %.2fx (checksum %d)%n", (double)splitTime / scanTime, sink);
+		}//END OF: main
+
+
+	private static long splitRound(String[] lines){
+		/**the tokenizing setTokens used to do**/
+		long total = 0;
+		for(String line : lines){
+			String[] sArray = line.trim().split("\\s+");
+			total += sArray.length + sArray[sArray.length - 1].length();
+			}
+		return total;
+		}
+
+
+	private static long tokenizerRound(String[] lines){
+		long total = 0;
+		Tokenizer tokenizer = new Tokenizer();
+		for(String line : lines){
+			int count = Math.min(tokenizer.scan(line), 3);
+			total += count + tokenizer.field(count - 1).length();
+			}
+		return total;
+		}
+
+
+	private static void report(String name, int lineCount, long nanos){
+		System.out.printf("%-16s %8.1f ms  %,14.0f lines/s%n", name, nanos / 1e6, lineCount / (nanos / 1e9));
+		}
+
+	}//END OF: class TokenizerBenchmark
@@ -0,0 +1,76 @@
+package UIAssembler;
+
+/*
+The inputs shared by the JMH benchmarks. A source name is one of the sample programs ("SIC1", "SICXE1", read from
+the directory given by the sample.dir system property, ".." by default) or a synthetic program, "SIC-<lines>" or
+"XE-<lines>", written by ProgramGenerator. The mode of each source (SIC or SIC/XE)
+comes with it, and prepare() writes it to a temporary file the Assembler can read; delete() removes that file, the
+outputs written next to it and their directory.
+*/
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+final class BenchmarkSources {
+
+	final List<String> lines;
+	final boolean isSIC;
+	final Path dir, sourceFile;
+
+
+	private BenchmarkSources(List<String> sourceLines, boolean is_sic) throws IOException {
+		lines = sourceLines;
+		isSIC = is_sic;
+		dir = Files.createTempDirectory("asm-bench");
+		sourceFile = dir.resolve("source.txt");
+		Files.write(sourceFile, lines);
+		}
+
+
+	static BenchmarkSources prepare(String name) throws IOException {
+		String sampleDir = System.getProperty("sample.dir", "..");
+		if(name.equals("SIC1"))
+			return new BenchmarkSources(Files.readAllLines(Paths.get(sampleDir, "sampleCode_SIC1.txt")), true);
+		if(name.equals("SICXE1"))
+			return new BenchmarkSources(Files.readAllLines(Paths.get(sampleDir, "sampleCode_SICXE1.txt")), false);
+		boolean is_sic = name.startsWith("SIC-");
+		int count = Integer.parseInt(name.substring(name.indexOf('-') + 1));
+		Path file = Files.createTempFile("synthetic", ".txt");
+		List<String> lines;
+		try{
+			new ProgramGenerator(is_sic, count).write(file.toString(), count);
+			lines = Files.readAllLines(file);
+			}
+		finally{
+			Files.deleteIfExists(file);
+			}
+		return new BenchmarkSources(lines, is_sic);
+		}//END OF: prepare
+
+
+	Assembler newAssembler(){
+		/**an assembler reading the source and writing its output next to it**/
+		Assembler assembler = new Assembler(sourceFile.toString(), isSIC);
+		assembler.setOutputFiles(dir.resolve("errorMsg.txt").toString(), dir.resolve("finalAssembly.txt").toString());
+		assembler.setObjectProgramFile(dir.resolve("objectProgram.txt").toString());
+		return assembler;
+		}
+
+
+	void delete() throws IOException {
+		DirectoryStream<Path> files = Files.newDirectoryStream(dir);
+		try{
+			for(Path file : files) Files.deleteIfExists(file);
+			}
+		finally{
+			files.close();
+			}
+		Files.deleteIfExists(dir);
+		}//END OF: delete
+
+
+	}//END OF: class BenchmarkSources
@@ -0,0 +1,80 @@
+package UIAssembler;
+
+/*
+JMH benchmarks for ObjcodeGenerator: the String returning generateObjcode() against encodeObjcode() into a
+reusable array, over a mix of instructions that exercises every format and the PC relative, base relative,
+immediate, indirect and indexed displacement calculations (calcDisp_TA).
+java -jar target/benchmarks.jar EncoderBenchmarks -prof gc
+*/
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncoderBenchmarks {
+
+	private static final byte SIC = 0, F1 = 1, F2 = 2, F3 = 3, F4 = 4, BYTE = 5, WORD = 6;
+	/**opcode, operand, pc, target address, base, format**/
+	private static final Object[][] MIX = {
+		{"STL", "RETADR", 0x3, 0x30, 0, F3},			//PC relative
+		{"LDB", "#LENGTH", 0x6, 0x33, 0, F3},			//immediate symbol
+		{"+JSUB", "RDREC", 0xA, 0x1036, 0, F4},			//extended
+		{"COMP", "#0", 0x10, 0, 0, F3},					//immediate constant
+		{"J", "@RETADR", 0x2D, 0x30, 0, F3},			//indirect
+		{"STX", "LENGTH", 0x1059, 0x33, 0x33, F3},		//base relative
+		{"STCH", "BUFFER,X", 0x1051, 0x36, 0x33, F3},	//indexed base relative
+		{"COMPR", "A,S", 0x104B, 0, 0, F2},
+		{"FIX", "", 0x2000, 0, 0, F1},
+		{"RSUB", "", 0x105C, 0, 0, F3},
+		{"LDA", "BUFFER,X", 0x1003, 0x1039, 0, SIC},
+		{"BYTE", "C'EOF'", 0, 0, 0, BYTE},
+		{"BYTE", "X'F1'", 0, 0, 0, BYTE},
+		{"WORD", "4096", 0, 0, 0, WORD},
+		};
+	private static final byte[] OPCODES = {0x14, 0x68, 0x48, 0x28, 0x3C, 0x10, 0x54, (byte)0xA0, (byte)0xC4,
+		0x4C, 0x00, -1, -1, -1};
+
+	private final ObjcodeGenerator generator = new ObjcodeGenerator();
+	private final byte[] out = new byte[ObjcodeGenerator.MAX_OBJCODE_LEN * MIX.length];
+
+
+	@Benchmark
+	@OperationsPerInvocation(14)
+	public void generateObjcode(Blackhole bh){
+		for(int i = 0; i < MIX.length; i++){
+			Object[] m = MIX[i];
+			bh.consume(generator.generateObjcode((String)m[0], OPCODES[i], (String)m[1], (Integer)m[2],
+					(Integer)m[3], (Integer)m[4], 0, (Byte)m[5]));
+			}
+		}
+
+
+	@Benchmark
+	@OperationsPerInvocation(14)
+	public int encodeObjcode(){
+		int offset = 0;
+		for(int i = 0; i < MIX.length; i++){
+			Object[] m = MIX[i];
+			offset += generator.encodeObjcode((String)m[0], OPCODES[i], (String)m[1], (Integer)m[2],
+					(Integer)m[3], (Integer)m[4], 0, (Byte)m[5], out, offset);
+			}
+		return offset;
+		}
+
+	}//END OF: class EncoderBenchmarks
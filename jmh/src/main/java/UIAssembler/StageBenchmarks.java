@@ -0,0 +1,101 @@
+package UIAssembler;
+
+/*
+JMH benchmarks for each stage of the assembler and for the whole run, on the sample programs and on synthetic
+programs of increasing size, in SIC and SIC/XE mode. Run with the gc profiler to get the allocation rate:
+java -jar target/benchmarks.jar StageBenchmarks -prof gc
+*/
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageBenchmarks {
+
+	@Param({"SIC1", "SICXE1", "SIC-10000", "XE-10000", "XE-100000"})
+	public String source;
+
+	private BenchmarkSources sources;
+	private Assembler assembler;
+	private Tokenizer tokenizer;
+	private String[] lines;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		sources = BenchmarkSources.prepare(source);
+		lines = sources.lines.toArray(new String[0]);
+		tokenizer = new Tokenizer();
+		assembler = sources.newAssembler();
+		assembler.pass1();//pass two works from the records pass one leaves behind
+		}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		sources.delete();
+		}
+
+
+	@Benchmark
+	public void tokenize(Blackhole bh){
+		/**the tokenizing setTokens does for every line**/
+		for(String line : lines){
+			int count = tokenizer.scan(line);
+			if(count == 0) continue;//a blank line has no field to read
+			bh.consume(tokenizer.field(Math.min(count, 3) - 1));
+			}
+		}
+
+
+	@Benchmark
+	public boolean pass1(){
+		assembler.pass1();
+		return assembler.isErrorFree();
+		}
+
+
+	@Benchmark
+	public boolean pass2(){
+		assembler.pass2();
+		return assembler.isErrorFree();
+		}
+
+
+	@Benchmark
+	public boolean assemble(){
+		Assembler a = sources.newAssembler();
+		a.assemble();
+		return a.isErrorFree();
+		}
+
+
+	@Benchmark
+	public boolean assembleOnePass(){
+		Assembler a = sources.newAssembler();
+		a.setOnePass(true);
+		a.assemble();
+		return a.isErrorFree();
+		}
+
+	}//END OF: class StageBenchmarks